@@ -0,0 +1,56 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Builds a benchmark database with the application's schema and a fixed-seed DatasetGenerator dataset:
+// habits / 100 users, 1,000 books (Zipfian popularity), heavy-tailed user activity over 2023.
+public class BenchmarkDataset {
+
+    public static final int BOOKS = 1_000;
+    public static final long SEED = 42;
+
+    public static int userCount(long habits) {
+        return (int) Math.max(10, habits / 100);
+    }
+
+    // Fresh copy of the dataset for one run, generated under bench-data/ on first use.
+    // Each run gets its own copy so write benchmarks (and journal mode changes) never leak into the next.
+    public static Path workingCopy(long habits) throws IOException, SQLException {
+        Path template = Paths.get("bench-data", "booktracker-" + habits + ".db");
+        Path working = Paths.get("bench-data", "booktracker-" + habits + ".run.db");
+        Files.createDirectories(template.getParent());
+        if (!Files.exists(template)) {
+            System.out.printf("INFO: Generating %,d-habit dataset at %s ...%n", habits, template);
+            Path partial = Paths.get(template + ".tmp");
+            Files.deleteIfExists(partial);
+            create(partial, habits);
+            Files.move(partial, template); // Only a complete dataset is reused
+        }
+        deleteWorkingCopy(working);
+        Files.copy(template, working, StandardCopyOption.REPLACE_EXISTING);
+        return working;
+    }
+
+    // Removes a working copy along with any WAL files left next to it
+    public static void deleteWorkingCopy(Path working) throws IOException {
+        Files.deleteIfExists(working);
+        Files.deleteIfExists(Paths.get(working + "-wal"));
+        Files.deleteIfExists(Paths.get(working + "-shm"));
+    }
+
+    // Writes through a plain connection, so DatabaseConnector can later be pointed at a copy
+    public static void create(Path file, long habits) throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file)) {
+            new DatasetGenerator(habits, userCount(habits), BOOKS, SEED).writeDatabase(conn);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ANALYZE");
+            }
+        }
+    }
+}
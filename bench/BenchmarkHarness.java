@@ -0,0 +1,108 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+// Minimal measurement loop for the DAO benchmarks (no external dependencies).
+// Each operation is warmed up, then timed call by call on the current thread:
+// throughput, latency percentiles and bytes allocated per call are reported.
+public class BenchmarkHarness {
+
+    // One benchmarked call; iteration counts up from 0 across warmup and measurement
+    @FunctionalInterface
+    public interface Operation {
+        void run(long iteration) throws Exception;
+    }
+
+    private static final int MAX_SAMPLES = 2_000_000;
+
+    private final long warmupMillis;
+    private final long measureMillis;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public BenchmarkHarness(long warmupMillis, long measureMillis) {
+        this.warmupMillis = warmupMillis;
+        this.measureMillis = measureMillis;
+    }
+
+    // maxCalls caps operations that consume data (e.g. deletes); use Long.MAX_VALUE otherwise
+    public Result run(String name, long maxCalls, Operation op) throws Exception {
+        long iteration = 0;
+        long warmupEnd = System.nanoTime() + warmupMillis * 1_000_000L;
+        long warmupCalls = maxCalls / 10; // Leave most of a capped operation's data for measurement
+        while (System.nanoTime() < warmupEnd && iteration < warmupCalls) {
+            op.run(iteration++);
+        }
+
+        long[] samples = new long[MAX_SAMPLES];
+        int count = 0;
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long end = start + measureMillis * 1_000_000L;
+        long now = start;
+        while (now < end && iteration < maxCalls && count < MAX_SAMPLES) {
+            long callStart = now;
+            op.run(iteration++);
+            now = System.nanoTime();
+            samples[count++] = now - callStart;
+        }
+        long elapsed = now - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return new Result(name, count, elapsed, sorted, count == 0 ? 0 : allocated / count);
+    }
+
+    public static class Result {
+        private final String name;
+        private final int calls;
+        private final long elapsedNanos;
+        private final long[] sortedLatencies;
+        private final long bytesPerCall;
+
+        Result(String name, int calls, long elapsedNanos, long[] sortedLatencies, long bytesPerCall) {
+            this.name = name;
+            this.calls = calls;
+            this.elapsedNanos = elapsedNanos;
+            this.sortedLatencies = sortedLatencies;
+            this.bytesPerCall = bytesPerCall;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getCalls() {
+            return calls;
+        }
+
+        public double getOpsPerSecond() {
+            return calls / Math.max(elapsedNanos / 1e9, 1e-9);
+        }
+
+        public long getBytesPerCall() {
+            return bytesPerCall;
+        }
+
+        // Latency at percentile p (0-100), in nanoseconds
+        public long percentile(double p) {
+            if (sortedLatencies.length == 0) return 0;
+            int index = (int) Math.ceil(p / 100.0 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))];
+        }
+
+        public static String header() {
+            return String.format("%-34s %10s %12s %10s %10s %10s %10s %10s %12s",
+                    "Benchmark", "Calls", "Ops/sec", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us", "Alloc B/op");
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-34s %10d %12.1f %10.1f %10.1f %10.1f %10.1f %10.1f %12d",
+                    name, calls, getOpsPerSecond(),
+                    percentile(50) / 1e3, percentile(90) / 1e3, percentile(99) / 1e3, percentile(99.9) / 1e3,
+                    percentile(100) / 1e3, bytesPerCall);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Mixed workload for comparing storage profiles: reader threads list habits (getHabitsByUserId)
+// while writer threads insert them one transaction at a time (addReadingHabit), all through the pool.
+// Run once per profile in separate JVMs, e.g. -Dbooktracker.storage.profile=legacy vs wal
+// (bench/run-benchmarks.sh does both). With -Dbooktracker.shards=N the working copy is split into
+// N shard files first (ReshardTool), so writers for users on different shards don't share a write lock.
+//
+// Usage: java -cp "out:lib/*" -Dbooktracker.storage.profile=wal [-Dbooktracker.shards=N] ConcurrentReadWriteBenchmark [habits] [seconds] [readers] [writers]
+public class ConcurrentReadWriteBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long habits = args.length > 0 ? DaoBenchmark.parseCount(args[0]) : 10_000;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 10;
+        int readers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int writers = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        Path working = BenchmarkDataset.workingCopy(habits);
+        int shards = Integer.getInteger("booktracker.shards", 0);
+        if (shards > 0) {
+            ReshardTool.reshard(working.toString(), shards, true);
+        }
+        System.setProperty("booktracker.db.path", working.toString());
+        if (System.getProperty("booktracker.pool.size") == null) {
+            System.setProperty("booktracker.pool.size", String.valueOf(readers + writers + 1)); // Nobody waits on the pool
+        }
+
+        int users = BenchmarkDataset.userCount(habits);
+        ReadingHabitDao readingHabitDao = new ReadingHabitDao();
+        BookTitleCache.get().warm();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch startLine = new CountDownLatch(1);
+        List<Worker> workers = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            int offset = r;
+            workers.add(new Worker("reader-" + r, running, startLine,
+                    i -> readingHabitDao.getHabitsByUserId((int) ((i * 7919 + offset * 31) % users) + 1)));
+        }
+        for (int w = 0; w < writers; w++) {
+            workers.add(new Worker("writer-" + w, running, startLine,
+                    i -> readingHabitDao.addReadingHabit(new ReadingHabit(0, (int) (i % users) + 1,
+                            (int) (i % BenchmarkDataset.BOOKS) + 1, 10, Instant.now(), null))));
+        }
+        workers.forEach(Thread::start);
+
+        long start = System.nanoTime();
+        startLine.countDown();
+        Thread.sleep(seconds * 1000);
+        running.set(false);
+        for (Worker worker : workers) {
+            worker.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%n=== Concurrent read/write: %,d habits, %d readers, %d writers, %d s ===%n", habits, readers, writers, seconds);
+        System.out.println("Storage: " + DatabaseConnector.getStorageProfile() + (shards > 0 ? ", " + shards + " shards" : ""));
+        System.out.printf("%-8s %12s %12s %10s %10s %10s %8s%n", "Role", "Ops", "Ops/sec", "p50 us", "p99 us", "max us", "Errors");
+        report("read", workers.subList(0, readers), elapsed);
+        report("write", workers.subList(readers, workers.size()), elapsed);
+        WalCheckpointer checkpointer = DatabaseConnector.getCheckpointer();
+        if (checkpointer != null) {
+            System.out.printf("WAL checkpoints: %d (busy %d), last: %s%n",
+                    checkpointer.getCheckpointCount(), checkpointer.getBusyCount(), checkpointer.getLastResult());
+        }
+
+        DatabaseConnector.shutdown();
+        BenchmarkDataset.deleteWorkingCopy(working);
+        for (int s = 0; s < shards; s++) {
+            BenchmarkDataset.deleteWorkingCopy(Paths.get(ShardedStorage.shardPath(working.toString(), s)));
+        }
+    }
+
+    private static void report(String role, List<Worker> group, double elapsedSeconds) {
+        long ops = 0;
+        long errors = 0;
+        int samples = 0;
+        for (Worker worker : group) {
+            ops += worker.ops;
+            errors += worker.errors;
+            samples += worker.sampleCount;
+        }
+        long[] latencies = new long[samples];
+        int at = 0;
+        for (Worker worker : group) {
+            System.arraycopy(worker.latencies, 0, latencies, at, worker.sampleCount);
+            at += worker.sampleCount;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%-8s %12d %12.1f %10.1f %10.1f %10.1f %8d%n", role, ops, ops / elapsedSeconds,
+                percentile(latencies, 50) / 1e3, percentile(latencies, 99) / 1e3, percentile(latencies, 100) / 1e3, errors);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    // Runs one operation in a loop until stopped, recording each call's latency
+    private static class Worker extends Thread {
+        private static final int MAX_SAMPLES = 1_000_000;
+
+        private final AtomicBoolean running;
+        private final CountDownLatch startLine;
+        private final BenchmarkHarness.Operation op;
+        final long[] latencies = new long[MAX_SAMPLES];
+        int sampleCount;
+        long ops;
+        long errors; // e.g. SQLITE_BUSY once busy_timeout runs out
+
+        Worker(String name, AtomicBoolean running, CountDownLatch startLine, BenchmarkHarness.Operation op) {
+            super(name);
+            this.running = running;
+            this.startLine = startLine;
+            this.op = op;
+        }
+
+        @Override
+        public void run() {
+            try {
+                startLine.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long iteration = 0;
+            while (running.get()) {
+                long callStart = System.nanoTime();
+                try {
+                    op.run(iteration++);
+                    ops++;
+                } catch (Exception e) {
+                    errors++;
+                }
+                if (sampleCount < MAX_SAMPLES) {
+                    latencies[sampleCount++] = System.nanoTime() - callStart;
+                }
+            }
+        }
+    }
+}
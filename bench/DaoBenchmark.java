@@ -0,0 +1,126 @@
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// Benchmarks every DAO operation against a generated database of a given size.
+// One dataset per JVM (DatabaseConnector is static), so bench/run-benchmarks.sh forks one run per size.
+// Each run works on a fresh copy of the generated dataset (see BenchmarkDataset.workingCopy).
+//
+// Usage: java -cp "out:lib/*" DaoBenchmark [habits] [measureSeconds] [warmupSeconds] [nameFilter]
+public class DaoBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long habits = args.length > 0 ? parseCount(args[0]) : 10_000;
+        long measureMillis = (args.length > 1 ? Long.parseLong(args[1]) : 5) * 1000;
+        long warmupMillis = (args.length > 2 ? Long.parseLong(args[2]) : 2) * 1000;
+        String filter = args.length > 3 ? args[3] : "";
+
+        Path working = BenchmarkDataset.workingCopy(habits);
+        System.setProperty("booktracker.db.path", working.toString());
+
+        List<BenchmarkHarness.Result> results = new DaoBenchmark(habits, filter)
+                .runAll(new BenchmarkHarness(warmupMillis, measureMillis));
+
+        System.out.printf("%n=== DAO benchmarks: %,d habits, %,d users, %,d books, storage %s ===%n",
+                habits, BenchmarkDataset.userCount(habits), BenchmarkDataset.BOOKS, DatabaseConnector.getStorageProfile().getName());
+        System.out.println(BenchmarkHarness.Result.header());
+        for (BenchmarkHarness.Result result : results) {
+            System.out.println(result);
+        }
+
+        ReadingHabitWriter.shutdownShared();
+        DatabaseConnector.shutdown();
+        BenchmarkDataset.deleteWorkingCopy(working);
+    }
+
+    private final long habits;
+    private final int users;
+    private final String filter;
+    private final String[] titles = new String[BenchmarkDataset.BOOKS];
+
+    private final UserDao userDao = new UserDao();
+    private final BookDao bookDao = new BookDao();
+    private final ReadingHabitDao readingHabitDao = new ReadingHabitDao();
+
+    DaoBenchmark(long habits, String filter) {
+        this.habits = habits;
+        this.users = BenchmarkDataset.userCount(habits);
+        this.filter = filter;
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = DatasetGenerator.title(i);
+        }
+    }
+
+    List<BenchmarkHarness.Result> runAll(BenchmarkHarness harness) throws Exception {
+        BookTitleCache.get().warm(); // As Main does on startup
+        List<BenchmarkHarness.Result> results = new ArrayList<>();
+        long unlimited = Long.MAX_VALUE;
+
+        // Reads first, so they see the dataset as generated
+        run(results, harness, "getHabitsByUserId", unlimited, i -> readingHabitDao.getHabitsByUserId(userFor(i)));
+        run(results, harness, "getHabitsPageByUserId (20)", unlimited, i -> readingHabitDao.getHabitsPageByUserId(userFor(i), 20, null));
+        // Many users at once: one IN-list query per chunk vs. the per-user loop it replaces
+        run(results, harness, "getHabitsByUserIds (100 users)", unlimited, i -> readingHabitDao.getHabitsByUserIds(usersFor(i, 100)));
+        run(results, harness, "getHabitsByUserId x100 (loop)", unlimited, i -> {
+            for (int userId : usersFor(i, 100)) readingHabitDao.getHabitsByUserId(userId);
+        });
+        run(results, harness, "findOrCreateBook (existing)", unlimited, i -> bookDao.findOrCreateBook(titles[(int) (i % titles.length)]));
+        run(results, harness, "countUsersForBookTitle", unlimited, i -> readingHabitDao.countUsersForBookTitle(titles[(int) (i % titles.length)]));
+        run(results, harness, "getMeanUserAge", unlimited, i -> userDao.getMeanUserAge());
+        run(results, harness, "getTotalPagesRead", unlimited, i -> readingHabitDao.getTotalPagesRead());
+        run(results, harness, "countUsersReadingMultipleBooks", unlimited, i -> readingHabitDao.countUsersReadingMultipleBooks());
+        run(results, harness, "queryMeanUserAge (SQL)", unlimited, i -> userDao.queryMeanUserAge());
+        run(results, harness, "queryTotalPagesRead (SQL)", unlimited, i -> readingHabitDao.queryTotalPagesRead());
+        run(results, harness, "queryUsersReadingMultiple (SQL)", unlimited, i -> readingHabitDao.queryUsersReadingMultipleBooks());
+
+        // Writes
+        int firstNewUser = users + 1;
+        run(results, harness, "addUser", unlimited, i -> userDao.addUser(firstNewUser + (int) i, 30, "F", "Bench User"));
+        run(results, harness, "addReadingHabit", unlimited, i -> readingHabitDao.addReadingHabit(
+                new ReadingHabit(0, userFor(i), (int) (i % titles.length) + 1, 10, Instant.now(), null)));
+        run(results, harness, "updateBookTitle", unlimited, i -> {
+            // Rename book 1 back and forth
+            if (i % 2 == 0) bookDao.updateBookTitle(titles[0], titles[0] + " (renamed)");
+            else bookDao.updateBookTitle(titles[0] + " (renamed)", titles[0]);
+        });
+        // Deletes consume the generated habits from the top, at most half of them
+        run(results, harness, "deleteHabitById", habits / 2, i -> readingHabitDao.deleteHabitById((int) (habits - i)));
+        return results;
+    }
+
+    private void run(List<BenchmarkHarness.Result> results, BenchmarkHarness harness, String name,
+                     long maxCalls, BenchmarkHarness.Operation op) throws Exception {
+        if (!name.toLowerCase().contains(filter.toLowerCase())) return;
+        System.out.println("INFO: Running " + name + " ...");
+        results.add(harness.run(name, maxCalls, op));
+    }
+
+    // Spreads calls over all users with a fixed stride
+    private int userFor(long iteration) {
+        return (int) ((iteration * 7919) % users) + 1;
+    }
+
+    // count users for one call, spread like userFor
+    private List<Integer> usersFor(long iteration, int count) {
+        List<Integer> ids = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) {
+            ids.add(userFor(iteration * count + k));
+        }
+        return ids;
+    }
+
+    // Accepts 10000, 10k, 1m, 10M
+    static long parseCount(String text) {
+        String value = text.trim().toLowerCase();
+        long multiplier = 1;
+        if (value.endsWith("k")) {
+            multiplier = 1_000;
+            value = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("m")) {
+            multiplier = 1_000_000;
+            value = value.substring(0, value.length() - 1);
+        }
+        return Long.parseLong(value.replace("_", "")) * multiplier;
+    }
+}
@@ -0,0 +1,104 @@
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// Measures what mapping habit rows costs per row, in time and in bytes allocated, on a large read:
+// the habits of a block of users (default 1,000) per call, from a generated dataset.
+//   ResultSet only            - reads every column by index from the driver's ResultSet, keeps nothing
+//   by name + Instant         - the former row mapper: column names through the metrics proxy,
+//                               an Instant per row
+//   getHabitsByUserIds        - ReadingHabit per row, columns by index, epoch millis kept as a long,
+//                               grouped into a list per user
+//   getHabitColumnsByUserIds  - HabitColumns: primitive arrays and a table of distinct titles
+//
+// Usage: java -cp "out:lib/*" RowMappingBenchmark [habits] [measureSeconds] [warmupSeconds] [usersPerCall]
+public class RowMappingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long habits = args.length > 0 ? DaoBenchmark.parseCount(args[0]) : 100_000;
+        long measureMillis = (args.length > 1 ? Long.parseLong(args[1]) : 5) * 1000;
+        long warmupMillis = (args.length > 2 ? Long.parseLong(args[2]) : 2) * 1000;
+        int users = BenchmarkDataset.userCount(habits);
+        int usersPerCall = Math.min(users, args.length > 3 ? Integer.parseInt(args[3]) : 1_000);
+
+        Path working = BenchmarkDataset.workingCopy(habits);
+        System.setProperty("booktracker.db.path", working.toString());
+        BookTitleCache.get().warm();
+        ReadingHabitDao dao = new ReadingHabitDao();
+        List<List<Integer>> blocks = new ArrayList<>();
+        for (int first = 1; first + usersPerCall - 1 <= users; first += usersPerCall) {
+            List<Integer> block = new ArrayList<>(usersPerCall);
+            for (int u = first; u < first + usersPerCall; u++) block.add(u);
+            blocks.add(block);
+        }
+        long totalRows = 0; // To turn per-call numbers into per-row ones
+        for (List<Integer> block : blocks) {
+            totalRows += dao.getHabitColumnsByUserIds(block).size();
+        }
+
+        BenchmarkHarness harness = new BenchmarkHarness(warmupMillis, measureMillis);
+        List<BenchmarkHarness.Result> results = new ArrayList<>();
+        results.add(harness.run("ResultSet only", Long.MAX_VALUE, i -> scan(blocks.get(block(i, blocks)), false)));
+        results.add(harness.run("by name + Instant", Long.MAX_VALUE, i -> scan(blocks.get(block(i, blocks)), true)));
+        results.add(harness.run("getHabitsByUserIds", Long.MAX_VALUE, i -> dao.getHabitsByUserIds(blocks.get(block(i, blocks)))));
+        results.add(harness.run("getHabitColumnsByUserIds", Long.MAX_VALUE, i -> dao.getHabitColumnsByUserIds(blocks.get(block(i, blocks)))));
+
+        double rowsPerCall = (double) totalRows / blocks.size();
+        System.out.printf("%n=== Row mapping: %,d habits, %,d users per call (%,.0f rows on average), storage %s ===%n",
+                habits, usersPerCall, rowsPerCall, DatabaseConnector.getStorageProfile().getName());
+        System.out.printf("%-34s %10s %12s %12s %12s%n", "Benchmark", "Calls", "Rows/sec", "ns/row", "Alloc B/row");
+        for (BenchmarkHarness.Result result : results) {
+            System.out.printf("%-34s %10d %12.0f %12.1f %12.1f%n", result.getName(), result.getCalls(),
+                    result.getOpsPerSecond() * rowsPerCall, 1e9 / (result.getOpsPerSecond() * rowsPerCall),
+                    result.getBytesPerCall() / rowsPerCall);
+        }
+
+        ReadingHabitWriter.shutdownShared();
+        DatabaseConnector.shutdown();
+        BenchmarkDataset.deleteWorkingCopy(working);
+    }
+
+    // Calls cycle through the blocks in order, so every variant reads the same rows
+    private static int block(long iteration, List<List<Integer>> blocks) {
+        return (int) (iteration % blocks.size());
+    }
+
+    // The users' rows mapped the way ReadingHabitDao used to, or only read, with the same IN-list
+    // queries as getHabitsByUserIds (users is ascending and short of MAX_IN_LIST here)
+    private static List<ReadingHabit> scan(List<Integer> users, boolean byName) throws SQLException {
+        List<ReadingHabit> habits = new ArrayList<>();
+        long checksum = 0;
+        try (Connection conn = DatabaseConnector.connect()) {
+            for (int end = users.size(); end > 0; end -= ReadingHabitDao.MAX_IN_LIST) {
+                int start = Math.max(0, end - ReadingHabitDao.MAX_IN_LIST);
+                int size = ReadingHabitDao.inListSize(end - start);
+                try (PreparedStatement pstmt = conn.prepareStatement(ReadingHabitDao.habitsForUsersSql(size))) {
+                    for (int i = 0; i < size; i++) {
+                        pstmt.setInt(i + 1, users.get(Math.min(start + i, end - 1)));
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        ResultSet row = byName ? rs : QueryMetrics.columns(rs); // The old mapper read through the proxy
+                        while (rs.next()) {
+                            if (byName) {
+                                long millis = row.getLong("submissionMoment");
+                                Instant moment = row.wasNull() ? null : Instant.ofEpochMilli(millis);
+                                int bookId = row.getInt("bookID");
+                                habits.add(new ReadingHabit(row.getInt("habitID"), row.getInt("userID"), bookId,
+                                        row.getInt("pagesRead"), moment, BookTitleCache.get().getTitle(conn, bookId)));
+                            } else {
+                                checksum += row.getInt(1) + row.getInt(2) + row.getInt(3) + row.getInt(4) + row.getLong(5);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (checksum == 42) System.out.print(""); // Keeps the reads from being optimized away
+        return habits;
+    }
+}
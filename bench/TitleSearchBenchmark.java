@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Benchmarks TitleSearchIndex on a synthetic catalog (default one million titles), in memory only.
+// Titles are 2-7 words drawn with a Zipf-like skew from a vocabulary of made-up words, so a few
+// words are very common (like "the" or "data") and most are rare. Queries are taken from titles
+// in the catalog: whole words, a cut-off last word (type-ahead) and a word with one typo.
+//
+// Usage: java -cp "out:lib/*" TitleSearchBenchmark [titles] [measureSeconds] [warmupSeconds]
+public class TitleSearchBenchmark {
+
+    private static final int VOCABULARY = 50_000;
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ra", "ten", "vor", "sil", "an", "ber", "dra", "el", "fin", "gor", "hal", "is", "jun",
+            "kel", "lum", "mor", "nel", "or", "pra", "quin", "ros", "sta", "tor", "ul", "ven", "wyn", "xa", "yor", "zen"
+    };
+
+    public static void main(String[] args) throws Exception {
+        int titles = args.length > 0 ? (int) DaoBenchmark.parseCount(args[0]) : 1_000_000;
+        long measureMillis = (args.length > 1 ? Long.parseLong(args[1]) : 5) * 1000;
+        long warmupMillis = (args.length > 2 ? Long.parseLong(args[2]) : 2) * 1000;
+
+        SplittableRandom random = new SplittableRandom(BenchmarkDataset.SEED);
+        String[] words = new String[VOCABULARY];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = word(i);
+        }
+        String[] catalog = new String[titles];
+        TitleSearchIndex index = new TitleSearchIndex();
+        long start = System.nanoTime();
+        for (int i = 0; i < titles; i++) {
+            int length = 2 + random.nextInt(6);
+            StringBuilder title = new StringBuilder();
+            for (int w = 0; w < length; w++) {
+                if (w > 0) title.append(' ');
+                String word = words[skewed(random)];
+                title.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+            }
+            catalog[i] = title.toString();
+            index.add(i + 1, catalog[i]);
+        }
+        double buildSeconds = (System.nanoTime() - start) / 1e9;
+
+        // Query sets, drawn from catalog titles so that every query has at least one answer
+        int queries = 1024;
+        List<String> wholeWords = new ArrayList<>();
+        List<String> typeAhead = new ArrayList<>();
+        List<String> typos = new ArrayList<>();
+        for (int q = 0; q < queries; q++) {
+            String[] tokens = TitleSearchIndex.tokenize(catalog[random.nextInt(titles)]);
+            String first = tokens[0];
+            String second = tokens[1];
+            wholeWords.add(first + " " + second);
+            typeAhead.add(first + " " + second.substring(0, Math.max(1, second.length() - 2)));
+            typos.add(misspell(second, random));
+        }
+
+        BenchmarkHarness harness = new BenchmarkHarness(warmupMillis, measureMillis);
+        List<BenchmarkHarness.Result> results = new ArrayList<>();
+        long unlimited = Long.MAX_VALUE;
+        results.add(harness.run("search: two whole words", unlimited, i -> index.find(wholeWords.get((int) (i % queries)), 10)));
+        results.add(harness.run("search: type-ahead prefix", unlimited, i -> index.find(typeAhead.get((int) (i % queries)), 10)));
+        results.add(harness.run("search: one typo", unlimited, i -> index.find(typos.get((int) (i % queries)), 10)));
+
+        System.out.printf("%n=== Title search: %,d titles, %,d-word vocabulary, index built in %.1f s ===%n",
+                titles, VOCABULARY, buildSeconds);
+        System.out.println(BenchmarkHarness.Result.header());
+        for (BenchmarkHarness.Result result : results) {
+            System.out.println(result);
+        }
+    }
+
+    // Deterministic made-up word for a vocabulary slot: 2-4 syllables
+    private static String word(int i) {
+        StringBuilder word = new StringBuilder();
+        int n = i;
+        do {
+            word.append(SYLLABLES[n % SYLLABLES.length]);
+            n /= SYLLABLES.length;
+        } while (n > 0);
+        return word.length() < 4 ? word.append(SYLLABLES[i % 7]).toString() : word.toString();
+    }
+
+    // Vocabulary slot with a roughly 1/rank distribution
+    private static int skewed(SplittableRandom random) {
+        return (int) Math.min(VOCABULARY - 1, Math.exp(random.nextDouble() * Math.log(VOCABULARY)) - 1);
+    }
+
+    // Replaces one letter in the middle of the word
+    private static String misspell(String word, SplittableRandom random) {
+        if (word.length() < 4) return word;
+        int at = 1 + random.nextInt(word.length() - 2);
+        char replacement = (char) ('a' + random.nextInt(26));
+        return word.substring(0, at) + replacement + word.substring(at + 1);
+    }
+}
@@ -0,0 +1,35 @@
+#!/usr/bin/env sh
+# Compiles the application and the benchmarks, then runs the DAO benchmarks once per dataset size,
+# followed by the concurrent read/write benchmark under the legacy and WAL storage profiles
+# (and WAL with ReadingHabit split across 4 shards), the row mapping benchmark (bytes allocated per row)
+# and the (in-memory) title search benchmark.
+# Each run gets its own JVM (the connection pool is static), like a JMH fork.
+#
+# Usage: bench/run-benchmarks.sh [measureSeconds] [warmupSeconds] [nameFilter]
+# Sizes default to "10k 1m 10m"; override with SIZES="10k 1m" bench/run-benchmarks.sh
+# Datasets are generated once under bench-data/ and reused on later runs.
+set -e
+cd "$(dirname "$0")/.."
+
+SIZES=${SIZES:-"10k 1m 10m"}
+CLASSPATH="out:lib/*"
+
+mkdir -p out
+javac -d out src/*.java bench/*.java
+
+for size in $SIZES; do
+    java -cp "$CLASSPATH" DaoBenchmark "$size" "${1:-5}" "${2:-2}" "${3:-}"
+done
+
+for size in $SIZES; do
+    for profile in legacy wal; do
+        java -cp "$CLASSPATH" -Dbooktracker.storage.profile="$profile" ConcurrentReadWriteBenchmark "$size" "${1:-5}"
+    done
+    java -cp "$CLASSPATH" -Dbooktracker.storage.profile=wal -Dbooktracker.shards=4 ConcurrentReadWriteBenchmark "$size" "${1:-5}" 4 4
+done
+
+for size in $SIZES; do
+    java -cp "$CLASSPATH" RowMappingBenchmark "$size" "${1:-5}" "${2:-2}"
+done
+
+java -cp "$CLASSPATH" TitleSearchBenchmark 1m "${1:-5}" "${2:-2}"
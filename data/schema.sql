@@ -1,34 +1,80 @@
 -- data/schema.sql
+-- The current schema, for creating a database by hand. The application creates the same tables
+-- itself on first start (SchemaMigrations) and records the schema version in schema_version;
+-- run against a database created here, it only records the version.
 
+DROP TABLE IF EXISTS schema_version;
+DROP TABLE IF EXISTS book_reader_sketch;
+DROP TABLE IF EXISTS user_book_marker;
+DROP TABLE IF EXISTS reader_sketch_info;
+DROP TABLE IF EXISTS user_day_rollup;
+DROP TABLE IF EXISTS book_month_rollup;
 DROP TABLE IF EXISTS ReadingHabit;
 DROP TABLE IF EXISTS User;
-DROP TABLE IF EXISTS Book;
+DROP TABLE IF EXISTS Books;
 
 CREATE TABLE User (
-    userID INTEGER PRIMARY KEY AUTOINCREMENT,
-    Name TEXT NOT NULL,
-    Age INTEGER
+    userID INTEGER PRIMARY KEY,
+    age INTEGER,
+    gender TEXT,
+    Name TEXT
 );
 
-CREATE TABLE Book (
+CREATE TABLE Books (
     bookID INTEGER PRIMARY KEY AUTOINCREMENT,
-    Title TEXT NOT NULL UNIQUE
+    title TEXT NOT NULL UNIQUE
 );
 
+-- submissionMoment is epoch milliseconds (UTC)
 CREATE TABLE ReadingHabit (
     habitID INTEGER PRIMARY KEY,
-    userID INTEGER NOT NULL,
+    userID INTEGER,
+    bookID INTEGER REFERENCES Books(bookID),
+    pagesRead INTEGER,
+    submissionMoment INTEGER
+);
+
+CREATE INDEX idx_readinghabit_user_moment ON ReadingHabit (userID, submissionMoment);
+CREATE INDEX idx_readinghabit_book_user ON ReadingHabit (bookID, userID);
+
+-- Reader sketches (ReaderSketches): serialized HyperLogLog sketches per book and month
+-- (year * 12 + month - 1, or -1 for undated habits), each user's only book (0 = more than one),
+-- and the habit count they were built from. Filled by the application.
+CREATE TABLE book_reader_sketch (
     bookID INTEGER NOT NULL,
-    pagesRead INTEGER DEFAULT 0,
-    submissionMoment TEXT,
-    FOREIGN KEY (userID) REFERENCES User(userID)
-        ON DELETE CASCADE
-        ON UPDATE CASCADE,
-    FOREIGN KEY (bookID) REFERENCES Book(bookID)
-        ON DELETE CASCADE
-        ON UPDATE CASCADE
+    month INTEGER NOT NULL,
+    sketch BLOB NOT NULL,
+    PRIMARY KEY (bookID, month)
+) WITHOUT ROWID;
+
+CREATE TABLE user_book_marker (
+    userID INTEGER PRIMARY KEY,
+    bookID INTEGER NOT NULL
 );
 
-CREATE INDEX idx_readinghabit_user ON ReadingHabit (userID);
-CREATE INDEX idx_readinghabit_book ON ReadingHabit (bookID);
-CREATE INDEX idx_book_title ON Book (Title);
\ No newline at end of file
+CREATE TABLE reader_sketch_info (
+    id INTEGER PRIMARY KEY CHECK (id = 1),
+    precision INTEGER NOT NULL,
+    habitCount INTEGER NOT NULL,
+    removedHabits INTEGER NOT NULL,
+    builtAt INTEGER NOT NULL
+);
+
+-- Rollups (HabitRollups): pages and habits per user per UTC day (days since 1970-01-01) and per
+-- book per month (year * 12 + month - 1). Kept up to date by the application with every habit
+-- added or deleted; habits without a submissionMoment are left out.
+CREATE TABLE user_day_rollup (
+    userID INTEGER NOT NULL,
+    day INTEGER NOT NULL,
+    pages INTEGER NOT NULL,
+    habits INTEGER NOT NULL,
+    PRIMARY KEY (userID, day)
+) WITHOUT ROWID;
+
+CREATE TABLE book_month_rollup (
+    bookID INTEGER NOT NULL,
+    month INTEGER NOT NULL,
+    pages INTEGER NOT NULL,
+    habits INTEGER NOT NULL,
+    PRIMARY KEY (bookID, month)
+) WITHOUT ROWID;
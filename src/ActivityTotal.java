@@ -0,0 +1,77 @@
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+// Pages and habits in one period of a range report (see ReadingHabitDao.getUserActivity)
+public class ActivityTotal {
+
+    public enum Period {
+        DAY("Day"),
+        WEEK("Week"),   // Monday to Sunday
+        MONTH("Month"),
+        YEAR("Year");
+
+        private final String description;
+
+        Period(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        // First day of the period containing date
+        public LocalDate start(LocalDate date) {
+            switch (this) {
+                case WEEK: return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTH: return date.withDayOfMonth(1);
+                case YEAR: return date.withDayOfYear(1);
+                default: return date;
+            }
+        }
+
+        // First day of the period after the one starting at start
+        public LocalDate next(LocalDate start) {
+            switch (this) {
+                case WEEK: return start.plusWeeks(1);
+                case MONTH: return start.plusMonths(1);
+                case YEAR: return start.plusYears(1);
+                default: return start.plusDays(1);
+            }
+        }
+    }
+
+    private final Period period;
+    private final LocalDate start; // First day of the period (UTC)
+    private final long pagesRead;
+    private final long habits;
+
+    public ActivityTotal(Period period, LocalDate start, long pagesRead, long habits) {
+        this.period = period;
+        this.start = start;
+        this.pagesRead = pagesRead;
+        this.habits = habits;
+    }
+
+    public Period getPeriod() {
+        return period;
+    }
+
+    public LocalDate getStart() {
+        return start;
+    }
+
+    public long getPagesRead() {
+        return pagesRead;
+    }
+
+    public long getHabits() {
+        return habits;
+    }
+
+    @Override
+    public String toString() {
+        return "ActivityTotal [period=" + period + ", start=" + start + ", pagesRead=" + pagesRead + ", habits=" + habits + "]";
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Non-interactive entry point for bulk admin cleanups, built on the batch DAO methods.
+// Each command runs as one transaction and prints one line per item, then a summary.
+//
+// Usage: java -cp "out:lib/sqlite-jdbc-....jar" AdminCli <command> [--quiet] ...
+//   add-users <users.csv>                 CSV with a userID,age,gender,name header
+//   delete-habits <ids.txt | id id ...>   habitIDs as arguments, or a file of IDs (one per line or comma-separated)
+//   remap-titles <remap.csv>              CSV with an oldTitle,newTitle header; applied in file order
+// Exit status: 0 when the batch was committed, 1 when it was rolled back or failed, 2 for bad usage.
+public class AdminCli {
+
+    private static final String USAGE = """
+            Usage: AdminCli <command> [--quiet] ...
+              add-users <users.csv>                 (header: userID,age,gender,name)
+              delete-habits <ids.txt | id id ...>   (file: one habitID per line or comma-separated)
+              remap-titles <remap.csv>              (header: oldTitle,newTitle)""";
+
+    public static void main(String[] args) {
+        List<String> arguments = new ArrayList<>(List.of(args));
+        boolean quiet = arguments.remove("--quiet");
+        if (arguments.size() < 2) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        int status;
+        try {
+            SchemaMigrations.migrateIfNeeded();
+            BatchResult result = run(arguments.get(0), arguments.subList(1, arguments.size()));
+            for (BatchResult.Item item : result.getItems()) {
+                if (!quiet || item.getStatus() == BatchResult.Status.FAILED) {
+                    System.out.println(item);
+                }
+            }
+            System.out.println((result.isCommitted() ? "SUCCESS: " : "ERROR: ") + result);
+            status = result.isCommitted() ? 0 : 1;
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            System.err.println(USAGE);
+            status = 2;
+        } catch (IOException | SQLException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            status = 1;
+        } finally {
+            DatabaseConnector.shutdown();
+        }
+        System.exit(status);
+    }
+
+    static BatchResult run(String command, List<String> operands) throws IOException, SQLException {
+        switch (command) {
+            case "add-users":
+                return new UserDao().addUsers(readUsers(single(operands)));
+            case "delete-habits":
+                return new ReadingHabitDao().deleteHabitsByIds(readIds(operands));
+            case "remap-titles":
+                return new BookDao().updateBookTitles(readTitleRemap(single(operands)));
+            default:
+                throw new IllegalArgumentException("Unknown command '" + command + "'");
+        }
+    }
+
+    private static String single(List<String> operands) {
+        if (operands.size() != 1) throw new IllegalArgumentException("Expected one file name");
+        return operands.get(0);
+    }
+
+    static List<User> readUsers(String file) throws IOException {
+        List<User> users = new ArrayList<>();
+        for (String[] record : readCsv(file, "userID", "age", "gender", "name")) {
+            users.add(new User(parseInt(record[0], "userID"), parseInt(record[1], "age"), record[2], record[3]));
+        }
+        return users;
+    }
+
+    static Map<String, String> readTitleRemap(String file) throws IOException {
+        Map<String, String> remap = new LinkedHashMap<>();
+        for (String[] record : readCsv(file, "oldTitle", "newTitle")) {
+            if (record[0].isEmpty() || record[1].isEmpty()) throw new IllegalArgumentException("Empty title in " + file);
+            if (remap.put(record[0], record[1]) != null) {
+                throw new IllegalArgumentException("'" + record[0] + "' is remapped twice in " + file);
+            }
+        }
+        return remap;
+    }
+
+    // IDs given on the command line, or read from a single file
+    static int[] readIds(List<String> operands) throws IOException {
+        List<String> values = new ArrayList<>();
+        if (operands.size() == 1 && !operands.get(0).matches("\\d+")) {
+            for (String line : Files.readAllLines(Paths.get(operands.get(0)), StandardCharsets.UTF_8)) {
+                for (String value : line.split(",")) {
+                    if (!value.trim().isEmpty()) values.add(value.trim());
+                }
+            }
+        } else {
+            values.addAll(operands);
+        }
+        int[] ids = new int[values.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = parseInt(values.get(i), "habitID");
+        }
+        return ids;
+    }
+
+    // Records of a CSV file whose header names exactly the given columns (in any order), reordered to match
+    private static List<String[]> readCsv(String file, String... columns) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8);
+             CsvReader csv = new CsvReader(reader)) {
+            String[] header = csv.readRecord();
+            if (header == null) throw new IOException(file + " is empty");
+            int[] positions = new int[columns.length];
+            for (int c = 0; c < columns.length; c++) {
+                positions[c] = -1;
+                for (int i = 0; i < header.length; i++) {
+                    if (header[i].trim().replace("\uFEFF", "").equalsIgnoreCase(columns[c])) positions[c] = i;
+                }
+                if (positions[c] < 0) {
+                    throw new IOException(file + " needs a header with the columns " + String.join(",", columns));
+                }
+            }
+            String[] record;
+            while ((record = csv.readRecord()) != null) {
+                if (record.length == 1 && record[0].isEmpty()) continue; // Blank line
+                String[] values = new String[columns.length];
+                for (int c = 0; c < columns.length; c++) {
+                    if (positions[c] >= record.length) {
+                        throw new IOException("Missing " + columns[c] + " before line " + csv.getLineNumber() + " of " + file);
+                    }
+                    values[c] = record[positions[c]];
+                }
+                records.add(values);
+            }
+        }
+        return records;
+    }
+
+    private static int parseInt(String text, String what) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + what + ": '" + text + "'");
+        }
+    }
+}
@@ -0,0 +1,389 @@
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Non-blocking facade over UserDao, BookDao and ReadingHabitDao: every method returns at once with a
+// CompletableFuture, so callers can fan out (e.g. habits for 500 users) instead of querying serially.
+//
+// Reads run on a fixed pool with one thread per pooled connection, behind a bounded queue; when the
+// queue is full the future fails with RejectedExecutionException rather than piling up work.
+// Identical reads in flight at the same time (same method and arguments) share one query, so their
+// results are shared too and must not be modified. Writes go through the ReadingHabitWriter thread,
+// like server mode, so they never contend for SQLite's write lock; when sharded, habit deletes go to
+// the writer of the habits' shard, which is looked up on the read pool first.
+//
+// Every future times out after booktracker.async.timeoutMillis (TimeoutException). Cancelling a future,
+// or letting it time out, drops work that hasn't started yet; a read shared with other callers keeps
+// running for them. A query or write that has already started still runs to completion.
+public class AsyncDao implements AutoCloseable {
+
+    @FunctionalInterface
+    private interface Query<T> {
+        T run() throws SQLException;
+    }
+
+    private static final int QUEUE_CAPACITY = Integer.getInteger("booktracker.async.queueCapacity", 1_000);
+    private static final long TIMEOUT_MILLIS = Long.getLong("booktracker.async.timeoutMillis", 30_000L);
+
+    private static AsyncDao shared;
+
+    private final UserDao userDao = new UserDao();
+    private final BookDao bookDao = new BookDao();
+    private final ReadingHabitDao readingHabitDao = new ReadingHabitDao();
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+
+    // Reads queued or running, by method name and arguments
+    private final Map<List<Object>, SharedRead<?>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+
+    public AsyncDao(int threads, int queueCapacity, long timeoutMillis) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "booktracker-async-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    // Facade sized to the connection pool (more threads would only wait for a connection), started on first use
+    public static synchronized AsyncDao shared() {
+        if (shared == null) {
+            shared = new AsyncDao(DatabaseConnector.getPoolStats().getMaxSize(), QUEUE_CAPACITY, TIMEOUT_MILLIS);
+        }
+        return shared;
+    }
+
+    // Stops the shared facade if it was ever started
+    public static synchronized void shutdownShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    // --- Users ---
+
+    public CompletableFuture<Boolean> addUser(int userId, int age, String gender, String name) {
+        return write(() -> userDao.addUser(userId, age, gender, name));
+    }
+
+    public CompletableFuture<BatchResult> addUsers(List<User> users) {
+        List<User> copy = List.copyOf(users);
+        return write(() -> userDao.addUsers(copy));
+    }
+
+    public CompletableFuture<Double> getMeanUserAge() {
+        return read(userDao::getMeanUserAge, "getMeanUserAge");
+    }
+
+    // --- Books ---
+
+    public CompletableFuture<Boolean> updateBookTitle(String oldTitle, String newTitle) {
+        return write(() -> bookDao.updateBookTitle(oldTitle, newTitle));
+    }
+
+    public CompletableFuture<BatchResult> updateBookTitles(Map<String, String> newTitlesByOld) {
+        Map<String, String> copy = new LinkedHashMap<>(newTitlesByOld);
+        return write(() -> bookDao.updateBookTitles(copy));
+    }
+
+    public CompletableFuture<List<TitleSearchIndex.Match>> searchTitles(String query, int limit) {
+        return read(() -> bookDao.searchTitles(query, limit), "searchTitles", query, limit);
+    }
+
+    // --- Reading habits ---
+
+    public CompletableFuture<List<ReadingHabit>> getHabitsByUserId(int userId) {
+        return read(() -> readingHabitDao.getHabitsByUserId(userId), "getHabitsByUserId", userId);
+    }
+
+    public CompletableFuture<Map<Integer, List<ReadingHabit>>> getHabitsByUserIds(Collection<Integer> userIds) {
+        List<Integer> copy = List.copyOf(userIds);
+        return read(() -> readingHabitDao.getHabitsByUserIds(copy), "getHabitsByUserIds", copy);
+    }
+
+    public CompletableFuture<HabitPage> getHabitsPageByUserId(int userId, int pageSize, HabitPage.Key after) {
+        Object cursor = after == null ? null : Arrays.asList(after.getSubmissionMoment(), after.getHabitID());
+        return read(() -> readingHabitDao.getHabitsPageByUserId(userId, pageSize, after),
+                "getHabitsPageByUserId", userId, pageSize, cursor);
+    }
+
+    public CompletableFuture<List<ReadingHabit>> getHabitsByUserIdBetween(int userId, Instant from, Instant to) {
+        return read(() -> readingHabitDao.getHabitsByUserIdBetween(userId, from, to),
+                "getHabitsByUserIdBetween", userId, from, to);
+    }
+
+    public CompletableFuture<Long> getPagesReadByUserIdBetween(int userId, Instant from, Instant to) {
+        return read(() -> readingHabitDao.getPagesReadByUserIdBetween(userId, from, to),
+                "getPagesReadByUserIdBetween", userId, from, to);
+    }
+
+    public CompletableFuture<Integer> countUsersForBookTitle(String bookTitle) {
+        return read(() -> readingHabitDao.countUsersForBookTitle(bookTitle), "countUsersForBookTitle", bookTitle);
+    }
+
+    public CompletableFuture<Long> getTotalPagesRead() {
+        return read(readingHabitDao::getTotalPagesRead, "getTotalPagesRead");
+    }
+
+    public CompletableFuture<Integer> countUsersReadingMultipleBooks() {
+        return read(readingHabitDao::countUsersReadingMultipleBooks, "countUsersReadingMultipleBooks");
+    }
+
+    public CompletableFuture<List<LeaderboardEntry>> getLeaderboard(LeaderboardEntry.Board board, int n) {
+        return read(() -> readingHabitDao.getLeaderboard(board, n), "getLeaderboard", board, n);
+    }
+
+    public CompletableFuture<List<LeaderboardEntry>> getLeaderboardForLastDays(LeaderboardEntry.Board board, int n, int days) {
+        return read(() -> readingHabitDao.getLeaderboardForLastDays(board, n, days),
+                "getLeaderboardForLastDays", board, n, days);
+    }
+
+    // Queued with the write-behind habits, so it's already asynchronous; only the timeout is added
+    public CompletableFuture<Integer> submitHabit(ReadingHabit habit) {
+        return readingHabitDao.submitHabit(habit).orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public CompletableFuture<Boolean> deleteHabitById(int habitId) {
+        return write(writerForHabits(habitId), () -> readingHabitDao.deleteHabitById(habitId));
+    }
+
+    public CompletableFuture<BatchResult> deleteHabitsByIds(int[] habitIds) {
+        int[] copy = habitIds.clone();
+        return write(writerForHabits(copy), () -> readingHabitDao.deleteHabitsByIds(copy));
+    }
+
+    // Looks the shard up on the executor, outside read(): it isn't a read to count, and each delete
+    // has its own IDs, so there's nothing to coalesce. write() adds the timeout.
+    private CompletableFuture<ReadingHabitWriter> writerForHabits(int... habitIds) {
+        if (DatabaseConnector.getShards() == null) {
+            return CompletableFuture.completedFuture(ReadingHabitWriter.shared());
+        }
+        CompletableFuture<ReadingHabitWriter> writer = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    writer.complete(ReadingHabitWriter.forHabits(habitIds));
+                } catch (SQLException | RuntimeException e) {
+                    writer.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            writer.completeExceptionally(executor.isShutdown() ? e : new RejectedExecutionException(
+                    "Too many queued reads (" + executor.getQueue().size() + "); try again later", e));
+        }
+        return writer;
+    }
+
+    // Results of all the futures in order, or the first failure
+    public static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<T> results = new ArrayList<>(futures.size());
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        });
+    }
+
+    public AsyncStats getStats() {
+        return new AsyncStats(executor.getMaximumPoolSize(), executor.getActiveCount(), executor.getQueue().size(),
+                inFlight.size(), reads.sum(), coalesced.sum(), rejected.sum(), timedOut.sum(), cancelled.sum());
+    }
+
+    // Stops accepting work and waits briefly for running queries; queued ones fail with RejectedExecutionException
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (SharedRead<?> read : inFlight.values()) {
+            read.result.completeExceptionally(new RejectedExecutionException("Async DAO facade has been shut down"));
+        }
+        inFlight.clear();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> read(Query<T> query, String method, Object... args) {
+        reads.increment();
+        List<Object> key = new ArrayList<>(args.length + 1);
+        key.add(method);
+        key.addAll(Arrays.asList(args));
+
+        @SuppressWarnings("unchecked")
+        SharedRead<T> read = (SharedRead<T>) inFlight.compute(key,
+                (k, current) -> current != null && current.join() ? current : new SharedRead<>(k, query));
+        if (read.claimSubmit()) {
+            try {
+                read.task = executor.submit(read::run);
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                inFlight.remove(key, read);
+                read.result.completeExceptionally(executor.isShutdown() ? e : new RejectedExecutionException(
+                        "Too many queued reads (" + executor.getQueue().size() + "); try again later", e));
+            }
+        } else {
+            coalesced.increment();
+        }
+
+        // Each caller gets its own future, so one caller cancelling doesn't cancel the others
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        read.result.whenComplete((value, error) -> {
+            if (error != null) mine.completeExceptionally(unwrap(error));
+            else mine.complete(value);
+        });
+        mine.whenComplete((value, error) -> {
+            if (error instanceof CancellationException || error instanceof TimeoutException) {
+                (error instanceof TimeoutException ? timedOut : cancelled).increment();
+                read.leave();
+            }
+        });
+        return mine.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private <T> CompletableFuture<T> write(ReadingHabitWriter.WriteTask<T> task) {
+        return write(CompletableFuture.completedFuture(ReadingHabitWriter.shared()), task);
+    }
+
+    // Queues the task on the writer once it's known
+    private <T> CompletableFuture<T> write(CompletableFuture<ReadingHabitWriter> writer, ReadingHabitWriter.WriteTask<T> task) {
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        writer.thenCompose(w -> w.execute(() -> mine.isDone() ? null : task.run())) // Skipped if cancelled or timed out while queued
+                .whenComplete((value, error) -> {
+                    if (error != null) mine.completeExceptionally(unwrap(error));
+                    else mine.complete(value);
+                });
+        mine.whenComplete((value, error) -> {
+            if (error instanceof CancellationException) cancelled.increment();
+            else if (error instanceof TimeoutException) timedOut.increment();
+        });
+        return mine.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    // One query and the callers waiting for it
+    private final class SharedRead<T> {
+        final List<Object> key;
+        final Query<T> query;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        volatile Future<?> task;
+        private int waiters = 1;
+        private boolean submitted;
+
+        SharedRead(List<Object> key, Query<T> query) {
+            this.key = key;
+            this.query = query;
+        }
+
+        // Called inside inFlight.compute(); false once the query is finished or abandoned
+        synchronized boolean join() {
+            if (result.isDone() || waiters == 0) return false;
+            waiters++;
+            return true;
+        }
+
+        synchronized boolean claimSubmit() {
+            if (submitted) return false;
+            submitted = true;
+            return true;
+        }
+
+        // A caller gave up; when the last one does, drop the query if it hasn't started
+        void leave() {
+            synchronized (this) {
+                if (--waiters > 0 || result.isDone()) return;
+            }
+            inFlight.remove(key, this);
+            Future<?> queued = task;
+            if (queued != null) queued.cancel(false);
+            result.cancel(false);
+        }
+
+        void run() {
+            if (result.isDone()) return; // Abandoned while queued
+            T value = null;
+            Throwable error = null;
+            try {
+                value = query.run();
+            } catch (SQLException | RuntimeException e) {
+                error = e;
+            }
+            // Callers arriving from now on start a fresh query rather than get this (possibly stale) result
+            inFlight.remove(key, this);
+            if (error != null) result.completeExceptionally(error);
+            else result.complete(value);
+        }
+    }
+
+    public static class AsyncStats {
+        private final int threads;
+        private final int active;
+        private final int queued;
+        private final int inFlight;
+        private final long reads;
+        private final long coalesced;
+        private final long rejected;
+        private final long timedOut;
+        private final long cancelled;
+
+        AsyncStats(int threads, int active, int queued, int inFlight, long reads,
+                   long coalesced, long rejected, long timedOut, long cancelled) {
+            this.threads = threads;
+            this.active = active;
+            this.queued = queued;
+            this.inFlight = inFlight;
+            this.reads = reads;
+            this.coalesced = coalesced;
+            this.rejected = rejected;
+            this.timedOut = timedOut;
+            this.cancelled = cancelled;
+        }
+
+        public int getThreads() { return threads; }
+        public int getActive() { return active; }
+        public int getQueued() { return queued; }
+        public int getInFlight() { return inFlight; }
+        public long getReads() { return reads; }
+        public long getCoalesced() { return coalesced; }
+        public long getRejected() { return rejected; }
+        public long getTimedOut() { return timedOut; }
+        public long getCancelled() { return cancelled; }
+
+        @Override
+        public String toString() {
+            return String.format("AsyncStats [threads=%d, active=%d, queued=%d, inFlight=%d, reads=%d, coalesced=%d, rejected=%d, timedOut=%d, cancelled=%d]",
+                    threads, active, queued, inFlight, reads, coalesced, rejected, timedOut, cancelled);
+        }
+    }
+}
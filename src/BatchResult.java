@@ -0,0 +1,150 @@
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Outcome of a batch DAO operation (UserDao.addUsers, ReadingHabitDao.deleteHabitsByIds,
+// BookDao.updateBookTitles): one Item per input, in input order.
+// A batch runs in a single transaction. If any item fails, the whole batch is rolled back: the
+// failing item is FAILED (with the database's message), earlier ones ROLLED_BACK, later ones NOT_RUN.
+public class BatchResult {
+
+    public enum Status { APPLIED, NOT_FOUND, FAILED, ROLLED_BACK, NOT_RUN }
+
+    // Statements are sent to SQLite in chunks of this many items (one transaction regardless)
+    static final int CHUNK_SIZE = 1_000;
+
+    private final List<Item> items;
+    private final boolean committed;
+    private final long elapsedNanos;
+
+    private BatchResult(List<Item> items, boolean committed, long elapsedNanos) {
+        this.items = Collections.unmodifiableList(items);
+        this.committed = committed;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    // Committed batch: items that changed a row are APPLIED, the rest NOT_FOUND
+    static BatchResult committed(List<String> keys, int[] updateCounts, long startNanos) {
+        List<Item> items = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            boolean applied = updateCounts[i] > 0 || updateCounts[i] == Statement.SUCCESS_NO_INFO;
+            items.add(new Item(keys.get(i), applied ? Status.APPLIED : Status.NOT_FOUND, null));
+        }
+        return new BatchResult(items, true, System.nanoTime() - startNanos);
+    }
+
+    static BatchResult rolledBack(List<String> keys, int failedIndex, String message, long startNanos) {
+        List<Item> items = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            Status status = i < failedIndex ? Status.ROLLED_BACK : i == failedIndex ? Status.FAILED : Status.NOT_RUN;
+            items.add(new Item(keys.get(i), status, i == failedIndex ? message : null));
+        }
+        return new BatchResult(items, false, System.nanoTime() - startNanos);
+    }
+
+    @FunctionalInterface
+    interface Binder<T> {
+        void bind(PreparedStatement pstmt, T item) throws SQLException;
+    }
+
+    // Binds and runs every item through pstmt, CHUNK_SIZE at a time, and returns the update counts.
+    // The caller owns the transaction on conn; a failing item is reported as ItemFailedException.
+    static <T> int[] executeBatch(Connection conn, PreparedStatement pstmt, List<T> items, Binder<T> binder) throws SQLException {
+        int[] counts = new int[items.size()];
+        for (int from = 0; from < items.size(); from += CHUNK_SIZE) {
+            int to = Math.min(items.size(), from + CHUNK_SIZE);
+            Savepoint chunkStart = conn.setSavepoint();
+            for (int i = from; i < to; i++) {
+                binder.bind(pstmt, items.get(i));
+                pstmt.addBatch();
+            }
+            try {
+                int[] chunk = pstmt.executeBatch();
+                System.arraycopy(chunk, 0, counts, from, chunk.length);
+            } catch (BatchUpdateException e) {
+                // Drivers that report progress stop at the failing statement; the counts cover the ones before it
+                int[] done = e.getUpdateCounts();
+                throw new ItemFailedException(from + (done == null ? 0 : done.length), e);
+            } catch (SQLException e) {
+                // sqlite-jdbc doesn't say which statement failed: undo the chunk and replay it one item at a time
+                pstmt.clearBatch();
+                conn.rollback(chunkStart);
+                for (int i = from; i < to; i++) {
+                    binder.bind(pstmt, items.get(i));
+                    try {
+                        counts[i] = pstmt.executeUpdate();
+                    } catch (SQLException itemError) {
+                        throw new ItemFailedException(i, itemError);
+                    }
+                }
+            }
+            conn.releaseSavepoint(chunkStart);
+        }
+        return counts;
+    }
+
+    public List<Item> getItems() { return items; }
+    public boolean isCommitted() { return committed; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    public int count(Status status) {
+        int count = 0;
+        for (Item item : items) {
+            if (item.status == status) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        if (committed) {
+            return String.format("BatchResult [committed, %d applied, %d not found, in %.1f ms]",
+                    count(Status.APPLIED), count(Status.NOT_FOUND), elapsedNanos / 1e6);
+        }
+        return String.format("BatchResult [rolled back, %d failed, %d rolled back, %d not run, in %.1f ms]",
+                count(Status.FAILED), count(Status.ROLLED_BACK), count(Status.NOT_RUN), elapsedNanos / 1e6);
+    }
+
+    public static class Item {
+        private final String key;
+        private final Status status;
+        private final String message;
+
+        Item(String key, Status status, String message) {
+            this.key = key;
+            this.status = status;
+            this.message = message;
+        }
+
+        public String getKey() { return key; }
+        public Status getStatus() { return status; }
+        public String getMessage() { return message; }
+
+        @Override
+        public String toString() {
+            return String.format("%-11s %s%s", status, key, message == null ? "" : " (" + message + ")");
+        }
+    }
+
+    // One item of a batch failed; index is its position in the batch
+    static class ItemFailedException extends SQLException {
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+
+        ItemFailedException(int index, SQLException cause) {
+            super(cause.getMessage(), cause.getSQLState(), cause.getErrorCode(), cause);
+            this.index = index;
+        }
+
+        int getIndex() {
+            return index;
+        }
+    }
+}
@@ -1,4 +1,7 @@
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 // DAO for Book entity operations
 public class BookDao {
@@ -17,44 +20,113 @@ public class BookDao {
                 success = true;
             }
         }
+        if (success) {
+            BookTitleCache.get().titleChanged(oldTitle, newTitle);
+            TitleSearchIndex.get().titleChanged(oldTitle, newTitle);
+            habitListsChanged(newTitle);
+        }
         // Let SQLException (like unique constraint violation) propagate up
         return success;
     }
 
+    // Renames books in one transaction, in map order (so "A" -> "B" then "B" -> "C" works).
+    // Titles that don't exist are NOT_FOUND; a rename onto an existing title rolls the whole batch back.
+    public BatchResult updateBookTitles(Map<String, String> newTitlesByOld) throws SQLException {
+        String sql = "UPDATE Books SET title = ? WHERE title = ?";
+        long start = System.nanoTime();
+        List<Map.Entry<String, String>> changes = new ArrayList<>(newTitlesByOld.entrySet());
+        List<String> keys = new ArrayList<>(changes.size());
+        for (Map.Entry<String, String> change : changes) {
+            keys.add("'" + change.getKey() + "' -> '" + change.getValue() + "'");
+        }
+
+        BatchResult result;
+        try (Connection conn = DatabaseConnector.connect()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                int[] counts = BatchResult.executeBatch(conn, pstmt, changes, (ps, change) -> {
+                    ps.setString(1, change.getValue());
+                    ps.setString(2, change.getKey());
+                });
+                conn.commit();
+                result = BatchResult.committed(keys, counts, start);
+            } catch (BatchResult.ItemFailedException e) {
+                conn.rollback();
+                return BatchResult.rolledBack(keys, e.getIndex(), e.getMessage(), start);
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        for (int i = 0; i < changes.size(); i++) {
+            if (result.getItems().get(i).getStatus() == BatchResult.Status.APPLIED) {
+                BookTitleCache.get().titleChanged(changes.get(i).getKey(), changes.get(i).getValue());
+                TitleSearchIndex.get().titleChanged(changes.get(i).getKey(), changes.get(i).getValue());
+                habitListsChanged(changes.get(i).getValue());
+            }
+        }
+        return result;
+    }
+
+    // Cached habit lists hold the old title; drop the ones containing the renamed book
+    private static void habitListsChanged(String newTitle) throws SQLException {
+        Integer bookId = BookTitleCache.get().findBookId(newTitle);
+        if (bookId != null) {
+            HabitListCache.get().titleChanged(bookId);
+        } else {
+            HabitListCache.get().invalidateAll();
+        }
+    }
+
      // Helper method might be needed if implementing "Add Habit" later
      public int findOrCreateBook(String title) throws SQLException {
-        String findSql = "SELECT bookID FROM Books WHERE title = ?";
-        String insertSql = "INSERT INTO Books (title) VALUES (?)";
-        int bookId = -1;
-
+        // Known titles are answered from memory
+        Integer bookId = BookTitleCache.get().findBookId(title);
+        if (bookId != null) {
+            return bookId;
+        }
         try (Connection conn = DatabaseConnector.connect()) {
-            // Try finding first
-            try (PreparedStatement findPstmt = conn.prepareStatement(findSql)) {
-                findPstmt.setString(1, title);
-                try (ResultSet rs = findPstmt.executeQuery()) {
-                    if (rs.next()) {
-                        return rs.getInt("bookID"); // Found existing book
+            int newBookId = insertBook(conn, title);
+            BookTitleCache.get().bookCreated(newBookId, title); // Auto-commit, so it's safe to cache now
+            return newBookId;
+        }
+     }
+
+    // Same lookup on the caller's connection (so it can take part in the caller's transaction)
+    int findOrCreateBook(Connection conn, String title) throws SQLException {
+        // Try finding first (cache, then this connection)
+        Integer bookId = BookTitleCache.get().findBookId(conn, title);
+        if (bookId != null) {
+            return bookId; // Found existing book
+        }
+
+        // If not found, insert it (throws if that fails too)
+        return insertBook(conn, title);
+    }
+
+    // Inserts a new title on the caller's connection (so it can take part in the caller's transaction)
+    int insertBook(Connection conn, String title) throws SQLException {
+        String insertSql = "INSERT INTO Books (title) VALUES (?)";
+        try (PreparedStatement insertPstmt = conn.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
+            insertPstmt.setString(1, title);
+            int affectedRows = insertPstmt.executeUpdate();
+            if (affectedRows > 0) {
+                try (ResultSet generatedKeys = insertPstmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        return generatedKeys.getInt(1); // Return newly generated bookID
                     }
                 }
             }
-
-            // If not found, insert it
-            try (PreparedStatement insertPstmt = conn.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
-                 insertPstmt.setString(1, title);
-                 int affectedRows = insertPstmt.executeUpdate();
-                 if (affectedRows > 0) {
-                     try (ResultSet generatedKeys = insertPstmt.getGeneratedKeys()) {
-                         if (generatedKeys.next()) {
-                             return generatedKeys.getInt(1); // Return newly generated bookID
-                         }
-                     }
-                 }
-            }
         }
-         // Should ideally throw specific error if book couldn't be found or created
-        if (bookId == -1) throw new SQLException("Could not find or create book with title: " + title);
-         return bookId;
-     }
+        throw new SQLException("Could not create book with title: " + title);
+    }
+
+    // Prefix / word / typo-tolerant title search, best matches first (see TitleSearchIndex)
+    public List<TitleSearchIndex.Match> searchTitles(String query, int limit) throws SQLException {
+        return TitleSearchIndex.get().search(query, limit);
+    }
 
     // Future methods: addBook, getBookById, getAllBooks, deleteBook...
 }
\ No newline at end of file
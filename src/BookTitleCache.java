@@ -0,0 +1,187 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// In-process cache of the Books table: bookID <-> title in both directions.
+// Books is small and read-mostly, so it is warmed on startup and then serves title lookups
+// and habit hydration without touching SQLite. Bounded (LRU) by maxEntries; each title is
+// held as one String instance that every hydrated ReadingHabit shares.
+// Only committed rows are cached: lookups made inside a caller's transaction read the cache
+// but never fill it, so a rollback can't leave a bookID behind that doesn't exist.
+public class BookTitleCache {
+
+    private static final int MAX_ENTRIES = Integer.getInteger("booktracker.bookCache.maxEntries", 100_000);
+    private static final BookTitleCache instance = new BookTitleCache(MAX_ENTRIES);
+
+    private final int maxEntries;
+    private final LinkedHashMap<Integer, String> titlesById;
+    private final Map<String, Integer> idsByTitle = new HashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    // Bumped on every title change; a load that started before a change isn't cached
+    private long generation = 0;
+
+    BookTitleCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.titlesById = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                if (size() > BookTitleCache.this.maxEntries) {
+                    idsByTitle.remove(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static BookTitleCache get() {
+        return instance;
+    }
+
+    // Loads up to maxEntries books; called once on startup
+    public void warm() throws SQLException {
+        try (Connection conn = DatabaseConnector.connect();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT bookID, title FROM Books ORDER BY bookID LIMIT ?")) {
+            pstmt.setInt(1, maxEntries);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                synchronized (this) {
+                    while (rs.next()) {
+                        put(rs.getInt("bookID"), rs.getString("title"));
+                    }
+                }
+            }
+        }
+    }
+
+    // Title for a bookID, or null if there is no such book
+    public String getTitle(int bookId) throws SQLException {
+        String title = cachedTitle(bookId);
+        if (title != null) return title;
+        try (Connection conn = DatabaseConnector.connect()) {
+            return loadTitle(conn, bookId, true);
+        }
+    }
+
+    // Same, reading through the caller's connection on a miss (e.g. while iterating a ResultSet)
+    public String getTitle(Connection conn, int bookId) throws SQLException {
+        String title = cachedTitle(bookId);
+        return title != null ? title : loadTitle(conn, bookId, conn.getAutoCommit());
+    }
+
+    // bookID for a title, or null if there is no such book
+    public Integer findBookId(String title) throws SQLException {
+        Integer bookId = cachedBookId(title);
+        if (bookId != null) return bookId;
+        try (Connection conn = DatabaseConnector.connect()) {
+            return loadBookId(conn, title, true);
+        }
+    }
+
+    public Integer findBookId(Connection conn, String title) throws SQLException {
+        Integer bookId = cachedBookId(title);
+        return bookId != null ? bookId : loadBookId(conn, title, conn.getAutoCommit());
+    }
+
+    // Record a committed insert
+    public synchronized void bookCreated(int bookId, String title) {
+        put(bookId, title);
+    }
+
+    // Keep both directions in step with BookDao.updateBookTitle
+    public synchronized void titleChanged(String oldTitle, String newTitle) {
+        generation++;
+        Integer bookId = idsByTitle.remove(oldTitle);
+        if (bookId != null) {
+            titlesById.remove(bookId);
+            put(bookId, newTitle);
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        titlesById.clear();
+        idsByTitle.clear();
+    }
+
+    public synchronized int size() {
+        return titlesById.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private synchronized String cachedTitle(int bookId) {
+        String title = titlesById.get(bookId);
+        (title != null ? hits : misses).increment();
+        return title;
+    }
+
+    private synchronized Integer cachedBookId(String title) {
+        Integer bookId = idsByTitle.get(title);
+        if (bookId != null) {
+            titlesById.get(bookId); // Refresh LRU position
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return bookId;
+    }
+
+    private String loadTitle(Connection conn, int bookId, boolean cacheResult) throws SQLException {
+        long startGeneration = currentGeneration();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT title FROM Books WHERE bookID = ?")) {
+            pstmt.setInt(1, bookId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) return null;
+                String title = rs.getString("title");
+                return cacheResult ? cacheTitle(bookId, title, startGeneration) : title;
+            }
+        }
+    }
+
+    private Integer loadBookId(Connection conn, String title, boolean cacheResult) throws SQLException {
+        long startGeneration = currentGeneration();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT bookID FROM Books WHERE title = ?")) {
+            pstmt.setString(1, title);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) return null;
+                int bookId = rs.getInt("bookID");
+                if (cacheResult) cacheTitle(bookId, title, startGeneration);
+                return bookId;
+            }
+        }
+    }
+
+    private synchronized long currentGeneration() {
+        return generation;
+    }
+
+    // Caches a loaded title (unless a title changed meanwhile) and returns the instance the cache holds
+    private synchronized String cacheTitle(int bookId, String title, long loadGeneration) {
+        String existing = titlesById.get(bookId);
+        if (existing != null) return existing;
+        if (loadGeneration == generation) {
+            put(bookId, title);
+        }
+        return title;
+    }
+
+    private void put(int bookId, String title) {
+        String previous = titlesById.put(bookId, title);
+        if (previous != null && !previous.equals(title)) {
+            idsByTitle.remove(previous);
+        }
+        idsByTitle.put(title, bookId);
+    }
+}
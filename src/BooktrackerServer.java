@@ -0,0 +1,471 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Server mode (java Main --server [port]): the menu operations over HTTP on localhost, for many
+// concurrent clients. Each request runs on its own virtual thread when the JVM has them (Java 21+),
+// otherwise on a bounded platform-thread pool. Reads go straight to the connection pool (WAL lets
+// them run alongside writes); every write is queued on the single ReadingHabitWriter thread, so
+// SQLite's one write lock is never contended. With booktracker.shards, writes to a shard file are
+// queued on that shard's writer instead: new habits on the one for the user's shard, deletes on the
+// one for the shard holding the habit (one thread and one write lock per file).
+//
+//   POST   /users                  userId, age, gender, name                  (option 1)
+//   GET    /users/{id}/habits      [limit], [after] (the "next" value of the previous page)  (2)
+//   PUT    /books/title            oldTitle, newTitle                         (3)
+//   DELETE /habits/{id}                                                       (4)
+//   GET    /stats                  mean age, total pages, multi-book users    (5, 7, 8)
+//   GET    /books/readers          title                                      (6)
+//   POST   /habits                 userId, bookTitle, pagesRead, [submissionMoment]  (11)
+//   GET    /health
+// Parameters come from the query string or a form-encoded body; responses are JSON.
+public class BooktrackerServer {
+
+    public static final int DEFAULT_PORT = 8080;
+
+    // Pending connections the OS queues before accept(); the JDK default of 50 resets bursts of clients
+    private static final int BACKLOG = Integer.getInteger("booktracker.server.backlog", 1_024);
+    private static final int PLATFORM_THREADS = Integer.getInteger("booktracker.server.threads", 256);
+    private static final long WRITE_TIMEOUT_MILLIS = Long.getLong("booktracker.server.writeTimeoutMillis", 30_000L);
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 1_000;
+
+    private final UserDao userDao = new UserDao();
+    private final BookDao bookDao = new BookDao();
+    private final ReadingHabitDao readingHabitDao = new ReadingHabitDao();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    public BooktrackerServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), BACKLOG);
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : newPlatformThreadExecutor(PLATFORM_THREADS);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    // Stops accepting requests and gives in-flight ones a moment to finish
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Response response;
+            try {
+                response = route(exchange.getRequestMethod(), exchange.getRequestURI().getPath(), parameters(exchange));
+            } catch (MethodNotAllowedException e) {
+                response = Response.error(405, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                response = Response.error(400, e.getMessage());
+            } catch (SQLException e) {
+                boolean conflict = e.getErrorCode() == 19; // SQLITE_CONSTRAINT, e.g. duplicate userID or title
+                response = Response.error(conflict ? 409 : 500, e.getMessage());
+            } catch (RejectedExecutionException | TimeoutException e) {
+                response = Response.error(503, "Unavailable: " + e.getMessage());
+            }
+            byte[] body = response.json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(response.status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (RuntimeException e) {
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Response route(String method, String path, Map<String, String> params)
+            throws SQLException, TimeoutException {
+        String[] parts = path.replaceAll("^/+|/+$", "").split("/");
+        String resource = String.join("/", parts);
+
+        if (resource.equals("health")) {
+            return Response.ok(json("status", "ok", "virtualThreads", virtualThreads));
+        }
+        if (resource.equals("users")) {
+            requireMethod(method, "POST");
+            int userId = intParam(params, "userId");
+            int age = intParam(params, "age");
+            String gender = stringParam(params, "gender");
+            String name = stringParam(params, "name");
+            boolean created = write(() -> userDao.addUser(userId, age, gender, name));
+            return new Response(created ? 201 : 200, json("created", created));
+        }
+        if (parts.length == 3 && parts[0].equals("users") && parts[2].equals("habits")) {
+            requireMethod(method, "GET");
+            return Response.ok(habitsPage(parseInt(parts[1], "user ID"), params));
+        }
+        if (resource.equals("books/title")) {
+            requireMethod(method, "PUT");
+            String oldTitle = stringParam(params, "oldTitle");
+            String newTitle = stringParam(params, "newTitle");
+            boolean updated = write(() -> bookDao.updateBookTitle(oldTitle, newTitle));
+            return updated ? Response.ok(json("updated", true)) : Response.error(404, "No book titled '" + oldTitle + "'");
+        }
+        if (parts.length == 2 && parts[0].equals("habits")) {
+            requireMethod(method, "DELETE");
+            int habitId = parseInt(parts[1], "habit ID");
+            boolean deleted = write(ReadingHabitWriter.forHabits(habitId), () -> readingHabitDao.deleteHabitById(habitId));
+            return deleted ? Response.ok(json("deleted", true)) : Response.error(404, "No habit with ID " + habitId);
+        }
+        if (resource.equals("habits")) {
+            requireMethod(method, "POST");
+            String moment = params.get("submissionMoment");
+            ReadingHabit habit = new ReadingHabit(0, intParam(params, "userId"), 0, intParam(params, "pagesRead"),
+                    moment == null ? Instant.now() : SubmissionMoments.parse(moment), stringParam(params, "bookTitle"));
+            int habitId = await(readingHabitDao.submitHabit(habit));
+            return new Response(201, json("habitId", habitId));
+        }
+        if (resource.equals("stats")) {
+            requireMethod(method, "GET");
+            // The three reads run side by side, and concurrent /stats requests share them
+            AsyncDao async = AsyncDao.shared();
+            CompletableFuture<Double> meanAge = async.getMeanUserAge();
+            CompletableFuture<Long> totalPages = async.getTotalPagesRead();
+            CompletableFuture<Integer> multiBookUsers = async.countUsersReadingMultipleBooks();
+            double mean = await(meanAge);
+            return Response.ok(json("meanUserAge", mean < 0 ? null : mean,
+                    "totalPagesRead", await(totalPages),
+                    "usersReadingMultipleBooks", await(multiBookUsers)));
+        }
+        if (resource.equals("books/readers")) {
+            requireMethod(method, "GET");
+            String title = stringParam(params, "title");
+            return Response.ok(json("title", title, "users", readingHabitDao.countUsersForBookTitle(title)));
+        }
+        if (resource.equals("metrics")) {
+            requireMethod(method, "GET");
+            return Response.ok(metrics());
+        }
+        if (resource.equals("books/search")) {
+            requireMethod(method, "GET");
+            return Response.ok(titleSearch(params));
+        }
+        if (resource.equals("leaderboards")) {
+            requireMethod(method, "GET");
+            return Response.ok(leaderboard(params));
+        }
+        return Response.error(404, "Unknown endpoint " + path);
+    }
+
+    // Per-query latency (ms), rows and errors, plus connection acquire times, habit list cache counters
+    // and the slow query log
+    private static String metrics() {
+        QueryMetrics metrics = QueryMetrics.get();
+        StringBuilder queries = new StringBuilder("[");
+        for (QueryMetrics.QueryStats.Summary s : metrics.getQueryStats()) {
+            if (queries.length() > 1) queries.append(',');
+            queries.append(json("query", s.getLabel(), "calls", s.getCalls(), "errors", s.getErrors(), "rows", s.getRows(),
+                    "p50Ms", s.getLatency().getValueAtPercentile(50) / 1e6, "p99Ms", s.getLatency().getValueAtPercentile(99) / 1e6,
+                    "maxMs", s.getLatency().getMax() / 1e6, "totalMs", s.getTotalNanos() / 1e6));
+        }
+        queries.append(']');
+        StringBuilder slow = new StringBuilder("[");
+        for (QueryMetrics.SlowQuery q : metrics.getSlowQueries()) {
+            if (slow.length() > 1) slow.append(',');
+            slow.append(json("at", q.getAt().toString(), "query", q.getLabel(), "ms", q.getNanos() / 1e6, "rows", q.getRows(), "sql", q.getSql()));
+        }
+        slow.append(']');
+        LatencyHistogram.Snapshot acquire = metrics.getAcquireTimes();
+        HabitListCache.CacheStats cache = HabitListCache.get().getStats();
+        return json("enabled", QueryMetrics.isEnabled(), "queries", new RawJson(queries.toString()),
+                "connectionAcquire", new RawJson(json("borrows", acquire.getCount(),
+                        "p50Ms", acquire.getValueAtPercentile(50) / 1e6, "p99Ms", acquire.getValueAtPercentile(99) / 1e6,
+                        "maxMs", acquire.getMax() / 1e6)),
+                "habitListCache", new RawJson(json("hits", cache.getHits(), "misses", cache.getMisses(),
+                        "hitRatio", cache.getHitRatio(), "puts", cache.getPuts(), "rejected", cache.getRejected(),
+                        "evictions", cache.getEvictions(), "evictedBytes", cache.getEvictedBytes(),
+                        "invalidations", cache.getInvalidations(), "entries", cache.getEntries(),
+                        "bytes", cache.getWeightBytes(), "maxBytes", cache.getMaxBytes())),
+                "slowQueries", new RawJson(slow.toString()));
+    }
+
+    // ?q=pandas%20num&limit=10
+    private String titleSearch(Map<String, String> params) throws SQLException {
+        String query = stringParam(params, "q");
+        int limit = params.containsKey("limit") ? intParam(params, "limit") : 10;
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        StringBuilder matches = new StringBuilder("[");
+        for (TitleSearchIndex.Match match : bookDao.searchTitles(query, limit)) {
+            if (matches.length() > 1) matches.append(',');
+            matches.append(json("bookId", match.getBookId(), "title", match.getTitle(), "score", match.getScore()));
+        }
+        matches.append(']');
+        return json("query", query, "matches", new RawJson(matches.toString()));
+    }
+
+    // ?board=BOOKS_BY_READERS|BOOKS_BY_PAGES|USERS_BY_PAGES&n=10&days=7 (days omitted = all time)
+    private String leaderboard(Map<String, String> params) throws SQLException {
+        LeaderboardEntry.Board board;
+        try {
+            board = LeaderboardEntry.Board.valueOf(stringParam(params, "board").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("board must be one of " + Arrays.toString(LeaderboardEntry.Board.values()));
+        }
+        int n = params.containsKey("n") ? intParam(params, "n") : 10;
+        if (n < 1 || n > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("n must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        List<LeaderboardEntry> top = params.containsKey("days")
+                ? readingHabitDao.getLeaderboardForLastDays(board, n, intParam(params, "days"))
+                : readingHabitDao.getLeaderboard(board, n);
+        StringBuilder entries = new StringBuilder("[");
+        for (LeaderboardEntry entry : top) {
+            if (entries.length() > 1) entries.append(',');
+            entries.append(board.ranksBooks()
+                    ? json("rank", entry.getRank(), "bookId", entry.getId(), "bookTitle", entry.getTitle(), board.getUnit(), entry.getScore())
+                    : json("rank", entry.getRank(), "userId", entry.getId(), board.getUnit(), entry.getScore()));
+        }
+        entries.append(']');
+        return json("board", board.name(), "entries", new RawJson(entries.toString()));
+    }
+
+    private String habitsPage(int userId, Map<String, String> params) throws SQLException {
+        int limit = params.containsKey("limit") ? intParam(params, "limit") : DEFAULT_PAGE_SIZE;
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        HabitPage page = readingHabitDao.getHabitsPageByUserId(userId, limit, decodeKey(params.get("after")));
+        StringBuilder habits = new StringBuilder("[");
+        List<ReadingHabit> list = page.getHabits();
+        for (int i = 0; i < list.size(); i++) {
+            ReadingHabit habit = list.get(i);
+            if (i > 0) habits.append(',');
+            habits.append(json("habitId", habit.getHabitID(), "bookId", habit.getBookID(), "bookTitle", habit.getBookTitle(),
+                    "pagesRead", habit.getPagesRead(), "submissionMoment",
+                    habit.getSubmissionMoment() == null ? null : habit.getSubmissionMoment().toString()));
+        }
+        habits.append(']');
+        return json("userId", userId, "habits", new RawJson(habits.toString()),
+                "next", page.hasNext() ? encodeKey(page.getNextKey()) : null);
+    }
+
+    // Runs a write on the single writer thread and waits for its result
+    private <T> T write(ReadingHabitWriter.WriteTask<T> task) throws SQLException, TimeoutException {
+        return write(ReadingHabitWriter.shared(), task);
+    }
+
+    private <T> T write(ReadingHabitWriter writer, ReadingHabitWriter.WriteTask<T> task) throws SQLException, TimeoutException {
+        return await(writer.execute(task));
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws SQLException, TimeoutException {
+        try {
+            return future.get(WRITE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the writer", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new RejectedExecutionException(cause);
+        }
+    }
+
+    // Page cursor "<epochMillis|->:<habitID>", e.g. "1675885740000:17"
+    private static String encodeKey(HabitPage.Key key) {
+        Instant moment = key.getSubmissionMoment();
+        return (moment == null ? "-" : String.valueOf(moment.toEpochMilli())) + ":" + key.getHabitID();
+    }
+
+    private static HabitPage.Key decodeKey(String text) {
+        if (text == null || text.isEmpty()) return null;
+        int colon = text.indexOf(':');
+        if (colon < 0) throw new IllegalArgumentException("Malformed 'after' cursor: " + text);
+        String moment = text.substring(0, colon);
+        return new HabitPage.Key(moment.equals("-") ? null : Instant.ofEpochMilli(parseLong(moment, "after")),
+                parseInt(text.substring(colon + 1), "after"));
+    }
+
+    private static void requireMethod(String method, String expected) {
+        if (!expected.equalsIgnoreCase(method)) {
+            throw new MethodNotAllowedException("Use " + expected + " for this endpoint");
+        }
+    }
+
+    private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        try (InputStream body = exchange.getRequestBody()) {
+            parseForm(new String(body.readAllBytes(), StandardCharsets.UTF_8), params);
+        }
+        return params;
+    }
+
+    private static void parseForm(String encoded, Map<String, String> into) {
+        if (encoded == null || encoded.isEmpty()) return;
+        for (String pair : encoded.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            into.put(key, value);
+        }
+    }
+
+    private static String stringParam(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.trim().isEmpty()) throw new IllegalArgumentException("Missing parameter '" + name + "'");
+        return value;
+    }
+
+    private static int intParam(Map<String, String> params, String name) {
+        return parseInt(stringParam(params, name), name);
+    }
+
+    private static int parseInt(String text, String what) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + what + ": '" + text + "'");
+        }
+    }
+
+    private static long parseLong(String text, String what) {
+        try {
+            return Long.parseLong(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + what + ": '" + text + "'");
+        }
+    }
+
+    // Flat JSON object from alternating keys and values (String, Number, Boolean, RawJson or null)
+    static String json(Object... keysAndValues) {
+        StringBuilder out = new StringBuilder("{");
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            if (i > 0) out.append(',');
+            appendString(out, (String) keysAndValues[i]);
+            out.append(':');
+            Object value = keysAndValues[i + 1];
+            if (value == null || value instanceof Number || value instanceof Boolean || value instanceof RawJson) {
+                out.append(value);
+            } else {
+                appendString(out, value.toString());
+            }
+        }
+        return out.append('}').toString();
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) out.append(String.format("\\u%04x", (int) c));
+                    else out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() when running on Java 21+; looked up reflectively
+    // because the project still compiles for Java 17
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null; // Older JVM, or preview features not enabled
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "booktracker-http-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final class MethodNotAllowedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MethodNotAllowedException(String message) {
+            super(message);
+        }
+    }
+
+    // Already-encoded JSON embedded as a value
+    private static final class RawJson {
+        private final String json;
+
+        RawJson(String json) {
+            this.json = json;
+        }
+
+        @Override
+        public String toString() {
+            return json;
+        }
+    }
+
+    private static final class Response {
+        final int status;
+        final String json;
+
+        Response(int status, String json) {
+            this.status = status;
+            this.json = json;
+        }
+
+        static Response ok(String json) {
+            return new Response(200, json);
+        }
+
+        static Response error(int status, String message) {
+            return new Response(status, BooktrackerServer.json("error", message == null ? "" : message));
+        }
+    }
+}
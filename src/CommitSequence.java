@@ -0,0 +1,59 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Numbers the commits whose changes are reported to the in-memory stores (StatisticsStore,
+// ReaderSketches), so a store loaded by a scan can tell which reports that scan already saw.
+// The DAOs tell the stores after committing, so a report that arrives during a scan may or may not
+// be in it. Commits take their number in commit() and scans start their read transaction in
+// startScan(), which returns the number of the last commit before it. Commits share one lock and a
+// scan start holds it alone, so a change numbered at or below a scan's number is in the scan and
+// one numbered above it isn't: with WAL the scan reads a snapshot taken before that commit, and
+// with a rollback journal the commit waits for the scan to finish.
+public final class CommitSequence {
+
+    // Touches User and ReadingHabit (every shard, through the view), so the read transaction covers them all
+    private static final String START_SCAN_SQL = "SELECT (SELECT 1 FROM User LIMIT 1), (SELECT 1 FROM ReadingHabit LIMIT 1)";
+
+    private static final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private static final AtomicLong last = new AtomicLong();
+
+    private CommitSequence() {
+    }
+
+    // Commits conn's transaction; returns its number
+    static long commit(Connection conn) throws SQLException {
+        return commitAll(List.of(conn));
+    }
+
+    // Commits each connection's transaction in turn (one per shard), under one number
+    static long commitAll(List<Connection> connections) throws SQLException {
+        lock.readLock().lock();
+        try {
+            for (Connection conn : connections) {
+                conn.commit();
+            }
+            return last.incrementAndGet();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Starts a read transaction on conn, which must not be in auto-commit mode; returns the number
+    // of the last commit it sees. Reports numbered above it are for changes the scan won't see.
+    static long startScan(Connection conn) throws SQLException {
+        lock.writeLock().lock();
+        try (PreparedStatement pstmt = conn.prepareStatement(START_SCAN_SQL);
+             ResultSet rs = pstmt.executeQuery()) {
+            rs.next();
+            return last.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,303 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded pool of long-lived SQLite connections.
+// Callers get a lightweight handle from borrow(); closing the handle hands the
+// physical connection back to the pool instead of closing the database file.
+public class ConnectionPool {
+
+    private final String url;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long validationIntervalMillis;
+    private final int statementCacheSize;
+    private final List<String> connectionPragmas;
+
+    // Idle connections, most recently returned first (keeps the hot ones warm)
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    // One permit per connection that may be handed out
+    private final Semaphore permits;
+
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private volatile long maxWaitNanos = 0;
+    private volatile boolean shutdown = false;
+
+    public ConnectionPool(String url, int maxSize, long borrowTimeoutMillis,
+                          long validationIntervalMillis, int statementCacheSize,
+                          List<String> connectionPragmas) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1, got " + maxSize);
+        }
+        this.url = url;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.connectionPragmas = List.copyOf(connectionPragmas);
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    public Connection borrow() throws SQLException {
+        if (shutdown) throw new SQLException("Connection pool for " + url + " has been shut down");
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + borrowTimeoutMillis
+                        + " ms waiting for a database connection (pool size " + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        long waitNanos = System.nanoTime() - start;
+        recordWait(waitNanos);
+        if (QueryMetrics.isEnabled()) {
+            QueryMetrics.get().recordAcquire(waitNanos);
+        }
+
+        try {
+            PooledConnection pooled = takeValidIdle();
+            if (pooled == null) {
+                pooled = open();
+            }
+            active.incrementAndGet();
+            borrows.increment();
+            return pooled.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public PoolStats getStats() {
+        long count = borrows.sum();
+        return new PoolStats(maxSize, active.get(), idle.size(), opened.get(), discarded.sum(),
+                count, count == 0 ? 0 : totalWaitNanos.sum() / count, maxWaitNanos);
+    }
+
+    // Closes idle connections now; borrowed ones are closed as they come back
+    public void shutdown() {
+        shutdown = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            pooled.closePhysical();
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        totalWaitNanos.add(waitNanos);
+        if (waitNanos > maxWaitNanos) {
+            maxWaitNanos = waitNanos; // Racy max is fine for statistics
+        }
+    }
+
+    private PooledConnection takeValidIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (pooled.isUsable(validationIntervalMillis)) {
+                return pooled;
+            }
+            pooled.closePhysical();
+            discarded.increment();
+        }
+        return null;
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url);
+        try (Statement stmt = physical.createStatement()) {
+            // Per-connection settings are applied once, when the connection is opened
+            for (String pragma : connectionPragmas) {
+                stmt.execute(pragma);
+            }
+        } catch (SQLException e) {
+            physical.close();
+            throw e;
+        }
+        opened.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void release(PooledConnection pooled) {
+        active.decrementAndGet();
+        try {
+            if (shutdown || !pooled.resetForReuse()) {
+                pooled.closePhysical();
+                discarded.increment();
+            } else {
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    // A physical connection owned by the pool
+    private final class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statements;
+        private long lastUsedMillis = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = new StatementCache(physical, statementCacheSize);
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Handle(this));
+        }
+
+        boolean isUsable(long validationIntervalMillis) {
+            try {
+                if (physical.isClosed()) return false;
+                if (System.currentTimeMillis() - lastUsedMillis < validationIntervalMillis) return true;
+                return physical.isValid(2);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        // Undo whatever the last borrower left behind; false means the connection is unfit for reuse
+        boolean resetForReuse() {
+            try {
+                if (physical.isClosed()) return false;
+                statements.releaseAll();
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                lastUsedMillis = System.currentTimeMillis();
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        void closePhysical() {
+            statements.closeAll();
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                System.err.println("WARNING: Error closing pooled connection: " + e.getMessage());
+            }
+        }
+    }
+
+    // Connection handed to callers; close() returns the physical connection to the pool
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean closed = false;
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pooled.physical.isClosed();
+                case "prepareStatement":
+                    // Plain and generated-keys variants go through the statement cache
+                    if (!closed && args.length == 1) {
+                        return instrument(pooled.statements.prepare((String) args[0], Statement.NO_GENERATED_KEYS), (String) args[0]);
+                    }
+                    if (!closed && args.length == 2 && args[1] instanceof Integer) {
+                        return instrument(pooled.statements.prepare((String) args[0], (Integer) args[1]), (String) args[0]);
+                    }
+                    return instrument(delegate(method, args), (String) args[0]);
+                case "createStatement":
+                    return instrument(delegate(method, args), null);
+                case "unwrap":
+                    return pooled.physical.unwrap((Class<?>) args[0]);
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + url + "]";
+                default:
+                    return delegate(method, args);
+            }
+        }
+
+        // Statements are timed per query when QueryMetrics is enabled
+        private Object instrument(Object statement, String sql) {
+            return QueryMetrics.isEnabled() ? QueryMetrics.get().instrument((Statement) statement, sql) : statement;
+        }
+
+        private Object delegate(Method method, Object[] args) throws Throwable {
+            if (closed) throw new SQLException("Connection has already been returned to the pool");
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    // Point-in-time view of the pool, for diagnostics
+    public static class PoolStats {
+        private final int maxSize;
+        private final int active;
+        private final int idle;
+        private final int opened;
+        private final long discarded;
+        private final long borrows;
+        private final long avgWaitNanos;
+        private final long maxWaitNanos;
+
+        PoolStats(int maxSize, int active, int idle, int opened, long discarded,
+                  long borrows, long avgWaitNanos, long maxWaitNanos) {
+            this.maxSize = maxSize;
+            this.active = active;
+            this.idle = idle;
+            this.opened = opened;
+            this.discarded = discarded;
+            this.borrows = borrows;
+            this.avgWaitNanos = avgWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+        }
+
+        public int getMaxSize() { return maxSize; }
+        public int getActive() { return active; }
+        public int getIdle() { return idle; }
+        public int getOpened() { return opened; }
+        public long getDiscarded() { return discarded; }
+        public long getBorrows() { return borrows; }
+        public long getAvgWaitNanos() { return avgWaitNanos; }
+        public long getMaxWaitNanos() { return maxWaitNanos; }
+
+        @Override
+        public String toString() {
+            return String.format("PoolStats [size=%d, active=%d, idle=%d, opened=%d, discarded=%d, borrows=%d, avgWait=%.3f ms, maxWait=%.3f ms]",
+                    maxSize, active, idle, opened, discarded, borrows, avgWaitNanos / 1e6, maxWaitNanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streaming CSV parser (RFC 4180 style).
+// Handles quoted fields containing commas, doubled quotes ("") and line breaks,
+// e.g. "Head First Data Analysis: A learner's guide to big numbers, statistics, and good decisions".
+// Only one record is held in memory at a time.
+public class CsvReader implements Closeable {
+
+    private final Reader in;
+    private final char[] buffer = new char[64 * 1024];
+    private int pos = 0;
+    private int limit = 0;
+    private long lineNumber = 1;
+
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> record = new ArrayList<>();
+
+    public CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    // Returns the next record, or null at end of input
+    public String[] readRecord() throws IOException {
+        record.clear();
+        field.setLength(0);
+
+        int c = read();
+        if (c == -1) return null;
+
+        boolean inQuotes = false;
+        boolean fieldWasQuoted = false;
+        while (true) {
+            if (inQuotes) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field near line " + lineNumber);
+                }
+                if (c == '"') {
+                    int next = peek();
+                    if (next == '"') {
+                        read();
+                        field.append('"'); // Escaped quote
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    if (c == '\n') lineNumber++;
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0 && !fieldWasQuoted) {
+                inQuotes = true;
+                fieldWasQuoted = true;
+            } else if (c == ',') {
+                endField();
+                fieldWasQuoted = false;
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r' && peek() == '\n') read();
+                if (c != -1) lineNumber++;
+                endField();
+                return record.toArray(new String[0]);
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    // Line the reader is currently positioned at (1-based), for error messages
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void endField() {
+        record.add(field.toString());
+        field.setLength(0);
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return buffer[pos++];
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return buffer[pos];
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) return false;
+        pos = 0;
+        limit = n;
+        return true;
+    }
+}
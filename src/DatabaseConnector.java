@@ -1,11 +1,34 @@
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 // Utility class for handling database connections
+// Connections come from a shared pool; closing one returns it to the pool.
 public class DatabaseConnector {
 
-    private static final String DB_URL = "jdbc:sqlite:Booktracker.db";
+    // Database file, overridable with -Dbooktracker.db.path=... (e.g. for benchmark datasets)
+    private static final String DB_PATH = System.getProperty("booktracker.db.path", "Booktracker.db");
+    private static final String DB_URL = "jdbc:sqlite:" + DB_PATH;
+
+    // Pool settings, overridable with -Dbooktracker.pool.size=8 etc.
+    private static final int POOL_SIZE = Integer.getInteger("booktracker.pool.size", 4);
+    private static final long BORROW_TIMEOUT_MILLIS = Long.getLong("booktracker.pool.timeoutMillis", 30_000L);
+    private static final long VALIDATION_INTERVAL_MILLIS = Long.getLong("booktracker.pool.validationIntervalMillis", 60_000L);
+    // Prepared statements kept per connection (0 disables the cache)
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("booktracker.statementCache.size", 64);
+
+    // Journal mode, fsync level, mmap/cache sizes etc.; see StorageProfile for the properties
+    private static final StorageProfile STORAGE_PROFILE = StorageProfile.fromSystemProperties();
+
+    // Number of shard files ReadingHabit is split across by userID (0 = kept in DB_PATH); see ShardedStorage
+    private static final int SHARDS = Integer.getInteger("booktracker.shards", 0);
+
+    private static final ConnectionPool pool;
+    private static final WalCheckpointer checkpointer; // Null unless the profile uses WAL
+    private static final ShardedStorage shards;        // Null unless SHARDS > 0
+    private static final WalCheckpointer[] shardCheckpointers;
 
     // Static block to ensure driver is loaded only once
     static {
@@ -16,9 +39,75 @@ public class DatabaseConnector {
             // In a real app, might handle this more gracefully or log it centrally
              throw new RuntimeException("Failed to load SQLite JDBC driver", e);
         }
+        List<String> pragmas = new ArrayList<>(STORAGE_PROFILE.pragmas());
+        if (SHARDS > 0) {
+            try {
+                shards = new ShardedStorage(DB_PATH, SHARDS, POOL_SIZE, BORROW_TIMEOUT_MILLIS, VALIDATION_INTERVAL_MILLIS,
+                        STATEMENT_CACHE_SIZE, STORAGE_PROFILE.pragmas());
+            } catch (SQLException e) {
+                System.err.println("FATAL ERROR: Could not open the ReadingHabit shards: " + e.getMessage());
+                throw new RuntimeException("Failed to open shards for " + DB_PATH, e);
+            }
+            pragmas.addAll(shards.catalogPragmas());
+        } else {
+            shards = null;
+        }
+        pool = new ConnectionPool(DB_URL, POOL_SIZE, BORROW_TIMEOUT_MILLIS, VALIDATION_INTERVAL_MILLIS,
+                STATEMENT_CACHE_SIZE, pragmas);
+        boolean checkpoints = STORAGE_PROFILE.isWal() && STORAGE_PROFILE.getCheckpointIntervalMillis() > 0;
+        checkpointer = checkpoints ? new WalCheckpointer(pool, STORAGE_PROFILE.getCheckpointIntervalMillis()) : null;
+        shardCheckpointers = new WalCheckpointer[checkpoints && shards != null ? SHARDS : 0];
+        for (int s = 0; s < shardCheckpointers.length; s++) {
+            shardCheckpointers[s] = new WalCheckpointer(shards.getPool(s), STORAGE_PROFILE.getCheckpointIntervalMillis());
+        }
     }
 
     public static Connection connect() throws SQLException {
+        return pool.borrow();
+    }
+
+    // Connection for reading or writing one user's habits: their shard when sharded, otherwise connect()
+    public static Connection connectForUser(int userId) throws SQLException {
+        return shards == null ? pool.borrow() : shards.connect(shards.shardFor(userId));
+    }
+
+    // Plain connection to DB_PATH alone, for schema changes: no shards attached and no pool (close it when done)
+    public static Connection connectUnpooled() throws SQLException {
         return DriverManager.getConnection(DB_URL);
     }
-}
\ No newline at end of file
+
+    // Null unless booktracker.shards is set
+    public static ShardedStorage getShards() {
+        return shards;
+    }
+
+    public static ConnectionPool.PoolStats getPoolStats() {
+        return pool.getStats();
+    }
+
+    public static StatementCache.CacheStats getStatementCacheStats() {
+        return StatementCache.getStats();
+    }
+
+    public static StorageProfile getStorageProfile() {
+        return STORAGE_PROFILE;
+    }
+
+    public static WalCheckpointer getCheckpointer() {
+        return checkpointer;
+    }
+
+    // Called once on application exit
+    public static void shutdown() {
+        if (checkpointer != null) {
+            checkpointer.shutdown(); // Needs a pooled connection, so before the pool closes
+        }
+        for (WalCheckpointer shardCheckpointer : shardCheckpointers) {
+            shardCheckpointer.shutdown();
+        }
+        pool.shutdown();
+        if (shards != null) {
+            shards.shutdown();
+        }
+    }
+}
@@ -0,0 +1,349 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+// Synthetic data for scale testing: users, books and reading habits with a realistic shape.
+//   - Book popularity is Zipfian (the k-th most popular book is read ~1/k^s as often).
+//   - Per-user activity is heavy-tailed (Pareto weights: a few users log most habits).
+//   - submissionMoment increases with habitID across the [from, to) window, at minute resolution.
+// Output is deterministic for a given seed and sizes, and identical whether it goes straight
+// into the database (batched inserts, chunked commits) or to a reading_habits.csv style file.
+//
+// Usage: java -cp "out:lib/sqlite-jdbc-....jar" DatasetGenerator [--habits N] [--users N] [--books N]
+//            [--seed N] [--zipf S] [--from ISO] [--to ISO] [--csv file]
+// Sizes accept suffixes (10k, 1m). Without --csv it appends to the database, after the existing IDs.
+public class DatasetGenerator {
+
+    public static final long DEFAULT_SEED = 42;
+    public static final double DEFAULT_ZIPF_EXPONENT = 1.0;
+    public static final Instant DEFAULT_FROM = Instant.parse("2023-01-01T00:00:00Z");
+    public static final Instant DEFAULT_TO = Instant.parse("2024-01-01T00:00:00Z");
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final int COMMIT_EVERY = 1_000_000;
+    private static final double PARETO_ALPHA = 1.16; // Roughly 80% of habits from 20% of users
+    private static final long MINUTE_MILLIS = 60_000L;
+
+    private static final String[] TITLE_ADJECTIVES = {
+            "Silent", "Hidden", "Practical", "Last", "Golden", "Broken", "Modern", "Lost", "Quiet", "Wild",
+            "Applied", "Secret", "Complete", "Distant", "Crimson", "Frozen", "Little", "Endless", "Open", "Dark"
+    };
+    private static final String[] TITLE_NOUNS = {
+            "Garden", "River", "Algorithm", "Kingdom", "Statistics", "Ocean", "Library", "Mountain", "Database", "Empire",
+            "Forest", "Machine", "Journey", "Network", "Winter", "Harbor", "Theory", "Village", "Compass", "Archive",
+            "Data Analysis", "Lighthouse", "Programming", "Desert", "Mind"
+    };
+
+    private final long habits;
+    private final int users;
+    private final int books;
+    private final long seed;
+    private final double zipfExponent;
+    private final long fromMillis;
+    private final long toMillis;
+
+    public DatasetGenerator(long habits, int users, int books, long seed) {
+        this(habits, users, books, seed, DEFAULT_ZIPF_EXPONENT, DEFAULT_FROM, DEFAULT_TO);
+    }
+
+    public DatasetGenerator(long habits, int users, int books, long seed, double zipfExponent, Instant from, Instant to) {
+        if (habits < 0 || users < 1 || books < 1) {
+            throw new IllegalArgumentException("Need habits >= 0, users >= 1 and books >= 1");
+        }
+        if (zipfExponent < 0) {
+            throw new IllegalArgumentException("Zipf exponent must be >= 0");
+        }
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("'from' must be before 'to'");
+        }
+        this.habits = habits;
+        this.users = users;
+        this.books = books;
+        this.seed = seed;
+        this.zipfExponent = zipfExponent;
+        this.fromMillis = from.toEpochMilli();
+        this.toMillis = to.toEpochMilli();
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                System.err.println("ERROR: Expected '--option value' pairs, got '" + args[i] + "'");
+                System.exit(1);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        try {
+            long habits = parseCount(options.getOrDefault("habits", "100000"));
+            int users = (int) parseCount(options.getOrDefault("users", String.valueOf(Math.max(10, habits / 100))));
+            int books = (int) parseCount(options.getOrDefault("books", String.valueOf(Math.max(10, Math.min(habits / 10, 100_000)))));
+            DatasetGenerator generator = new DatasetGenerator(habits, users, books,
+                    Long.parseLong(options.getOrDefault("seed", String.valueOf(DEFAULT_SEED))),
+                    Double.parseDouble(options.getOrDefault("zipf", String.valueOf(DEFAULT_ZIPF_EXPONENT))),
+                    Instant.parse(options.getOrDefault("from", DEFAULT_FROM.toString())),
+                    Instant.parse(options.getOrDefault("to", DEFAULT_TO.toString())));
+
+            long start = System.nanoTime();
+            if (options.containsKey("csv")) {
+                generator.writeCsv(Paths.get(options.get("csv")));
+            } else {
+                if (DatabaseConnector.getShards() != null) {
+                    throw new SQLException("Habits are sharded (booktracker.shards); generate into an unsharded database, then run ReshardTool");
+                }
+                try (Connection conn = DatabaseConnector.connect()) {
+                    generator.writeDatabase(conn);
+                }
+                StatisticsStore.get().invalidate();
+                ReaderSketches.get().invalidate();
+                HabitListCache.get().invalidateAll();
+                BookTitleCache.get().clear();
+            }
+            System.out.printf("SUCCESS: Generated %,d habits for %,d users over %,d books in %.2f s%n",
+                    habits, users, books, (System.nanoTime() - start) / 1e9);
+        } catch (IOException | SQLException | RuntimeException e) {
+            System.err.println("ERROR generating dataset: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            DatabaseConnector.shutdown();
+        }
+    }
+
+    // Appends users, books and habits through the given connection, creating missing tables.
+    // New user and habit IDs continue after the existing maximums; titles already in Books are reused.
+    public void writeDatabase(Connection conn) throws SQLException {
+        SchemaMigrations.migrate(conn); // Creates the tables in a new database; habits are written as epoch millis
+        int firstUserId = (int) maxId(conn, "SELECT MAX(userID) FROM User") + 1;
+        long firstHabitId = maxId(conn, "SELECT MAX(habitID) FROM ReadingHabit") + 1;
+
+        conn.setAutoCommit(false);
+        try {
+            SplittableRandom userRandom = new SplittableRandom(seed).split();
+            try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO User (userID, age, gender, Name) VALUES (?, ?, ?, ?)")) {
+                for (int i = 0; i < users; i++) {
+                    int userId = firstUserId + i;
+                    pstmt.setInt(1, userId);
+                    pstmt.setInt(2, age(userRandom));
+                    pstmt.setString(3, userRandom.nextInt(2) == 0 ? "F" : "M");
+                    pstmt.setString(4, "User " + userId);
+                    pstmt.addBatch();
+                    if ((i + 1) % BATCH_SIZE == 0) pstmt.executeBatch();
+                }
+                pstmt.executeBatch();
+            }
+            int[] bookIds = insertBooks(conn);
+            conn.commit();
+
+            HabitSequence sequence = new HabitSequence();
+            try (PreparedStatement pstmt = conn.prepareStatement(ReadingHabitDao.INSERT_HABIT_SQL)) {
+                for (long i = 0; i < habits; i++) {
+                    sequence.next();
+                    pstmt.setLong(1, firstHabitId + i);
+                    pstmt.setInt(2, firstUserId + sequence.userIndex);
+                    pstmt.setInt(3, bookIds[sequence.bookIndex]);
+                    pstmt.setInt(4, sequence.pagesRead);
+                    pstmt.setLong(5, sequence.momentMillis);
+                    pstmt.addBatch();
+                    if ((i + 1) % BATCH_SIZE == 0) pstmt.executeBatch();
+                    if ((i + 1) % COMMIT_EVERY == 0) {
+                        conn.commit();
+                        System.out.printf("INFO: %,d habits written%n", i + 1);
+                    }
+                }
+                pstmt.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback(); // Earlier habit chunks stay committed
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        HabitRollups.backfill(conn); // One GROUP BY pass instead of an upsert per habit
+    }
+
+    // Writes habits in the reading_habits.csv layout (habitID,userID,pagesRead,book,submissionMoment).
+    // Users are numbered from 1; book titles are the same as in the database output.
+    public void writeCsv(Path file) throws IOException {
+        HabitSequence sequence = new HabitSequence();
+        String[] quotedTitles = new String[books];
+        for (int i = 0; i < books; i++) {
+            quotedTitles[i] = quote(title(i));
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("habitID,userID,pagesRead,book,submissionMoment\n");
+            for (long i = 0; i < habits; i++) {
+                sequence.next();
+                out.write(Long.toString(i + 1));
+                out.write(',');
+                out.write(Integer.toString(sequence.userIndex + 1));
+                out.write(',');
+                out.write(Integer.toString(sequence.pagesRead));
+                out.write(',');
+                out.write(quotedTitles[sequence.bookIndex]);
+                out.write(',');
+                out.write(SubmissionMoments.format(Instant.ofEpochMilli(sequence.momentMillis)));
+                out.write('\n');
+            }
+        }
+    }
+
+    // Title of the i-th generated book (0-based); unique for every i
+    public static String title(int index) {
+        int combinations = TITLE_ADJECTIVES.length * TITLE_NOUNS.length;
+        String title = "The " + TITLE_ADJECTIVES[index % TITLE_ADJECTIVES.length]
+                + " " + TITLE_NOUNS[(index / TITLE_ADJECTIVES.length) % TITLE_NOUNS.length];
+        int volume = index / combinations;
+        return volume == 0 ? title : title + ", Volume " + (volume + 1);
+    }
+
+    private int[] insertBooks(Connection conn) throws SQLException {
+        Map<String, Integer> existing = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT bookID, title FROM Books");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                existing.put(rs.getString("title"), rs.getInt("bookID"));
+            }
+        }
+        int[] bookIds = new int[books];
+        int nextBookId = (int) maxId(conn, "SELECT MAX(bookID) FROM Books") + 1;
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO Books (bookID, title) VALUES (?, ?)")) {
+            for (int i = 0; i < books; i++) {
+                String title = title(i);
+                Integer bookId = existing.get(title);
+                if (bookId == null) {
+                    bookId = nextBookId++;
+                    pstmt.setInt(1, bookId);
+                    pstmt.setString(2, title);
+                    pstmt.addBatch();
+                }
+                bookIds[i] = bookId;
+            }
+            pstmt.executeBatch();
+        }
+        return bookIds;
+    }
+
+    private static long maxId(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0; // MAX of an empty table is NULL -> 0
+        }
+    }
+
+    // Ages roughly normal around 35, limited to 13..90
+    private static int age(SplittableRandom random) {
+        double gaussian = 0;
+        for (int i = 0; i < 12; i++) gaussian += random.nextDouble(); // Irwin-Hall approximation
+        return (int) Math.max(13, Math.min(90, Math.round(35 + 12 * (gaussian - 6))));
+    }
+
+    private static String quote(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0) return field;
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    static long parseCount(String text) {
+        String value = text.trim().toLowerCase().replace("_", "");
+        if (value.endsWith("k")) return Long.parseLong(value.substring(0, value.length() - 1)) * 1_000;
+        if (value.endsWith("m")) return Long.parseLong(value.substring(0, value.length() - 1)) * 1_000_000;
+        return Long.parseLong(value);
+    }
+
+    // Produces habits in habitID order; one instance per output so both outputs see the same sequence
+    private class HabitSequence {
+        private final SplittableRandom random;
+        private final WeightedSampler bookSampler;
+        private final WeightedSampler userSampler;
+        private long index = 0;
+
+        int userIndex;
+        int bookIndex;
+        int pagesRead;
+        long momentMillis;
+
+        HabitSequence() {
+            SplittableRandom root = new SplittableRandom(seed);
+            root.split(); // Users' stream (ages, genders)
+            SplittableRandom weights = root.split();
+            this.random = root.split();
+
+            // Popularity rank -> book, shuffled so the most read books aren't simply the first IDs
+            double[] bookWeights = new double[books];
+            int[] ranks = shuffledIdentity(books, weights);
+            for (int i = 0; i < books; i++) {
+                bookWeights[i] = 1.0 / Math.pow(ranks[i] + 1, zipfExponent);
+            }
+            double[] userWeights = new double[users];
+            double maxUserWeight = Math.max(10, users / 20.0); // Keeps one user from taking over the dataset
+            for (int i = 0; i < users; i++) {
+                double pareto = Math.pow(1.0 - weights.nextDouble(), -1.0 / PARETO_ALPHA);
+                userWeights[i] = Math.min(pareto, maxUserWeight);
+            }
+            this.bookSampler = new WeightedSampler(bookWeights);
+            this.userSampler = new WeightedSampler(userWeights);
+        }
+
+        void next() {
+            userIndex = userSampler.sample(random);
+            bookIndex = bookSampler.sample(random);
+            pagesRead = (int) Math.max(1, Math.min(500, Math.round(Math.exp(3.0 + 0.9 * gaussian()))));
+            // Evenly spread over the window with jitter inside each slot, so moments never go backwards
+            double slot = (toMillis - fromMillis) / (double) Math.max(habits, 1);
+            long millis = fromMillis + (long) ((index + random.nextDouble()) * slot);
+            momentMillis = millis - Math.floorMod(millis, MINUTE_MILLIS); // CSV format has minute resolution
+            index++;
+        }
+
+        private double gaussian() {
+            double sum = 0;
+            for (int i = 0; i < 12; i++) sum += random.nextDouble();
+            return sum - 6;
+        }
+    }
+
+    private static int[] shuffledIdentity(int size, SplittableRandom random) {
+        int[] values = new int[size];
+        for (int i = 0; i < size; i++) values[i] = i;
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+        return values;
+    }
+
+    // Draws index i with probability weights[i] / sum(weights), by binary search over the cumulative sums
+    private static class WeightedSampler {
+        private final double[] cumulative;
+
+        WeightedSampler(double[] weights) {
+            cumulative = new double[weights.length];
+            double total = 0;
+            for (int i = 0; i < weights.length; i++) {
+                total += weights[i];
+                cumulative[i] = total;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            double target = random.nextDouble() * cumulative[cumulative.length - 1];
+            int index = Arrays.binarySearch(cumulative, target);
+            index = index >= 0 ? index + 1 : -index - 1; // First cumulative sum above target
+            return Math.min(index, cumulative.length - 1);
+        }
+    }
+}
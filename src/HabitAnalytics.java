@@ -0,0 +1,490 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Columnar in-memory copy of ReadingHabit for ad-hoc analytics (pages per user / book / month).
+// Habits are held as parallel primitive arrays (habitID, userID, bookID, pagesRead, submissionMoment)
+// in habitID order, with users, books and months dictionary-encoded to dense codes so group-bys
+// accumulate into plain arrays; titles live once in the book dictionary.
+// refresh() appends habits above the habitID watermark; deletes made through ReadingHabitDao leave
+// tombstones. With -Dbooktracker.shards each shard hands out its own habitIDs (see ShardedStorage),
+// which only grow within that shard, so there is one watermark per shard and the rows are put back
+// in habitID order after appending. If the row count then disagrees with the table (e.g. habits
+// inserted below a watermark), the snapshot is reloaded. Aggregations scan the columns in parallel
+// (fork-join).
+public class HabitAnalytics {
+
+    public enum GroupBy { USER, BOOK, MONTH }
+
+    private static final HabitAnalytics instance = new HabitAnalytics();
+    private static final long NO_MOMENT = Long.MIN_VALUE;
+    private static final int MIN_SPLIT_ROWS = 1 << 16;
+
+    // Columns; rows [0, size) are valid. Arrays are replaced (not mutated) when they grow, so a
+    // query keeps scanning the arrays it started with while a refresh appends.
+    private int[] habitIds = new int[0];
+    private int[] userCodes = new int[0];
+    private int[] bookCodes = new int[0];
+    private int[] pagesRead = new int[0];
+    private long[] moments = new long[0];
+    private int[] monthCodes = new int[0];  // YearMonth as year * 12 + month - 1, or -1 without a moment
+    private boolean[] deleted = new boolean[0];
+    private int size = 0;
+    private int deletedCount = 0;
+    private int[] watermarks = new int[1]; // Highest habitID loaded from each shard (one when unsharded)
+    private int minMonth = Integer.MAX_VALUE;
+    private int maxMonth = -1;
+    private boolean loaded = false;
+
+    // Dictionaries: value -> dense code, and code -> value
+    private final Map<Integer, Integer> userCodeById = new HashMap<>();
+    private int[] userIdByCode = new int[0];
+    private final Map<Integer, Integer> bookCodeById = new HashMap<>();
+    private int[] bookIdByCode = new int[0];
+    private String[] titleByCode = new String[0];
+
+    HabitAnalytics() {
+    }
+
+    public static HabitAnalytics get() {
+        return instance;
+    }
+
+    // Loads habits added since the last refresh (everything on first use)
+    public synchronized RefreshResult refresh() throws SQLException {
+        long start = System.nanoTime();
+        int before = size;
+        boolean reloaded = !loaded;
+        try (Connection conn = DatabaseConnector.connect()) {
+            if (!loaded) clear();
+            loadNewHabits(conn);
+            if (countRows(conn) != size - deletedCount) {
+                // Rows changed below a watermark (or outside the application): start over
+                clear();
+                loadNewHabits(conn);
+                reloaded = true;
+            }
+            loadTitles(conn);
+            loaded = true;
+        }
+        return new RefreshResult(reloaded ? size : size - before, reloaded, size - deletedCount, System.nanoTime() - start);
+    }
+
+    // Drops the snapshot; the next refresh loads everything again
+    public synchronized void invalidate() {
+        loaded = false;
+    }
+
+    // Tombstones a habit deleted through ReadingHabitDao
+    public synchronized void habitRemoved(int habitId) {
+        int row = Arrays.binarySearch(habitIds, 0, size, habitId);
+        if (row >= 0 && !deleted[row]) {
+            deleted[row] = true;
+            deletedCount++;
+        }
+    }
+
+    public synchronized int getRowCount() {
+        return size - deletedCount;
+    }
+
+    // Habit count and pages read per group, largest page totals first.
+    // Any filter argument may be null: userId / bookId restrict to one user / book, and
+    // from (inclusive) / to (exclusive) to a time window (habits without a moment are then excluded).
+    public List<Group> aggregate(GroupBy groupBy, Integer userId, Integer bookId, Instant from, Instant to) {
+        View view = view(groupBy);
+        int userCode = -1;
+        int bookCode = -1;
+        synchronized (this) {
+            if (userId != null) {
+                Integer code = userCodeById.get(userId);
+                if (code == null) return List.of();
+                userCode = code;
+            }
+            if (bookId != null) {
+                Integer code = bookCodeById.get(bookId);
+                if (code == null) return List.of();
+                bookCode = code;
+            }
+        }
+        Filter filter = new Filter(userCode, bookCode,
+                from == null ? Long.MIN_VALUE : from.toEpochMilli(), to == null ? Long.MAX_VALUE : to.toEpochMilli(),
+                from != null || to != null);
+
+        int splitRows = Math.max(MIN_SPLIT_ROWS, view.size / (ForkJoinPool.commonPool().getParallelism() * 4 + 1));
+        long[][] totals = ForkJoinPool.commonPool().invoke(new ScanTask(view, filter, 0, view.size, splitRows));
+
+        List<Group> groups = new ArrayList<>();
+        for (int g = 0; g < view.groupCount; g++) {
+            if (totals[1][g] > 0) {
+                groups.add(new Group(view.key(g), view.label(g), totals[0][g], totals[1][g]));
+            }
+        }
+        groups.sort((a, b) -> Long.compare(b.pagesRead, a.pagesRead));
+        return groups;
+    }
+
+    // Total pages read matching the same filters as aggregate()
+    public long totalPagesRead(Integer userId, Integer bookId, Instant from, Instant to) {
+        long total = 0;
+        for (Group group : aggregate(GroupBy.USER, userId, bookId, from, to)) {
+            total += group.pagesRead;
+        }
+        return total;
+    }
+
+    // Consistent references to the columns for one query
+    private synchronized View view(GroupBy groupBy) {
+        View view = new View();
+        view.groupBy = groupBy;
+        view.size = size;
+        view.userCodes = userCodes;
+        view.bookCodes = bookCodes;
+        view.pagesRead = pagesRead;
+        view.moments = moments;
+        view.monthCodes = monthCodes;
+        view.deleted = deleted;
+        view.userIdByCode = userIdByCode;
+        view.bookIdByCode = bookIdByCode;
+        view.titleByCode = titleByCode;
+        if (groupBy == GroupBy.USER) {
+            view.groupCount = userCodeById.size();
+        } else if (groupBy == GroupBy.BOOK) {
+            view.groupCount = bookCodeById.size();
+        } else {
+            view.monthOffset = maxMonth < 0 ? 0 : minMonth;
+            view.groupCount = maxMonth < 0 ? 0 : maxMonth - minMonth + 1;
+        }
+        return view;
+    }
+
+    private void clear() {
+        habitIds = new int[0];
+        userCodes = new int[0];
+        bookCodes = new int[0];
+        pagesRead = new int[0];
+        moments = new long[0];
+        monthCodes = new int[0];
+        deleted = new boolean[0];
+        size = 0;
+        deletedCount = 0;
+        ShardedStorage shards = DatabaseConnector.getShards();
+        watermarks = new int[shards == null ? 1 : shards.getShardCount()];
+        minMonth = Integer.MAX_VALUE;
+        maxMonth = -1;
+        userCodeById.clear();
+        userIdByCode = new int[0];
+        bookCodeById.clear();
+        bookIdByCode = new int[0];
+        titleByCode = new String[0];
+    }
+
+    // Appends the habits above each shard's watermark, then restores habitID order
+    private void loadNewHabits(Connection conn) throws SQLException {
+        int first = size;
+        if (watermarks.length == 1) {
+            loadHabitsAbove(conn, "ReadingHabit", 0);
+        } else {
+            for (int s = 0; s < watermarks.length; s++) {
+                loadHabitsAbove(conn, "shard" + s + ".ReadingHabit", s); // Attached to every main connection
+            }
+        }
+        sortFrom(first);
+    }
+
+    private void loadHabitsAbove(Connection conn, String table, int shard) throws SQLException {
+        String sql = "SELECT habitID, userID, bookID, pagesRead, submissionMoment FROM " + table + " WHERE habitID > ? ORDER BY habitID";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, watermarks[shard]);
+            pstmt.setFetchSize(10_000);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                ResultSet row = QueryMetrics.columns(rs);
+                while (rs.next()) {
+                    ensureCapacity(size + 1);
+                    int habitId = row.getInt(1);
+                    habitIds[size] = habitId;
+                    userCodes[size] = userCode(row.getInt(2));
+                    bookCodes[size] = bookCode(row.getInt(3));
+                    pagesRead[size] = row.getInt(4);
+                    long moment = row.getLong(5);
+                    if (row.wasNull()) {
+                        moments[size] = NO_MOMENT;
+                        monthCodes[size] = -1;
+                    } else {
+                        moments[size] = moment;
+                        int month = ReaderSketches.monthCode(moment);
+                        monthCodes[size] = month;
+                        minMonth = Math.min(minMonth, month);
+                        maxMonth = Math.max(maxMonth, month);
+                    }
+                    size++; // Rows are published by the size a View copies under the lock
+                    watermarks[shard] = Math.max(watermarks[shard], habitId);
+                }
+            }
+        }
+    }
+
+    // Rows [0, first) are in habitID order; if the rows appended after them aren't (they came from
+    // several shards), every column is rewritten in order, into new arrays like ensureCapacity()
+    private void sortFrom(int first) {
+        boolean sorted = true;
+        for (int row = Math.max(first, 1); row < size && sorted; row++) {
+            sorted = habitIds[row - 1] < habitIds[row];
+        }
+        if (sorted) return;
+        long[] order = new long[size]; // habitID in the high half, the row in the low half
+        for (int row = 0; row < size; row++) {
+            order[row] = (long) habitIds[row] << 32 | row;
+        }
+        Arrays.sort(order);
+        int capacity = habitIds.length;
+        int[] newHabitIds = new int[capacity];
+        int[] newUserCodes = new int[capacity];
+        int[] newBookCodes = new int[capacity];
+        int[] newPagesRead = new int[capacity];
+        long[] newMoments = new long[capacity];
+        int[] newMonthCodes = new int[capacity];
+        boolean[] newDeleted = new boolean[capacity];
+        for (int i = 0; i < size; i++) {
+            int row = (int) order[i];
+            newHabitIds[i] = habitIds[row];
+            newUserCodes[i] = userCodes[row];
+            newBookCodes[i] = bookCodes[row];
+            newPagesRead[i] = pagesRead[row];
+            newMoments[i] = moments[row];
+            newMonthCodes[i] = monthCodes[row];
+            newDeleted[i] = deleted[row];
+        }
+        habitIds = newHabitIds;
+        userCodes = newUserCodes;
+        bookCodes = newBookCodes;
+        pagesRead = newPagesRead;
+        moments = newMoments;
+        monthCodes = newMonthCodes;
+        deleted = newDeleted;
+    }
+
+    // Titles for every book code (picks up renames since the last refresh)
+    private void loadTitles(Connection conn) throws SQLException {
+        String[] titles = new String[bookIdByCode.length];
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT bookID, title FROM Books");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                Integer code = bookCodeById.get(rs.getInt("bookID"));
+                if (code != null) titles[code] = rs.getString("title");
+            }
+        }
+        titleByCode = titles;
+    }
+
+    private static long countRows(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM ReadingHabit");
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private int userCode(int userId) {
+        Integer code = userCodeById.get(userId);
+        if (code != null) return code;
+        int next = userCodeById.size();
+        userCodeById.put(userId, next);
+        if (next == userIdByCode.length) userIdByCode = Arrays.copyOf(userIdByCode, Math.max(16, next * 2));
+        userIdByCode[next] = userId;
+        return next;
+    }
+
+    private int bookCode(int bookId) {
+        Integer code = bookCodeById.get(bookId);
+        if (code != null) return code;
+        int next = bookCodeById.size();
+        bookCodeById.put(bookId, next);
+        if (next == bookIdByCode.length) {
+            bookIdByCode = Arrays.copyOf(bookIdByCode, Math.max(16, next * 2));
+            titleByCode = Arrays.copyOf(titleByCode, bookIdByCode.length);
+        }
+        bookIdByCode[next] = bookId;
+        return next;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= habitIds.length) return;
+        int capacity = Math.max(1_024, Math.max(needed, habitIds.length + (habitIds.length >> 1)));
+        habitIds = Arrays.copyOf(habitIds, capacity);
+        userCodes = Arrays.copyOf(userCodes, capacity);
+        bookCodes = Arrays.copyOf(bookCodes, capacity);
+        pagesRead = Arrays.copyOf(pagesRead, capacity);
+        moments = Arrays.copyOf(moments, capacity);
+        monthCodes = Arrays.copyOf(monthCodes, capacity);
+        deleted = Arrays.copyOf(deleted, capacity);
+    }
+
+    private static final class View {
+        GroupBy groupBy;
+        int size;
+        int groupCount;
+        int monthOffset;
+        int[] userCodes;
+        int[] bookCodes;
+        int[] pagesRead;
+        long[] moments;
+        int[] monthCodes;
+        boolean[] deleted;
+        int[] userIdByCode;
+        int[] bookIdByCode;
+        String[] titleByCode;
+
+        int group(int row) {
+            switch (groupBy) {
+                case USER: return userCodes[row];
+                case BOOK: return bookCodes[row];
+                default: return monthCodes[row] < 0 ? -1 : monthCodes[row] - monthOffset;
+            }
+        }
+
+        int key(int group) {
+            switch (groupBy) {
+                case USER: return userIdByCode[group];
+                case BOOK: return bookIdByCode[group];
+                default: return group + monthOffset;
+            }
+        }
+
+        String label(int group) {
+            switch (groupBy) {
+                case USER: return "User " + userIdByCode[group];
+                case BOOK: return titleByCode[group] != null ? titleByCode[group] : "Book " + bookIdByCode[group];
+                default:
+                    int month = group + monthOffset;
+                    return YearMonth.of(month / 12, month % 12 + 1).toString();
+            }
+        }
+    }
+
+    private static final class Filter {
+        final int userCode;  // -1 = any
+        final int bookCode;  // -1 = any
+        final long fromMillis;
+        final long toMillis;
+        final boolean timeBounded;
+
+        Filter(int userCode, int bookCode, long fromMillis, long toMillis, boolean timeBounded) {
+            this.userCode = userCode;
+            this.bookCode = bookCode;
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            this.timeBounded = timeBounded;
+        }
+    }
+
+    // Sums {pagesRead, habits} per group over rows [from, to), splitting until ranges are small
+    private static final class ScanTask extends RecursiveTask<long[][]> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient View view;
+        private final transient Filter filter;
+        private final int from;
+        private final int to;
+        private final int splitRows;
+
+        ScanTask(View view, Filter filter, int from, int to, int splitRows) {
+            this.view = view;
+            this.filter = filter;
+            this.from = from;
+            this.to = to;
+            this.splitRows = splitRows;
+        }
+
+        @Override
+        protected long[][] compute() {
+            if (to - from > splitRows) {
+                int middle = (from + to) >>> 1;
+                ScanTask left = new ScanTask(view, filter, from, middle, splitRows);
+                left.fork();
+                long[][] right = new ScanTask(view, filter, middle, to, splitRows).compute();
+                long[][] merged = left.join();
+                for (int g = 0; g < merged[0].length; g++) {
+                    merged[0][g] += right[0][g];
+                    merged[1][g] += right[1][g];
+                }
+                return merged;
+            }
+            long[] pages = new long[view.groupCount];
+            long[] habits = new long[view.groupCount];
+            for (int row = from; row < to; row++) {
+                if (view.deleted[row]) continue;
+                if (filter.userCode >= 0 && view.userCodes[row] != filter.userCode) continue;
+                if (filter.bookCode >= 0 && view.bookCodes[row] != filter.bookCode) continue;
+                if (filter.timeBounded) {
+                    long moment = view.moments[row];
+                    if (moment == NO_MOMENT || moment < filter.fromMillis || moment >= filter.toMillis) continue;
+                }
+                int group = view.group(row);
+                if (group < 0) continue; // No moment, when grouping by month
+                pages[group] += view.pagesRead[row];
+                habits[group]++;
+            }
+            return new long[][]{pages, habits};
+        }
+    }
+
+    // One group-by row: the user/book ID or month (year * 12 + month - 1) with its totals
+    public static class Group {
+        private final int key;
+        private final String label;
+        private final long pagesRead;
+        private final long habits;
+
+        Group(int key, String label, long pagesRead, long habits) {
+            this.key = key;
+            this.label = label;
+            this.pagesRead = pagesRead;
+            this.habits = habits;
+        }
+
+        public int getKey() { return key; }
+        public String getLabel() { return label; }
+        public long getPagesRead() { return pagesRead; }
+        public long getHabits() { return habits; }
+
+        @Override
+        public String toString() {
+            return String.format("%-50s %10d habits %12d pages", label, habits, pagesRead);
+        }
+    }
+
+    public static class RefreshResult {
+        private final int rowsLoaded;
+        private final boolean fullReload;
+        private final int rowCount;
+        private final long elapsedNanos;
+
+        RefreshResult(int rowsLoaded, boolean fullReload, int rowCount, long elapsedNanos) {
+            this.rowsLoaded = rowsLoaded;
+            this.fullReload = fullReload;
+            this.rowCount = rowCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getRowsLoaded() { return rowsLoaded; }
+        public boolean isFullReload() { return fullReload; }
+        public int getRowCount() { return rowCount; }
+        public long getElapsedNanos() { return elapsedNanos; }
+
+        @Override
+        public String toString() {
+            return String.format("%s %,d habits in %.1f ms (%,d in snapshot)",
+                    fullReload ? "Loaded" : "Appended", rowsLoaded, elapsedNanos / 1e6, rowCount);
+        }
+    }
+}
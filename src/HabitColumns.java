@@ -0,0 +1,135 @@
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+
+// Result of a large habit read held column by column (ReadingHabitDao.getHabitColumnsByUserIds):
+// one primitive array per column instead of a ReadingHabit per row, about 24 bytes a row against
+// 40-60 for the objects, and nothing for the collector to trace. Rows are addressed by index.
+// Columns are kept in blocks of BLOCK_ROWS, so a growing result is never copied; only the first
+// block starts small and doubles, so small reads stay small.
+// Titles come from a table of the distinct books in the result, looked up from BookTitleCache once
+// per book when the read finishes; rows only hold the bookID.
+public class HabitColumns {
+
+    private static final int BLOCK_SHIFT = 13;
+    private static final int BLOCK_ROWS = 1 << BLOCK_SHIFT; // 8,192 rows, 192 KB per block
+    private static final int BLOCK_MASK = BLOCK_ROWS - 1;
+    private static final int FIRST_BLOCK_ROWS = 64;
+
+    private int size = 0;
+    private int[][] habitIds = new int[0][];
+    private int[][] userIds = new int[0][];
+    private int[][] bookIds = new int[0][];
+    private int[][] pagesRead = new int[0][];
+    private long[][] moments = new long[0][]; // Epoch millis, ReadingHabit.NO_MOMENT without one
+
+    // Title table: the distinct bookIDs of the rows (sorted) and their titles
+    private int[] titleBookIds = new int[0];
+    private String[] titles = new String[0];
+
+    HabitColumns() {
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getHabitId(int row) {
+        return habitIds[block(row)][row & BLOCK_MASK];
+    }
+
+    public int getUserId(int row) {
+        return userIds[block(row)][row & BLOCK_MASK];
+    }
+
+    public int getBookId(int row) {
+        return bookIds[block(row)][row & BLOCK_MASK];
+    }
+
+    public int getPagesRead(int row) {
+        return pagesRead[block(row)][row & BLOCK_MASK];
+    }
+
+    public boolean hasSubmissionMoment(int row) {
+        return getSubmissionMillis(row) != ReadingHabit.NO_MOMENT;
+    }
+
+    // Epoch milliseconds; only meaningful if hasSubmissionMoment(row)
+    public long getSubmissionMillis(int row) {
+        return moments[block(row)][row & BLOCK_MASK];
+    }
+
+    // null if unknown
+    public Instant getSubmissionMoment(int row) {
+        long moment = getSubmissionMillis(row);
+        return moment == ReadingHabit.NO_MOMENT ? null : Instant.ofEpochMilli(moment);
+    }
+
+    // The title as of the read (null if the book no longer existed)
+    public String getBookTitle(int row) {
+        int index = Arrays.binarySearch(titleBookIds, getBookId(row));
+        return index >= 0 ? titles[index] : null;
+    }
+
+    // The row as a ReadingHabit, for code that needs one
+    public ReadingHabit get(int row) {
+        return new ReadingHabit(getHabitId(row), getUserId(row), getBookId(row), getPagesRead(row),
+                getSubmissionMillis(row), getBookTitle(row));
+    }
+
+    private int block(int row) {
+        return Objects.checkIndex(row, size) >>> BLOCK_SHIFT;
+    }
+
+    void add(int habitId, int userId, int bookId, int pages, long moment) {
+        int block = size >>> BLOCK_SHIFT;
+        int offset = size & BLOCK_MASK;
+        if (block == habitIds.length || offset == habitIds[block].length) {
+            grow(block);
+        }
+        habitIds[block][offset] = habitId;
+        userIds[block][offset] = userId;
+        bookIds[block][offset] = bookId;
+        pagesRead[block][offset] = pages;
+        moments[block][offset] = moment;
+        size++;
+    }
+
+    // Adds block, or doubles it while it is the first one and not yet full size
+    private void grow(int block) {
+        if (block == habitIds.length) {
+            habitIds = Arrays.copyOf(habitIds, block + 1);
+            userIds = Arrays.copyOf(userIds, block + 1);
+            bookIds = Arrays.copyOf(bookIds, block + 1);
+            pagesRead = Arrays.copyOf(pagesRead, block + 1);
+            moments = Arrays.copyOf(moments, block + 1);
+        }
+        int rows = block > 0 ? BLOCK_ROWS
+                : habitIds[0] == null ? FIRST_BLOCK_ROWS : Math.min(BLOCK_ROWS, habitIds[0].length * 2);
+        habitIds[block] = habitIds[block] == null ? new int[rows] : Arrays.copyOf(habitIds[block], rows);
+        userIds[block] = userIds[block] == null ? new int[rows] : Arrays.copyOf(userIds[block], rows);
+        bookIds[block] = bookIds[block] == null ? new int[rows] : Arrays.copyOf(bookIds[block], rows);
+        pagesRead[block] = pagesRead[block] == null ? new int[rows] : Arrays.copyOf(pagesRead[block], rows);
+        moments[block] = moments[block] == null ? new long[rows] : Arrays.copyOf(moments[block], rows);
+    }
+
+    // Builds the title table once every row is in (after all shards have been read)
+    void resolveTitles() throws SQLException {
+        BitSet distinct = new BitSet(); // bookIDs are positive (AUTOINCREMENT)
+        for (int row = 0; row < size; row++) {
+            distinct.set(bookIds[row >>> BLOCK_SHIFT][row & BLOCK_MASK]);
+        }
+        titleBookIds = distinct.stream().toArray();
+        titles = new String[titleBookIds.length];
+        for (int i = 0; i < titleBookIds.length; i++) {
+            titles[i] = BookTitleCache.get().getTitle(titleBookIds[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HabitColumns [rows=" + size + ", books=" + titles.length + "]";
+    }
+}
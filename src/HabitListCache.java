@@ -0,0 +1,401 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Read-through cache of per-user habit lists (ReadingHabitDao.getHabitsByUserId, and the pages
+// sliced from them), keyed by userID and bounded by an estimate of the heap the lists hold
+// (-Dbooktracker.habitCache.maxBytes, default 32 MB; 0 turns it off).
+// Eviction is W-TinyLFU (Einziger et al., as in Caffeine): new lists enter a small LRU window (1% of
+// the budget). One pushed out of the window only gets into the main region if a count-min sketch of
+// recent lookups has seen its user more often than the main region's LRU victim, so a burst of
+// one-off users can't flush the hot ones. The main region is split into probation and protected
+// (80%) segments; a second hit promotes a list to protected.
+// Lists are dropped when their user's habits are added or deleted, and when the title of a book
+// in them changes (titles are held on the cached habits). A load that started before such a change
+// is not cached: loadStamp() is taken first and put() compares it, like BookTitleCache's generation.
+public class HabitListCache {
+
+    private static final long MAX_BYTES = Long.getLong("booktracker.habitCache.maxBytes", 32L * 1024 * 1024);
+    private static final HabitListCache instance = new HabitListCache(MAX_BYTES);
+
+    // Heap estimates (compressed oops): a ReadingHabit (40 bytes) with its list slot, and the
+    // per-list overhead (map entries, node, list and bookID array headers). Titles are shared.
+    static final int BYTES_PER_HABIT = 48;
+    static final int BYTES_PER_LIST = 160;
+    private static final int STRIPES = 1024; // Invalidation stamps, by userID
+
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+
+    private final long maxWeight;
+    private final long windowMax;
+    private final long protectedMax;
+    private final Map<Integer, Node> nodes = new HashMap<>();
+    // Insertion-ordered, least recently used first; a hit re-inserts the node at the end
+    private final LinkedHashMap<Integer, Node> window = new LinkedHashMap<>();
+    private final LinkedHashMap<Integer, Node> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<Integer, Node> protectedSegment = new LinkedHashMap<>();
+    private long windowWeight = 0;
+    private long probationWeight = 0;
+    private long protectedWeight = 0;
+    private final FrequencySketch sketch;
+
+    private final int[] stamps = new int[STRIPES];
+    private int generation = 0; // Bumped by title changes and invalidateAll
+
+    private long hits = 0;
+    private long misses = 0;
+    private long puts = 0;
+    private long rejected = 0;      // Lost the admission contest, or bigger than the whole cache
+    private long evictions = 0;
+    private long evictedBytes = 0;
+    private long invalidations = 0;
+    private long stalePuts = 0;     // Loads not cached because of a change while they ran
+
+    HabitListCache(long maxWeight) {
+        this.maxWeight = Math.max(0, maxWeight);
+        this.windowMax = Math.max(1, this.maxWeight / 100);
+        this.protectedMax = (this.maxWeight - windowMax) * 8 / 10;
+        // Sized for lists of about 100 habits; the estimate only needs to be right within a few times
+        this.sketch = new FrequencySketch((int) Math.min(1 << 24, Math.max(64, this.maxWeight / (BYTES_PER_HABIT * 100L))));
+    }
+
+    public static HabitListCache get() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return maxWeight > 0;
+    }
+
+    // The cached list (unmodifiable), or null. Counts as a use of the user for admission either way.
+    public synchronized List<ReadingHabit> getIfPresent(int userId) {
+        if (!isEnabled()) return null;
+        sketch.increment(userId);
+        Node node = nodes.get(userId);
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        touch(node);
+        return node.habits;
+    }
+
+    // Taken before loading a user's habits from the database; pass it to put()
+    public synchronized long loadStamp(int userId) {
+        return (long) generation << 32 | (stamps[stripe(userId)] & 0xFFFFFFFFL);
+    }
+
+    // Caches a user's complete habit list (newest first), unless it changed since loadStamp
+    public synchronized void put(int userId, List<ReadingHabit> habits, long loadStamp) {
+        if (!isEnabled()) return;
+        if (loadStamp != loadStamp(userId)) {
+            stalePuts++;
+            return;
+        }
+        Node node = new Node(userId, Collections.unmodifiableList(new ArrayList<>(habits)), bookIdsOf(habits));
+        if (node.weight > maxWeight - windowMax) {
+            rejected++;
+            return;
+        }
+        remove(nodes.get(userId));
+        nodes.put(userId, node);
+        node.region = WINDOW;
+        window.put(userId, node);
+        windowWeight += node.weight;
+        puts++;
+        evictFromWindow();
+    }
+
+    // The user's habits were added to or deleted
+    public synchronized void invalidateUser(int userId) {
+        stamps[stripe(userId)]++;
+        Node node = nodes.get(userId);
+        if (node != null) {
+            remove(node);
+            invalidations++;
+        }
+    }
+
+    // A book's title changed: drops the lists that contain the book
+    public synchronized void titleChanged(int bookId) {
+        generation++;
+        for (Iterator<Node> it = nodes.values().iterator(); it.hasNext(); ) {
+            Node node = it.next();
+            if (Arrays.binarySearch(node.bookIds, bookId) >= 0) {
+                it.remove();
+                unlink(node);
+                invalidations++;
+            }
+        }
+    }
+
+    // Habits were written around the DAOs (bulk loads)
+    public synchronized void invalidateAll() {
+        generation++;
+        invalidations += nodes.size();
+        nodes.clear();
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+        windowWeight = probationWeight = protectedWeight = 0;
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, puts, rejected, evictions, evictedBytes, invalidations, stalePuts,
+                nodes.size(), windowWeight + probationWeight + protectedWeight, maxWeight);
+    }
+
+    static int weigh(int habits, int books) {
+        return BYTES_PER_LIST + habits * BYTES_PER_HABIT + books * 4;
+    }
+
+    // --- Regions ---
+
+    private void touch(Node node) {
+        switch (node.region) {
+            case WINDOW:
+                window.remove(node.userId);
+                window.put(node.userId, node);
+                break;
+            case PROBATION: // Second hit: promote, demoting protected's LRU lists if it overflows
+                probation.remove(node.userId);
+                probationWeight -= node.weight;
+                node.region = PROTECTED;
+                protectedSegment.put(node.userId, node);
+                protectedWeight += node.weight;
+                while (protectedWeight > protectedMax && protectedSegment.size() > 1) {
+                    Node demoted = protectedSegment.values().iterator().next();
+                    protectedSegment.remove(demoted.userId);
+                    protectedWeight -= demoted.weight;
+                    demoted.region = PROBATION;
+                    probation.put(demoted.userId, demoted);
+                    probationWeight += demoted.weight;
+                }
+                break;
+            default:
+                protectedSegment.remove(node.userId);
+                protectedSegment.put(node.userId, node);
+        }
+    }
+
+    // Moves lists out of the window while it is over budget; each must win admission into main
+    private void evictFromWindow() {
+        long mainMax = maxWeight - windowMax;
+        while (windowWeight > windowMax) {
+            Node candidate = window.values().iterator().next();
+            window.remove(candidate.userId);
+            windowWeight -= candidate.weight;
+
+            int candidateFrequency = sketch.frequency(candidate.userId);
+            boolean admitted = true;
+            while (probationWeight + protectedWeight + candidate.weight > mainMax) {
+                Node victim = !probation.isEmpty() ? probation.values().iterator().next()
+                        : protectedSegment.values().iterator().next();
+                if (sketch.frequency(victim.userId) >= candidateFrequency) {
+                    admitted = false;
+                    break;
+                }
+                evict(victim);
+            }
+            if (admitted) {
+                candidate.region = PROBATION;
+                probation.put(candidate.userId, candidate);
+                probationWeight += candidate.weight;
+            } else {
+                nodes.remove(candidate.userId);
+                rejected++;
+            }
+        }
+    }
+
+    private void evict(Node node) {
+        remove(node);
+        evictions++;
+        evictedBytes += node.weight;
+    }
+
+    private void remove(Node node) {
+        if (node == null) return;
+        nodes.remove(node.userId);
+        unlink(node);
+    }
+
+    // Takes the node out of its region (not out of nodes)
+    private void unlink(Node node) {
+        switch (node.region) {
+            case WINDOW:
+                window.remove(node.userId);
+                windowWeight -= node.weight;
+                break;
+            case PROBATION:
+                probation.remove(node.userId);
+                probationWeight -= node.weight;
+                break;
+            default:
+                protectedSegment.remove(node.userId);
+                protectedWeight -= node.weight;
+        }
+    }
+
+    private static int stripe(int userId) {
+        return Math.floorMod(userId * 0x9E3779B9, STRIPES);
+    }
+
+    // Distinct bookIDs of the list, sorted, for titleChanged
+    private static int[] bookIdsOf(List<ReadingHabit> habits) {
+        int[] ids = new int[habits.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = habits.get(i).getBookID();
+        }
+        Arrays.sort(ids);
+        int distinct = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) ids[distinct++] = ids[i];
+        }
+        return Arrays.copyOf(ids, distinct);
+    }
+
+    private static final class Node {
+        final int userId;
+        final List<ReadingHabit> habits;
+        final int[] bookIds;
+        final int weight;
+        byte region;
+
+        Node(int userId, List<ReadingHabit> habits, int[] bookIds) {
+            this.userId = userId;
+            this.habits = habits;
+            this.bookIds = bookIds;
+            this.weight = weigh(habits.size(), bookIds.length);
+        }
+    }
+
+    // Count-min sketch of 4-bit counters (four per key, 16 to a long), halved every 10 * capacity
+    // increments so old popularity fades. Only relative frequencies matter for admission.
+    private static final class FrequencySketch {
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions = 0;
+
+        FrequencySketch(int capacity) {
+            int size = Integer.highestOneBit(Math.max(16, capacity - 1) << 1);
+            this.table = new long[size];
+            this.mask = size - 1;
+            this.sampleSize = 10 * capacity;
+        }
+
+        int frequency(int key) {
+            int hash = spread(key);
+            int min = 15;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int shift = counterShift(hash, i);
+                min = Math.min(min, (int) ((table[index] >>> shift) & 15));
+            }
+            return min;
+        }
+
+        void increment(int key) {
+            int hash = spread(key);
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int shift = counterShift(hash, i);
+                if (((table[index] >>> shift) & 15) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & 0x7777777777777777L; // Halve every counter
+                }
+                additions /= 2;
+            }
+        }
+
+        // Row i's long for this key
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & mask;
+        }
+
+        // Which of the long's 16 counters row i uses
+        private static int counterShift(int hash, int i) {
+            return (((hash >>> (i << 3)) & 3) << 2 | i) << 2;
+        }
+
+        private static int spread(int key) {
+            int h = key * 0x9E3779B9;
+            h ^= h >>> 17;
+            h *= 0xED5AD4BB;
+            return h ^ (h >>> 11);
+        }
+
+        private static final long[] SEEDS = {0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L};
+    }
+
+    public static class CacheStats {
+        private final long hits;
+        private final long misses;
+        private final long puts;
+        private final long rejected;
+        private final long evictions;
+        private final long evictedBytes;
+        private final long invalidations;
+        private final long stalePuts;
+        private final int entries;
+        private final long weightBytes;
+        private final long maxBytes;
+
+        CacheStats(long hits, long misses, long puts, long rejected, long evictions, long evictedBytes,
+                   long invalidations, long stalePuts, int entries, long weightBytes, long maxBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.puts = puts;
+            this.rejected = rejected;
+            this.evictions = evictions;
+            this.evictedBytes = evictedBytes;
+            this.invalidations = invalidations;
+            this.stalePuts = stalePuts;
+            this.entries = entries;
+            this.weightBytes = weightBytes;
+            this.maxBytes = maxBytes;
+        }
+
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getPuts() { return puts; }
+        public long getRejected() { return rejected; }
+        public long getEvictions() { return evictions; }
+        public long getEvictedBytes() { return evictedBytes; }
+        public long getInvalidations() { return invalidations; }
+        public long getStalePuts() { return stalePuts; }
+        public int getEntries() { return entries; }
+        public long getWeightBytes() { return weightBytes; }
+        public long getMaxBytes() { return maxBytes; }
+
+        public double getHitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("HabitListCacheStats [hits=%d, misses=%d, hitRatio=%.2f, puts=%d, rejected=%d, evictions=%d (%d KB),"
+                            + " invalidations=%d, stalePuts=%d, entries=%d, size=%d KB of %d KB]",
+                    hits, misses, getHitRatio(), puts, rejected, evictions, evictedBytes / 1024,
+                    invalidations, stalePuts, entries, weightBytes / 1024, maxBytes / 1024);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+import java.time.Instant;
+import java.util.List;
+
+// One page of a user's reading habits, newest first.
+// nextKey is where the following page starts (null on the last page); pass it back as the
+// "after" key to continue. Keys are positions in (submissionMoment, habitID) order, so paging
+// seeks straight to the next row instead of skipping over an OFFSET.
+public class HabitPage {
+    private final List<ReadingHabit> habits;
+    private final Key nextKey;
+
+    public HabitPage(List<ReadingHabit> habits, Key nextKey) {
+        this.habits = habits;
+        this.nextKey = nextKey;
+    }
+
+    public List<ReadingHabit> getHabits() {
+        return habits;
+    }
+
+    public Key getNextKey() {
+        return nextKey;
+    }
+
+    public boolean hasNext() {
+        return nextKey != null;
+    }
+
+    // Position after the last habit of a page
+    public static class Key {
+        private final Instant submissionMoment; // null for habits without a timestamp (sorted last)
+        private final int habitID;
+
+        public Key(Instant submissionMoment, int habitID) {
+            this.submissionMoment = submissionMoment;
+            this.habitID = habitID;
+        }
+
+        public static Key after(ReadingHabit habit) {
+            return new Key(habit.getSubmissionMoment(), habit.getHabitID());
+        }
+
+        public Instant getSubmissionMoment() {
+            return submissionMoment;
+        }
+
+        public int getHabitID() {
+            return habitID;
+        }
+
+        @Override
+        public String toString() {
+            return "Key [submissionMoment=" + submissionMoment + ", habitID=" + habitID + "]";
+        }
+    }
+}
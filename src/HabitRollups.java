@@ -0,0 +1,282 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+// Pre-aggregated reading activity: pages and habit count per user per UTC day (user_day_rollup) and
+// per book per UTC month (book_month_rollup, month = year * 12 + month - 1 as in ReaderSketches).
+// Range reports (ReadingHabitDao.getUserActivity and friends) read these instead of ReadingHabit, so
+// they cost one row per active day or month in the range however many habits there are.
+// ReadingHabitDao, ReadingHabitWriter and the CSV loader apply a Delta in the same transaction as each
+// insert or delete, so the rollups always match the table they sit next to: the main database, or each
+// shard file when sharded (a user's days are all on their shard; a book's months add up over the shards).
+// Habits without a submissionMoment are not rolled up. DatasetGenerator rebuilds with backfill(), which
+// is also the job to run (java HabitRollups) if habits were ever written around the DAOs.
+public final class HabitRollups {
+
+    static final String CREATE_USER_DAY_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS user_day_rollup (
+                userID INTEGER NOT NULL,
+                day INTEGER NOT NULL,
+                pages INTEGER NOT NULL,
+                habits INTEGER NOT NULL,
+                PRIMARY KEY (userID, day)
+            ) WITHOUT ROWID
+            """;
+    static final String CREATE_BOOK_MONTH_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS book_month_rollup (
+                bookID INTEGER NOT NULL,
+                month INTEGER NOT NULL,
+                pages INTEGER NOT NULL,
+                habits INTEGER NOT NULL,
+                PRIMARY KEY (bookID, month)
+            ) WITHOUT ROWID
+            """;
+
+    private static final String UPSERT_USER_DAY_SQL = """
+            INSERT INTO user_day_rollup (userID, day, pages, habits) VALUES (?, ?, ?, ?)
+            ON CONFLICT (userID, day) DO UPDATE SET pages = pages + excluded.pages, habits = habits + excluded.habits
+            """;
+    private static final String UPSERT_BOOK_MONTH_SQL = """
+            INSERT INTO book_month_rollup (bookID, month, pages, habits) VALUES (?, ?, ?, ?)
+            ON CONFLICT (bookID, month) DO UPDATE SET pages = pages + excluded.pages, habits = habits + excluded.habits
+            """;
+    // Drops a day or month whose last habit was deleted
+    private static final String PRUNE_USER_DAY_SQL = "DELETE FROM user_day_rollup WHERE userID = ? AND day = ? AND habits <= 0";
+    private static final String PRUNE_BOOK_MONTH_SQL = "DELETE FROM book_month_rollup WHERE bookID = ? AND month = ? AND habits <= 0";
+
+    // Day and month of submissionMoment in SQL, matching day() and ReaderSketches.monthCode()
+    private static final String DAY_EXPR = "(submissionMoment - ((submissionMoment % 86400000) + 86400000) % 86400000) / 86400000";
+    private static final String MONTH_EXPR = "CAST(strftime('%Y', submissionMoment / 1000.0, 'unixepoch') AS INTEGER) * 12"
+            + " + CAST(strftime('%m', submissionMoment / 1000.0, 'unixepoch') AS INTEGER) - 1";
+
+    private static final int USERS_PER_CHUNK = Integer.getInteger("booktracker.rollup.usersPerChunk", 2_000);
+    private static final int BOOKS_PER_CHUNK = Integer.getInteger("booktracker.rollup.booksPerChunk", 200);
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private HabitRollups() {
+    }
+
+    // Changes to the rollups from a set of inserted or deleted habits, summed per key so a batch
+    // costs one upsert per distinct (user, day) and (book, month)
+    static final class Delta {
+        private final Map<Long, long[]> userDays = new HashMap<>();   // userID, day -> {pages, habits}
+        private final Map<Long, long[]> bookMonths = new HashMap<>(); // bookID, month -> {pages, habits}
+        private boolean removals = false;
+
+        void added(int userId, int bookId, int pagesRead, Instant submissionMoment) {
+            record(userId, bookId, pagesRead, submissionMoment, 1);
+        }
+
+        void removed(int userId, int bookId, int pagesRead, Instant submissionMoment) {
+            record(userId, bookId, pagesRead, submissionMoment, -1);
+        }
+
+        boolean isEmpty() {
+            return userDays.isEmpty() && bookMonths.isEmpty();
+        }
+
+        // Writes the changes on the caller's connection, inside the transaction that changed the habits
+        void applyTo(Connection conn) throws SQLException {
+            if (isEmpty()) return;
+            upsert(conn, UPSERT_USER_DAY_SQL, PRUNE_USER_DAY_SQL, userDays);
+            upsert(conn, UPSERT_BOOK_MONTH_SQL, PRUNE_BOOK_MONTH_SQL, bookMonths);
+            userDays.clear();
+            bookMonths.clear();
+            removals = false;
+        }
+
+        private void record(int userId, int bookId, int pagesRead, Instant submissionMoment, int sign) {
+            if (submissionMoment == null) return;
+            long day = day(submissionMoment);
+            long[] userDay = userDays.computeIfAbsent(key(userId, day), k -> new long[2]);
+            userDay[0] += sign * (long) pagesRead;
+            userDay[1] += sign;
+            long[] bookMonth = bookMonths.computeIfAbsent(key(bookId, ReaderSketches.monthCode(submissionMoment)), k -> new long[2]);
+            bookMonth[0] += sign * (long) pagesRead;
+            bookMonth[1] += sign;
+            if (sign < 0) removals = true;
+        }
+
+        private void upsert(Connection conn, String upsertSql, String pruneSql, Map<Long, long[]> changes) throws SQLException {
+            try (PreparedStatement pstmt = conn.prepareStatement(upsertSql)) {
+                for (Map.Entry<Long, long[]> change : changes.entrySet()) {
+                    if (change.getValue()[1] == 0 && change.getValue()[0] == 0) continue; // Added and removed again
+                    pstmt.setInt(1, (int) (change.getKey() >> 32));
+                    pstmt.setInt(2, (int) (long) change.getKey());
+                    pstmt.setLong(3, change.getValue()[0]);
+                    pstmt.setLong(4, change.getValue()[1]);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            if (!removals) return;
+            try (PreparedStatement pstmt = conn.prepareStatement(pruneSql)) {
+                for (Map.Entry<Long, long[]> change : changes.entrySet()) {
+                    if (change.getValue()[1] >= 0) continue;
+                    pstmt.setInt(1, (int) (change.getKey() >> 32));
+                    pstmt.setInt(2, (int) (long) change.getKey());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+        }
+    }
+
+    // Rolls up one habit on the caller's connection and transaction (two plain upserts, no batch)
+    static void habitAdded(Connection conn, int userId, int bookId, int pagesRead, Instant submissionMoment) throws SQLException {
+        if (submissionMoment == null) return;
+        upsertOne(conn, UPSERT_USER_DAY_SQL, userId, day(submissionMoment), pagesRead);
+        upsertOne(conn, UPSERT_BOOK_MONTH_SQL, bookId, ReaderSketches.monthCode(submissionMoment), pagesRead);
+    }
+
+    private static void upsertOne(Connection conn, String sql, int id, long dayOrMonth, int pagesRead) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, id);
+            pstmt.setLong(2, dayOrMonth);
+            pstmt.setInt(3, pagesRead);
+            pstmt.setInt(4, 1);
+            pstmt.executeUpdate();
+        }
+    }
+
+    static void createTables(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(CREATE_USER_DAY_TABLE_SQL);
+            stmt.execute(CREATE_BOOK_MONTH_TABLE_SQL);
+        }
+    }
+
+    // Recomputes both tables from ReadingHabit in the caller's transaction (migrations, ReshardTool)
+    static void rebuild(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM user_day_rollup");
+            stmt.executeUpdate("DELETE FROM book_month_rollup");
+            stmt.executeUpdate(userDaySelect(""));
+            stmt.executeUpdate(bookMonthSelect(""));
+        }
+    }
+
+    // Backfill job: recomputes the rollups from ReadingHabit in chunks of users (then books), each in
+    // its own short transaction, so habit writes from a running application only wait for one chunk.
+    // A chunk replaces its users' (books') rows under the write lock, so writes between chunks are
+    // never lost or counted twice. The first and last chunks are open-ended, which also clears rows
+    // of IDs that no longer have habits. Returns the number of habits rolled up.
+    public static long backfill(Connection conn) throws SQLException {
+        createTables(conn);
+        long habits = 0;
+        int[] users = idRange(conn, "userID");
+        for (long from = users[0]; from <= users[1]; from += USERS_PER_CHUNK) {
+            habits += replaceChunk(conn, "user_day_rollup", "userID", userDaySelect("AND userID BETWEEN ? AND ?"),
+                    from == users[0] ? Integer.MIN_VALUE : from,
+                    from + USERS_PER_CHUNK > users[1] ? Integer.MAX_VALUE : from + USERS_PER_CHUNK - 1);
+        }
+        int[] books = idRange(conn, "bookID");
+        for (long from = books[0]; from <= books[1]; from += BOOKS_PER_CHUNK) {
+            replaceChunk(conn, "book_month_rollup", "bookID", bookMonthSelect("AND bookID BETWEEN ? AND ?"),
+                    from == books[0] ? Integer.MIN_VALUE : from,
+                    from + BOOKS_PER_CHUNK > books[1] ? Integer.MAX_VALUE : from + BOOKS_PER_CHUNK - 1);
+        }
+        return habits;
+    }
+
+    // UTC day number of a moment (days since 1970-01-01)
+    static long day(Instant moment) {
+        return Math.floorDiv(moment.toEpochMilli(), MILLIS_PER_DAY);
+    }
+
+    private static long key(int id, long dayOrMonth) {
+        return (long) id << 32 | (dayOrMonth & 0xFFFFFFFFL);
+    }
+
+    private static String userDaySelect(String filter) {
+        return "INSERT INTO user_day_rollup (userID, day, pages, habits) SELECT userID, " + DAY_EXPR
+                + " AS day, SUM(pagesRead), COUNT(*) FROM ReadingHabit WHERE submissionMoment IS NOT NULL "
+                + filter + " GROUP BY userID, day";
+    }
+
+    private static String bookMonthSelect(String filter) {
+        return "INSERT INTO book_month_rollup (bookID, month, pages, habits) SELECT bookID, " + MONTH_EXPR
+                + " AS month, SUM(pagesRead), COUNT(*) FROM ReadingHabit WHERE submissionMoment IS NOT NULL "
+                + filter + " GROUP BY bookID, month";
+    }
+
+    // Lowest and highest ID in the column; {0, 0} (one open-ended chunk) without habits
+    private static int[] idRange(Connection conn, String column) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(" + column + "), MAX(" + column + ") FROM ReadingHabit")) {
+            rs.next();
+            int min = rs.getInt(1);
+            return rs.wasNull() ? new int[2] : new int[] {min, rs.getInt(2)};
+        }
+    }
+
+    // Replaces the rollup rows with IDs in [from, to] in one transaction; returns the habits they sum up
+    private static long replaceChunk(Connection conn, String table, String column, String insertSql,
+                                     long from, long to) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM " + table + " WHERE " + column + " BETWEEN ? AND ?")) {
+                pstmt.setLong(1, from);
+                pstmt.setLong(2, to);
+                pstmt.executeUpdate(); // Takes the write lock before ReadingHabit is read
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(insertSql)) {
+                pstmt.setLong(1, from);
+                pstmt.setLong(2, to);
+                pstmt.executeUpdate();
+            }
+            long habits;
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT IFNULL(SUM(habits), 0) FROM " + table + " WHERE " + column + " BETWEEN ? AND ?")) {
+                pstmt.setLong(1, from);
+                pstmt.setLong(2, to);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    habits = rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+            conn.commit();
+            return habits;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    // Usage: java -cp "out:lib/sqlite-jdbc-....jar" [-Dbooktracker.db.path=...] [-Dbooktracker.shards=N] HabitRollups
+    // Rebuilds the rollups of the main database, or of every shard file when sharded. Safe to run
+    // alongside the application.
+    public static void main(String[] args) {
+        int status = 0;
+        try {
+            SchemaMigrations.migrateIfNeeded();
+            long start = System.nanoTime();
+            long habits = 0;
+            ShardedStorage shards = DatabaseConnector.getShards();
+            if (shards == null) {
+                try (Connection conn = DatabaseConnector.connect()) {
+                    habits = backfill(conn);
+                }
+            } else {
+                for (int s = 0; s < shards.getShardCount(); s++) {
+                    try (Connection conn = shards.connect(s)) {
+                        habits += backfill(conn);
+                    }
+                }
+            }
+            System.out.printf("SUCCESS: Rolled up %,d habits in %.2f s%n", habits, (System.nanoTime() - start) / 1e9);
+        } catch (SQLException e) {
+            System.err.println("ERROR backfilling the rollups: " + e.getMessage());
+            status = 1;
+        } finally {
+            DatabaseConnector.shutdown();
+        }
+        System.exit(status);
+    }
+}
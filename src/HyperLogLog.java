@@ -0,0 +1,199 @@
+import java.util.Arrays;
+
+// HyperLogLog distinct-value sketch (Flajolet et al. 2007) over 64-bit hashes of int values.
+// 2^precision registers give a standard error of about 1.04 / sqrt(2^precision), e.g. 1.6% at
+// precision 12; small counts use linear counting, which is far more accurate there. Sketches of
+// the same precision merge (register-wise max) into the sketch of the union, so per-month sketches
+// combine into any range of months.
+// A sketch starts sparse (a sorted list of the registers that are set, 4 bytes each) and switches
+// to a dense byte per register once that is smaller. toBytes() writes the sparse form with 3 bytes
+// per register, or the dense form with the registers packed into 6 bits each.
+// Values can't be taken out again. Not thread-safe; ReaderSketches guards it.
+final class HyperLogLog {
+
+    static final int MIN_PRECISION = 4;
+    static final int MAX_PRECISION = 16;
+
+    private static final byte SPARSE = 0;
+    private static final byte DENSE = 1;
+
+    private final int precision;
+    private final int registerCount;
+    private int[] sparse = new int[4]; // index << 6 | value, sorted by index; null once dense
+    private int sparseSize = 0;
+    private byte[] dense;              // Null while sparse
+
+    HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("HyperLogLog precision must be between " + MIN_PRECISION
+                    + " and " + MAX_PRECISION + ", got " + precision);
+        }
+        this.precision = precision;
+        this.registerCount = 1 << precision;
+    }
+
+    // Smallest precision whose standard error is at most relativeError (within the supported range)
+    static int precisionFor(double relativeError) {
+        if (!(relativeError > 0)) throw new IllegalArgumentException("Relative error must be positive, got " + relativeError);
+        double registers = Math.pow(1.04 / relativeError, 2);
+        int precision = (int) Math.ceil(Math.log(registers) / Math.log(2));
+        return Math.max(MIN_PRECISION, Math.min(MAX_PRECISION, precision));
+    }
+
+    static double standardError(int precision) {
+        return 1.04 / Math.sqrt(1 << precision);
+    }
+
+    int getPrecision() {
+        return precision;
+    }
+
+    // Adds a value; false if the sketch didn't change (the value, or one like it, was already counted)
+    boolean add(int value) {
+        long hash = mix(value);
+        int index = (int) (hash >>> (64 - precision));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+        return raise(index, rank);
+    }
+
+    // Adds every value counted by other, which must have the same precision
+    void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Can't merge precision " + other.precision + " into " + precision);
+        }
+        if (other.dense != null) {
+            toDense();
+            for (int i = 0; i < registerCount; i++) {
+                if (other.dense[i] > dense[i]) dense[i] = other.dense[i];
+            }
+        } else {
+            for (int i = 0; i < other.sparseSize; i++) {
+                raise(other.sparse[i] >>> 6, other.sparse[i] & 63);
+            }
+        }
+    }
+
+    long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        if (dense != null) {
+            for (byte register : dense) {
+                if (register == 0) zeros++;
+                sum += 1.0 / (1L << register);
+            }
+        } else {
+            zeros = registerCount - sparseSize;
+            sum = zeros;
+            for (int i = 0; i < sparseSize; i++) {
+                sum += 1.0 / (1L << (sparse[i] & 63));
+            }
+        }
+        double m = registerCount;
+        double estimate = alpha() * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log(m / zeros); // Linear counting
+        }
+        return Math.round(estimate);
+    }
+
+    // Heap bytes held by the registers (for the statistics)
+    int memoryBytes() {
+        return dense != null ? dense.length : sparse.length * 4;
+    }
+
+    byte[] toBytes() {
+        if (dense == null) {
+            byte[] bytes = new byte[2 + sparseSize * 3];
+            bytes[0] = (byte) precision;
+            bytes[1] = SPARSE;
+            for (int i = 0; i < sparseSize; i++) {
+                bytes[2 + i * 3] = (byte) (sparse[i] >>> 16);
+                bytes[3 + i * 3] = (byte) (sparse[i] >>> 8);
+                bytes[4 + i * 3] = (byte) sparse[i];
+            }
+            return bytes;
+        }
+        byte[] bytes = new byte[2 + registerCount * 6 / 8];
+        bytes[0] = (byte) precision;
+        bytes[1] = DENSE;
+        for (int i = 0; i < registerCount; i++) {
+            int bit = i * 6;
+            int packed = dense[i] << (10 - bit % 8); // The register's 6 bits, aligned within two bytes
+            bytes[2 + bit / 8] |= (byte) (packed >>> 8);
+            if (bit % 8 > 2) bytes[3 + bit / 8] |= (byte) packed;
+        }
+        return bytes;
+    }
+
+    static HyperLogLog fromBytes(byte[] bytes) {
+        HyperLogLog sketch = new HyperLogLog(bytes[0]);
+        if (bytes[1] == SPARSE) {
+            int size = (bytes.length - 2) / 3;
+            sketch.sparse = new int[Math.max(4, size)];
+            for (int i = 0; i < size; i++) {
+                sketch.sparse[i] = (bytes[2 + i * 3] & 0xFF) << 16 | (bytes[3 + i * 3] & 0xFF) << 8 | (bytes[4 + i * 3] & 0xFF);
+            }
+            sketch.sparseSize = size;
+        } else {
+            sketch.toDense();
+            for (int i = 0; i < sketch.registerCount; i++) {
+                int bit = i * 6;
+                int pair = (bytes[2 + bit / 8] & 0xFF) << 8 | (bit % 8 > 2 ? bytes[3 + bit / 8] & 0xFF : 0);
+                sketch.dense[i] = (byte) ((pair >>> (10 - bit % 8)) & 63);
+            }
+        }
+        return sketch;
+    }
+
+    private boolean raise(int index, int rank) {
+        if (dense != null) {
+            if (dense[index] >= rank) return false;
+            dense[index] = (byte) rank;
+            return true;
+        }
+        int at = Arrays.binarySearch(sparse, 0, sparseSize, index << 6 | 63); // Never present: value 63 is out of range
+        at = -at - 1; // Insertion point, just after this index's entry if it has one
+        if (at > 0 && sparse[at - 1] >>> 6 == index) {
+            if ((sparse[at - 1] & 63) >= rank) return false;
+            sparse[at - 1] = index << 6 | rank;
+            return true;
+        }
+        if ((sparseSize + 1) * 4 > registerCount) { // Dense is smaller from here on
+            toDense();
+            dense[index] = (byte) rank;
+            return true;
+        }
+        if (sparseSize == sparse.length) sparse = Arrays.copyOf(sparse, sparseSize * 2);
+        System.arraycopy(sparse, at, sparse, at + 1, sparseSize - at);
+        sparse[at] = index << 6 | rank;
+        sparseSize++;
+        return true;
+    }
+
+    private void toDense() {
+        if (dense != null) return;
+        dense = new byte[registerCount];
+        for (int i = 0; i < sparseSize; i++) {
+            dense[sparse[i] >>> 6] = (byte) (sparse[i] & 63);
+        }
+        sparse = null;
+        sparseSize = 0;
+    }
+
+    private double alpha() {
+        switch (registerCount) {
+            case 16: return 0.673;
+            case 32: return 0.697;
+            case 64: return 0.709;
+            default: return 0.7213 / (1 + 1.079 / registerCount);
+        }
+    }
+
+    // SplitMix64 finalizer: consecutive IDs end up with unrelated hashes
+    private static long mix(int value) {
+        long z = value * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
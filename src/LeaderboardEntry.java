@@ -0,0 +1,62 @@
+// One row of a top-N leaderboard (see ReadingHabitDao.getLeaderboard)
+public class LeaderboardEntry {
+
+    public enum Board {
+        BOOKS_BY_READERS("Books by distinct readers", "readers"),
+        BOOKS_BY_PAGES("Books by pages read", "pages"),
+        USERS_BY_PAGES("Readers by pages read", "pages");
+
+        private final String description;
+        private final String unit;
+
+        Board(String description, String unit) {
+            this.description = description;
+            this.unit = unit;
+        }
+
+        public boolean ranksBooks() {
+            return this != USERS_BY_PAGES;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+    }
+
+    private final int rank;
+    private final int id;          // bookID or userID, depending on the board
+    private final String title;    // Book title; null on the user board
+    private final long score;
+
+    public LeaderboardEntry(int rank, int id, String title, long score) {
+        this.rank = rank;
+        this.id = id;
+        this.title = title;
+        this.score = score;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public long getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return "LeaderboardEntry [rank=" + rank + ", id=" + id + ", title=" + title + ", score=" + score + "]";
+    }
+}
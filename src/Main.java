@@ -1,11 +1,19 @@
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 import java.util.InputMismatchException;
-import java.util.List; // Import List
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class Main {
 
@@ -17,11 +25,25 @@ public class Main {
     private static BookDao bookDao = new BookDao();
     private static ReadingHabitDao readingHabitDao = new ReadingHabitDao();
 
+    // Habits shown per page in option 2
+    private static final int HABITS_PAGE_SIZE = 20;
+
+    // Set while running in server mode (java Main --server [port])
+    private static volatile BooktrackerServer server;
+
 
     public static void main(String[] args) {
-        // Initial schema checks/setup can stay here or move to a dedicated setup class
-        addNameColumnIfNotExists();
-        createBooksTableIfNotExists();
+        // Schema setup: applies any pending migrations (a version check when the database is current)
+        SchemaMigrations.migrateIfNeeded();
+        warmBookTitleCache();
+
+        // Make sure queued habit submissions are written even if the JVM is stopped (e.g. Ctrl+C)
+        Runtime.getRuntime().addShutdownHook(new Thread(Main::shutdown, "booktracker-shutdown"));
+
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(args.length > 1 ? Integer.parseInt(args[1]) : Integer.getInteger("booktracker.server.port", BooktrackerServer.DEFAULT_PORT));
+            return;
+        }
 
         Scanner scanner = new Scanner(System.in);
         int choice = -1;
@@ -48,6 +70,42 @@ public class Main {
 
         System.out.println("\nExiting application. Goodbye!");
         scanner.close();
+        shutdown();
+    }
+
+    // Serves the menu operations over HTTP until the process is stopped (Ctrl+C runs the shutdown hook)
+    private static void runServer(int port) {
+        try {
+            server = new BooktrackerServer(port);
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not start server on port " + port + ": " + e.getMessage());
+            return;
+        }
+        server.start();
+        System.out.println("INFO: Booktracker server listening on http://127.0.0.1:" + server.getPort()
+                + (server.usesVirtualThreads() ? " (virtual threads)" : " (platform threads)") + ". Press Ctrl+C to stop.");
+        try {
+            new CountDownLatch(1).await(); // Until the JVM is stopped
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Stop serving, flush pending writes, then close pooled connections. Safe to call more than once.
+    private static void shutdown() {
+        BooktrackerServer running = server;
+        if (running != null) {
+            server = null;
+            running.stop();
+        }
+        AsyncDao.shutdownShared();
+        ReadingHabitWriter.shutdownShared();
+        try {
+            ReaderSketches.get().flush(); // Saves the reader sketches updated since the last flush
+        } catch (SQLException e) {
+            System.err.println("WARNING: Could not save the reader sketches: " + e.getMessage());
+        }
+        DatabaseConnector.shutdown();
     }
 
     // Method to handle routing based on menu choice
@@ -80,6 +138,33 @@ public class Main {
             case 9:
                 System.out.println("INFO: Functionality 9 (Add Name column) checked/executed on startup.");
                 break;
+            case 10:
+                importReadingHabitsAction(scanner);
+                break;
+            case 11:
+                addReadingHabitAction(scanner);
+                break;
+            case 12:
+                verifyStatisticsAction();
+                break;
+            case 13:
+                analyticsAction(scanner);
+                break;
+            case 14:
+                leaderboardAction(scanner);
+                break;
+            case 15:
+                searchTitlesAction(scanner);
+                break;
+            case 16:
+                queryMetricsAction(scanner);
+                break;
+            case 17:
+                compareReaderEstimatesAction(scanner);
+                break;
+            case 18:
+                activityReportAction(scanner);
+                break;
             case 0:
                 // Handled in main loop exit condition
                 break;
@@ -103,66 +188,28 @@ public class Main {
         System.out.println(" 8. Show Users Reading >1 Book");
         System.out.println(" --------------------------------------");
         System.out.println(" 9. (Info) Add 'Name' column (startup)");
+        System.out.println("10. Import Reading Habits from CSV");
+        System.out.println("11. Add Reading Habit");
+        System.out.println("12. Verify/Rebuild Statistics (5, 7, 8)");
+        System.out.println("13. Analytics: Pages per User/Book/Month");
+        System.out.println("14. Leaderboards: Top Books/Readers");
+        System.out.println("15. Search Book Titles");
+        System.out.println("16. Show Query Metrics");
+        System.out.println("17. Compare Approximate Reader Counts");
+        System.out.println("18. Activity Report: Pages per Week/Month");
         System.out.println(" 0. Exit Application");
         System.out.println("========================================");
         System.out.print("Enter your choice: ");
     }
 
-    // --- Schema Setup Methods (Keep in Main or move to Setup class) ---
+    // --- Startup ---
 
-    // Requirement 9: Add 'Name' column to User table
-    private static void addNameColumnIfNotExists() {
-         // Uses DatabaseConnector now
-        String checkColumnSQL = "PRAGMA table_info(User);";
-        String addColumnSQL = "ALTER TABLE User ADD COLUMN Name TEXT;";
-        boolean columnExists = false;
-
-        try (Connection conn = DatabaseConnector.connect(); // Use connector
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(checkColumnSQL)) {
-
-            // ... (rest of logic is the same, just uses DatabaseConnector.connect()) ...
-            while (rs.next()) {
-                if ("Name".equalsIgnoreCase(rs.getString("name"))) {
-                    columnExists = true;
-                    break;
-                }
-            }
-             if (!columnExists) {
-                 DatabaseMetaData dbm = conn.getMetaData();
-                 try (ResultSet tables = dbm.getTables(null, null, "User", null)) {
-                     if (!tables.next()) {
-                         System.out.println("INFO: 'User' table does not exist yet. Cannot add 'Name' column now.");
-                         return;
-                     }
-                 }
-                System.out.println("INFO: Column 'Name' not found in 'User' table. Adding it...");
-                try (Statement addStmt = conn.createStatement()) {
-                     addStmt.executeUpdate(addColumnSQL);
-                     System.out.println("SUCCESS: Column 'Name' added successfully to 'User' table.");
-                }
-            } else {
-                 // System.out.println("INFO: Column 'Name' already exists in 'User' table.");
-            }
-
-        } catch (SQLException e) {
-            System.err.println("WARNING: Error during schema check/update for 'Name' column: " + e.getMessage());
-        }
-    }
-
-    // Helper to create Books table if needed
-     private static void createBooksTableIfNotExists() {
-        String sql = """
-                     CREATE TABLE IF NOT EXISTS Books (
-                         bookID INTEGER PRIMARY KEY AUTOINCREMENT,
-                         title TEXT NOT NULL UNIQUE
-                     );
-                     """;
-         // Uses DatabaseConnector now
-        try (Connection conn = DatabaseConnector.connect(); Statement stmt = conn.createStatement()) {
-            stmt.execute(sql);
+    // Load book titles into memory so title lookups and habit listings don't hit the database
+    private static void warmBookTitleCache() {
+        try {
+            BookTitleCache.get().warm();
         } catch (SQLException e) {
-             System.err.println("WARNING: Error checking/creating 'Books' table: " + e.getMessage());
+            System.err.println("WARNING: Could not preload book titles: " + e.getMessage());
         }
     }
 
@@ -224,26 +271,35 @@ public class Main {
              userId = scanner.nextInt();
              scanner.nextLine(); // Consume newline
 
-             // Call DAO method
-             List<ReadingHabit> habits = readingHabitDao.getHabitsByUserId(userId);
-
-             // Display results
+             // Display results one page at a time (keyset pagination keeps memory flat for big users)
              System.out.println("\n>>> Reading Habits for User ID: " + userId);
              System.out.println("----------------------------------------------------------------------");
              System.out.printf("%-10s %-50s %-10s %-20s%n", "HabitID", "Book Title", "Pages Read", "Timestamp");
              System.out.println("----------------------------------------------------------------------");
 
-             if (habits.isEmpty()) {
-                 System.out.println("INFO: No reading habits found for this user.");
-             } else {
-                 for (ReadingHabit habit : habits) {
+             HabitPage.Key key = null;
+             boolean first = true;
+             do {
+                 HabitPage page = readingHabitDao.getHabitsPageByUserId(userId, HABITS_PAGE_SIZE, key);
+                 if (first && page.getHabits().isEmpty()) {
+                     System.out.println("INFO: No reading habits found for this user.");
+                 }
+                 first = false;
+                 for (ReadingHabit habit : page.getHabits()) {
                       System.out.printf("%-10d %-50s %-10d %-20s%n",
                              habit.getHabitID(),
                              habit.getBookTitle(), // Use getter from ReadingHabit object
                              habit.getPagesRead(),
-                             habit.getSubmissionMoment());
+                             SubmissionMoments.format(habit.getSubmissionMoment()));
                  }
-             }
+                 key = page.getNextKey();
+                 if (key != null) {
+                     System.out.print("-- Press Enter for more, or 'q' to stop: ");
+                     if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                         break;
+                     }
+                 }
+             } while (key != null);
              System.out.println("----------------------------------------------------------------------");
 
          } catch (InputMismatchException e) {
@@ -283,6 +339,7 @@ public class Main {
                  System.out.println("INFO: All reading habits associated with this book are automatically updated due to normalization.");
              } else {
                  System.out.println("INFO: No book found with the title '" + oldTitle + "' in the Books table. No changes made.");
+                 printTitleSuggestions(oldTitle);
              }
         } catch (SQLException e) {
              if (e.getErrorCode() == 19 && e.getMessage() != null && e.getMessage().contains("UNIQUE constraint failed")) {
@@ -354,7 +411,11 @@ public class Main {
         try {
              // Call DAO method
             int count = readingHabitDao.countUsersForBookTitle(bookTitle);
-            System.out.println("RESULT: Total number of distinct users who have read pages from '" + bookTitle + "': " + count);
+            System.out.println("RESULT: Total number of distinct users who have read pages from '" + bookTitle + "': " + count
+                    + approximateNote());
+            if (count == 0 && BookTitleCache.get().findBookId(bookTitle) == null) {
+                printTitleSuggestions(bookTitle);
+            }
 
         } catch (SQLException e) {
              System.err.println("ERROR counting users for book: " + e.getMessage());
@@ -388,7 +449,8 @@ public class Main {
         try {
             // Call DAO method
             int count = readingHabitDao.countUsersReadingMultipleBooks();
-            System.out.println("RESULT: Total number of users that have read more than one distinct book: " + count);
+            System.out.println("RESULT: Total number of users that have read more than one distinct book: " + count
+                    + (ReaderSketches.APPROXIMATE ? " (approximate: deleted habits count until the sketches are rebuilt)" : ""));
 
         } catch (SQLException e) {
             System.err.println("ERROR counting users reading multiple books: " + e.getMessage());
@@ -396,4 +458,348 @@ public class Main {
          System.out.println("----------------------------------------------");
     }
 
-} 
\ No newline at end of file
+    // Action for Menu Option 10
+    private static void importReadingHabitsAction(Scanner scanner) {
+        System.out.println("\n--- 10. Import Reading Habits from CSV ---");
+        System.out.print("Enter CSV file path [data/reading_habits.csv]: ");
+        String file = scanner.nextLine().trim();
+        if (file.isEmpty()) {
+            file = "data/reading_habits.csv";
+        }
+
+        Path path = Paths.get(file);
+        if (!Files.isRegularFile(path)) {
+            System.out.println("WARNING: File '" + file + "' not found.");
+            System.out.println("------------------------------------------");
+            return;
+        }
+
+        try {
+            ReadingHabitCsvLoader.LoadReport report = new ReadingHabitCsvLoader().load(path);
+            System.out.println("SUCCESS: " + report);
+        } catch (IOException e) {
+            System.err.println("ERROR reading CSV file: " + e.getMessage());
+        } catch (SQLException e) {
+            System.err.println("ERROR importing reading habits: " + e.getMessage());
+        }
+        System.out.println("------------------------------------------");
+    }
+
+    // Action for Menu Option 11
+    private static void addReadingHabitAction(Scanner scanner) {
+        System.out.println("\n--- 11. Add Reading Habit ---");
+        try {
+            System.out.print("Enter User ID: ");
+            int userId = scanner.nextInt();
+            scanner.nextLine(); // Consume newline
+
+            System.out.print("Enter Book Title: ");
+            String title = scanner.nextLine().trim();
+            if (title.isEmpty()) {
+                System.out.println("WARNING: Book title cannot be empty.");
+                System.out.println("-----------------------------");
+                return;
+            }
+
+            System.out.print("Enter Pages Read: ");
+            int pagesRead = scanner.nextInt();
+            scanner.nextLine(); // Consume newline
+
+            ReadingHabit habit = new ReadingHabit(0, userId, 0, pagesRead, Instant.now(), title);
+
+            // Goes through the write-behind queue; wait for the ack so we can show the new ID
+            int habitId = readingHabitDao.submitHabit(habit).get(30, TimeUnit.SECONDS);
+            System.out.println("SUCCESS: Reading habit added with Habit ID: " + habitId);
+
+        } catch (InputMismatchException e) {
+            System.err.println("ERROR: Invalid input type. Please enter numbers for User ID and Pages Read.");
+            scanner.nextLine(); // Consume the invalid input
+        } catch (ExecutionException e) {
+            System.err.println("ERROR adding reading habit: " + e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            System.err.println("ERROR: Timed out waiting for the reading habit to be written.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("ERROR: Interrupted while adding reading habit.");
+        }
+        System.out.println("-----------------------------");
+    }
+
+    // Action for Menu Option 12
+    private static void verifyStatisticsAction() {
+        System.out.println("\n--- 12. Verify/Rebuild Statistics ---");
+        try {
+            StatisticsStore.VerificationReport report = StatisticsStore.get().verifyAndRebuild();
+            System.out.println(report);
+            if (report.isConsistent()) {
+                System.out.println("SUCCESS: Running statistics match the database.");
+            } else {
+                System.out.println("WARNING: Running statistics were out of date and have been rebuilt from the database.");
+            }
+        } catch (SQLException e) {
+            System.err.println("ERROR verifying statistics: " + e.getMessage());
+        }
+        System.out.println("-------------------------------------");
+    }
+
+    // Action for Menu Option 13
+    private static void analyticsAction(Scanner scanner) {
+        System.out.println("\n--- 13. Analytics: Pages per User/Book/Month ---");
+        System.out.print("Group by (1 = user, 2 = book, 3 = month): ");
+        String choice = scanner.nextLine().trim();
+        HabitAnalytics.GroupBy groupBy = choice.equals("1") ? HabitAnalytics.GroupBy.USER
+                : choice.equals("2") ? HabitAnalytics.GroupBy.BOOK
+                : choice.equals("3") ? HabitAnalytics.GroupBy.MONTH : null;
+        if (groupBy == null) {
+            System.out.println("WARNING: Please enter 1, 2 or 3.");
+            System.out.println("------------------------------------------------");
+            return;
+        }
+
+        try {
+            System.out.print("Only User ID (Enter for all users): ");
+            String user = scanner.nextLine().trim();
+            Integer userId = user.isEmpty() ? null : Integer.parseInt(user);
+            System.out.print("From date yyyy-MM-dd (Enter for no limit): ");
+            Instant from = parseDate(scanner.nextLine());
+            System.out.print("To date yyyy-MM-dd, exclusive (Enter for no limit): ");
+            Instant to = parseDate(scanner.nextLine());
+
+            HabitAnalytics analytics = HabitAnalytics.get();
+            System.out.println("INFO: " + analytics.refresh());
+            long start = System.nanoTime();
+            List<HabitAnalytics.Group> groups = analytics.aggregate(groupBy, userId, null, from, to);
+            double millis = (System.nanoTime() - start) / 1e6;
+
+            int shown = Math.min(groups.size(), 20);
+            for (int i = 0; i < shown; i++) {
+                System.out.println(groups.get(i));
+            }
+            System.out.printf("RESULT: %,d groups (top %d shown by pages read), computed in %.1f ms.%n", groups.size(), shown, millis);
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: Invalid User ID.");
+        } catch (DateTimeParseException e) {
+            System.err.println("ERROR: Dates must look like 2023-02-08.");
+        } catch (SQLException e) {
+            System.err.println("ERROR loading analytics snapshot: " + e.getMessage());
+        }
+        System.out.println("------------------------------------------------");
+    }
+
+    // Action for Menu Option 14
+    private static void leaderboardAction(Scanner scanner) {
+        System.out.println("\n--- 14. Leaderboards: Top Books/Readers ---");
+        LeaderboardEntry.Board[] boards = LeaderboardEntry.Board.values();
+        for (int i = 0; i < boards.length; i++) {
+            System.out.println((i + 1) + " = " + boards[i].getDescription());
+        }
+        System.out.print("Board: ");
+        try {
+            int choice = Integer.parseInt(scanner.nextLine().trim());
+            if (choice < 1 || choice > boards.length) {
+                System.out.println("WARNING: Please enter a number from 1 to " + boards.length + ".");
+                System.out.println("-------------------------------------------");
+                return;
+            }
+            LeaderboardEntry.Board board = boards[choice - 1];
+            System.out.print("How many (Enter for 10): ");
+            String count = scanner.nextLine().trim();
+            int n = count.isEmpty() ? 10 : Integer.parseInt(count);
+            System.out.print("Last N days (Enter for all time): ");
+            String days = scanner.nextLine().trim();
+
+            long start = System.nanoTime();
+            List<LeaderboardEntry> top = days.isEmpty()
+                    ? readingHabitDao.getLeaderboard(board, n)
+                    : readingHabitDao.getLeaderboardForLastDays(board, n, Integer.parseInt(days));
+            double millis = (System.nanoTime() - start) / 1e6;
+
+            if (top.isEmpty()) {
+                System.out.println("RESULT: No reading habits in that period.");
+            }
+            for (LeaderboardEntry entry : top) {
+                String name = board.ranksBooks() ? "\"" + entry.getTitle() + "\" (Book ID " + entry.getId() + ")" : "User ID " + entry.getId();
+                System.out.printf("%3d. %s: %,d %s%n", entry.getRank(), name, entry.getScore(), board.getUnit());
+            }
+            System.out.printf("INFO: Computed in %.1f ms.%n", millis);
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: Please enter whole numbers.");
+        } catch (SQLException e) {
+            System.err.println("ERROR reading leaderboard: " + e.getMessage());
+        }
+        System.out.println("-------------------------------------------");
+    }
+
+    // Action for Menu Option 15
+    private static void searchTitlesAction(Scanner scanner) {
+        System.out.println("\n--- 15. Search Book Titles ---");
+        System.out.print("Enter words or the start of a title: ");
+        String query = scanner.nextLine();
+        if (query.trim().isEmpty()) {
+            System.out.println("WARNING: Search text cannot be empty.");
+            System.out.println("------------------------------");
+            return;
+        }
+
+        try {
+            long start = System.nanoTime();
+            List<TitleSearchIndex.Match> matches = bookDao.searchTitles(query, 20);
+            double millis = (System.nanoTime() - start) / 1e6;
+
+            if (matches.isEmpty()) {
+                System.out.println("RESULT: No titles match '" + query.trim() + "'.");
+            }
+            for (TitleSearchIndex.Match match : matches) {
+                System.out.println(match);
+            }
+            System.out.printf("INFO: %d match(es) shown, found in %.2f ms.%n", matches.size(), millis);
+        } catch (SQLException e) {
+            System.err.println("ERROR searching titles: " + e.getMessage());
+        }
+        System.out.println("------------------------------");
+    }
+
+    // Action for Menu Option 16
+    private static void queryMetricsAction(Scanner scanner) {
+        System.out.println("\n--- 16. Show Query Metrics ---");
+        if (!QueryMetrics.isEnabled()) {
+            System.out.println("INFO: Query metrics are disabled (-Dbooktracker.metrics.enabled=false).");
+            System.out.println("------------------------------");
+            return;
+        }
+        System.out.print(QueryMetrics.get().report());
+        System.out.print("Reset the metrics now? (y/N): ");
+        if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+            QueryMetrics.get().reset();
+            System.out.println("SUCCESS: Query metrics reset.");
+        }
+        System.out.println("------------------------------");
+    }
+
+    // Action for Menu Option 17
+    private static void compareReaderEstimatesAction(Scanner scanner) {
+        System.out.println("\n--- 17. Compare Approximate Reader Counts ---");
+        try {
+            System.out.print("Number of books (most readers first) [10]: ");
+            String books = scanner.nextLine().trim();
+            int n = books.isEmpty() ? 10 : Integer.parseInt(books);
+            System.out.print("From month yyyy-MM (Enter for no limit): ");
+            YearMonth from = parseMonth(scanner.nextLine());
+            System.out.print("To month yyyy-MM, exclusive (Enter for no limit): ");
+            YearMonth to = parseMonth(scanner.nextLine());
+
+            System.out.println(ReaderSketches.get().compare(readingHabitDao, n, from, to));
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: Invalid number of books.");
+        } catch (DateTimeParseException e) {
+            System.err.println("ERROR: Months must look like 2023-02.");
+        } catch (SQLException e) {
+            System.err.println("ERROR comparing reader counts: " + e.getMessage());
+        }
+        System.out.println("---------------------------------------------");
+    }
+
+    // Action for Menu Option 18
+    private static void activityReportAction(Scanner scanner) {
+        System.out.println("\n--- 18. Activity Report: Pages per Week/Month ---");
+        try {
+            System.out.print("Report for (1) a user or (2) a book: ");
+            String target = scanner.nextLine().trim();
+            List<ActivityTotal> activity;
+            long start;
+            if (target.equals("1")) {
+                System.out.print("Enter User ID: ");
+                int userId = Integer.parseInt(scanner.nextLine().trim());
+                System.out.print("Per (D)ay, (W)eek, (M)onth or (Y)ear [W]: ");
+                ActivityTotal.Period period = parsePeriod(scanner.nextLine(), ActivityTotal.Period.WEEK);
+                System.out.print("From date yyyy-MM-dd: ");
+                LocalDate from = LocalDate.parse(scanner.nextLine().trim());
+                System.out.print("To date yyyy-MM-dd, exclusive: ");
+                LocalDate to = LocalDate.parse(scanner.nextLine().trim());
+                start = System.nanoTime();
+                activity = readingHabitDao.getUserActivity(userId, period, from, to);
+            } else if (target.equals("2")) {
+                System.out.print("Enter book title: ");
+                String title = scanner.nextLine();
+                System.out.print("Per (M)onth or (Y)ear [M]: ");
+                ActivityTotal.Period period = parsePeriod(scanner.nextLine(), ActivityTotal.Period.MONTH);
+                System.out.print("From month yyyy-MM: ");
+                YearMonth from = YearMonth.parse(scanner.nextLine().trim());
+                System.out.print("To month yyyy-MM, exclusive: ");
+                YearMonth to = YearMonth.parse(scanner.nextLine().trim());
+                start = System.nanoTime();
+                activity = readingHabitDao.getBookActivity(title, period, from, to);
+            } else {
+                System.out.println("WARNING: Invalid choice.");
+                System.out.println("-------------------------------------------------");
+                return;
+            }
+            double millis = (System.nanoTime() - start) / 1e6;
+
+            long pages = 0;
+            long habits = 0;
+            for (ActivityTotal total : activity) {
+                System.out.printf("%-6s %s: %,8d pages in %,d habit(s)%n",
+                        total.getPeriod().getDescription(), total.getStart(), total.getPagesRead(), total.getHabits());
+                pages += total.getPagesRead();
+                habits += total.getHabits();
+            }
+            System.out.printf("RESULT: %,d pages in %,d habit(s) over %d period(s).%n", pages, habits, activity.size());
+            System.out.printf("INFO: Computed in %.1f ms.%n", millis);
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: Invalid User ID.");
+        } catch (DateTimeParseException e) {
+            System.err.println("ERROR: Dates must look like 2023-02-08, months like 2023-02.");
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: " + e.getMessage());
+        } catch (SQLException e) {
+            System.err.println("ERROR reading activity: " + e.getMessage());
+        }
+        System.out.println("-------------------------------------------------");
+    }
+
+    // First letter of a period name; blank gives the default
+    private static ActivityTotal.Period parsePeriod(String text, ActivityTotal.Period defaultPeriod) {
+        String value = text.trim().toUpperCase();
+        if (value.isEmpty()) return defaultPeriod;
+        for (ActivityTotal.Period period : ActivityTotal.Period.values()) {
+            if (period.name().startsWith(value.substring(0, 1))) return period;
+        }
+        throw new IllegalArgumentException("Unknown period '" + text.trim() + "'");
+    }
+
+    // Appended to results that come from ReaderSketches
+    private static String approximateNote() {
+        return ReaderSketches.APPROXIMATE
+                ? String.format(" (approximate, standard error %.1f%%)", ReaderSketches.get().getStandardError() * 100)
+                : "";
+    }
+
+    // "Did you mean" for a title that wasn't found exactly
+    private static void printTitleSuggestions(String title) {
+        try {
+            List<TitleSearchIndex.Match> matches = bookDao.searchTitles(title, 5);
+            if (!matches.isEmpty()) {
+                System.out.println("INFO: Did you mean:");
+                for (TitleSearchIndex.Match match : matches) {
+                    System.out.println("        " + match.getTitle());
+                }
+            }
+        } catch (SQLException e) {
+            // Suggestions are optional; the action already reported its own result
+        }
+    }
+
+    // Start of the given day (UTC, like submissionMoment), or null for a blank answer
+    private static Instant parseDate(String text) {
+        String value = text.trim();
+        return value.isEmpty() ? null : LocalDate.parse(value).atStartOfDay(SubmissionMoments.ZONE).toInstant();
+    }
+
+    // Null for a blank answer
+    private static YearMonth parseMonth(String text) {
+        String value = text.trim();
+        return value.isEmpty() ? null : YearMonth.parse(value);
+    }
+
+}
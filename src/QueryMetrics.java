@@ -0,0 +1,379 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-query timing for every statement run through DatabaseConnector's pool.
+// ConnectionPool wraps each statement it hands out; executions are recorded under the DAO
+// method that issued the SQL (found from the call stack once per distinct SQL text), with a
+// latency histogram, row counts and errors. A query's time runs from execute until its
+// ResultSet is exhausted or closed, since SQLite produces rows lazily. Queries slower than
+// booktracker.metrics.slowQueryMillis are logged to stderr and kept for report().
+// Disable everything with -Dbooktracker.metrics.enabled=false.
+public class QueryMetrics {
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("booktracker.metrics.enabled", "true"));
+    private static final long SLOW_QUERY_NANOS = Long.getLong("booktracker.metrics.slowQueryMillis", 100L) * 1_000_000L;
+    private static final int SLOW_QUERIES_KEPT = 50;
+    private static final int MAX_CACHED_LABELS = 1000;
+    private static final QueryMetrics instance = new QueryMetrics();
+
+    private final Map<String, QueryStats> statsByLabel = new ConcurrentHashMap<>();
+    private final Map<String, String> labelsBySql = new ConcurrentHashMap<>();
+    private final LatencyHistogram acquireNanos = new LatencyHistogram();
+    private final Deque<SlowQuery> slowQueries = new ArrayDeque<>();
+    private volatile long resetAt = System.currentTimeMillis();
+
+    private QueryMetrics() {
+    }
+
+    public static QueryMetrics get() {
+        return instance;
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    // The driver's ResultSet behind an instrumented one, to read column values from in a loop over
+    // many rows. Every call through the row-counting proxy costs a reflective invoke, an argument
+    // array and a boxed result (about 190 bytes a row for five columns). Keep calling next() and
+    // close() on rs itself, so the query is still timed and its rows counted.
+    public static ResultSet columns(ResultSet rs) throws SQLException {
+        return Proxy.isProxyClass(rs.getClass()) ? rs.unwrap(ResultSet.class) : rs;
+    }
+
+    // --- Recording (called by ConnectionPool) ---
+
+    // Time spent waiting for a pooled connection
+    void recordAcquire(long nanos) {
+        acquireNanos.record(nanos);
+    }
+
+    // Wraps a statement so its executions are recorded; sql is null for plain Statements
+    Statement instrument(Statement statement, String sql) {
+        Class<?> type = statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new InstrumentedStatement(statement, sql));
+    }
+
+    private void record(String label, String sql, long nanos, long rows, boolean failed) {
+        statsByLabel.computeIfAbsent(label, QueryStats::new).record(nanos, rows, failed);
+        if (nanos >= SLOW_QUERY_NANOS) {
+            SlowQuery slow = new SlowQuery(Instant.now(), label, sql, nanos, rows);
+            synchronized (slowQueries) {
+                if (slowQueries.size() == SLOW_QUERIES_KEPT) slowQueries.removeFirst();
+                slowQueries.addLast(slow);
+            }
+            System.err.println("WARNING: Slow query " + slow);
+        }
+    }
+
+    // "ReadingHabitDao.getHabitsByUserId" for the SQL's first caller outside the JDBC layers
+    private String labelFor(String sql) {
+        String label = sql == null ? null : labelsBySql.get(sql);
+        if (label != null) return label;
+        label = StackWalker.getInstance().walk(frames -> frames
+                .filter(f -> !isInfrastructure(f.getClassName()))
+                .findFirst()
+                .map(f -> simpleName(f.getClassName()) + "." + f.getMethodName())
+                .orElse("unknown"));
+        if (sql != null && labelsBySql.size() < MAX_CACHED_LABELS) {
+            labelsBySql.put(sql, label);
+        }
+        return label;
+    }
+
+    private static boolean isInfrastructure(String className) {
+        return className.equals(QueryMetrics.class.getName())
+                || className.startsWith(QueryMetrics.class.getName() + "$")
+                || className.startsWith(ConnectionPool.class.getName())
+                || className.startsWith(StatementCache.class.getName())
+                || className.startsWith("java.") || className.startsWith("jdk.")
+                || className.startsWith("com.sun.proxy.") || className.startsWith("org.sqlite.");
+    }
+
+    private static String simpleName(String className) {
+        String name = className.substring(className.lastIndexOf('.') + 1);
+        int nested = name.indexOf('$');
+        return nested < 0 ? name : name.substring(0, nested);
+    }
+
+    // --- Reading ---
+
+    // Per-label statistics, most total time first
+    public List<QueryStats.Summary> getQueryStats() {
+        List<QueryStats.Summary> summaries = new ArrayList<>();
+        for (QueryStats stats : statsByLabel.values()) {
+            summaries.add(stats.summary());
+        }
+        summaries.sort((a, b) -> Long.compare(b.getTotalNanos(), a.getTotalNanos()));
+        return summaries;
+    }
+
+    public LatencyHistogram.Snapshot getAcquireTimes() {
+        return acquireNanos.snapshot();
+    }
+
+    public List<SlowQuery> getSlowQueries() {
+        synchronized (slowQueries) {
+            return new ArrayList<>(slowQueries);
+        }
+    }
+
+    public void reset() {
+        statsByLabel.clear();
+        acquireNanos.reset();
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+        resetAt = System.currentTimeMillis();
+    }
+
+    // Text dump for the menu: per-query table, connection acquire times, pool and cache counters
+    // (statement cache and HabitListCache)
+    public String report() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("Since %s (slow query threshold %d ms)%n",
+                Instant.ofEpochMilli(resetAt), SLOW_QUERY_NANOS / 1_000_000));
+        out.append(String.format("%-46s %9s %6s %11s %9s %9s %9s %9s %10s%n",
+                "Query (DAO method)", "Calls", "Errors", "Rows", "p50 ms", "p90 ms", "p99 ms", "max ms", "total ms"));
+        for (QueryStats.Summary s : getQueryStats()) {
+            out.append(String.format("%-46s %9d %6d %11d %9.3f %9.3f %9.3f %9.3f %10.1f%n",
+                    s.getLabel(), s.getCalls(), s.getErrors(), s.getRows(),
+                    s.getLatency().getValueAtPercentile(50) / 1e6, s.getLatency().getValueAtPercentile(90) / 1e6,
+                    s.getLatency().getValueAtPercentile(99) / 1e6, s.getLatency().getMax() / 1e6, s.getTotalNanos() / 1e6));
+        }
+        LatencyHistogram.Snapshot acquire = getAcquireTimes();
+        out.append(String.format("Connection acquire: %d borrows, p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                acquire.getCount(), acquire.getValueAtPercentile(50) / 1e6, acquire.getValueAtPercentile(99) / 1e6,
+                acquire.getMax() / 1e6));
+        out.append(DatabaseConnector.getPoolStats()).append(System.lineSeparator());
+        out.append(DatabaseConnector.getStatementCacheStats()).append(System.lineSeparator());
+        out.append(HabitListCache.get().getStats()).append(System.lineSeparator());
+        List<SlowQuery> slow = getSlowQueries();
+        out.append("Slow queries (latest ").append(slow.size()).append("):").append(System.lineSeparator());
+        for (SlowQuery query : slow) {
+            out.append("  ").append(query).append(System.lineSeparator());
+        }
+        return out.toString();
+    }
+
+    // Counters for one label
+    public static class QueryStats {
+        private final String label;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        QueryStats(String label) {
+            this.label = label;
+        }
+
+        void record(long nanos, long rowCount, boolean failed) {
+            latency.record(nanos);
+            rows.add(rowCount);
+            if (failed) errors.increment();
+        }
+
+        Summary summary() {
+            return new Summary(label, latency.snapshot(), rows.sum(), errors.sum());
+        }
+
+        public static class Summary {
+            private final String label;
+            private final LatencyHistogram.Snapshot latency;
+            private final long rows;
+            private final long errors;
+
+            Summary(String label, LatencyHistogram.Snapshot latency, long rows, long errors) {
+                this.label = label;
+                this.latency = latency;
+                this.rows = rows;
+                this.errors = errors;
+            }
+
+            public String getLabel() { return label; }
+            public LatencyHistogram.Snapshot getLatency() { return latency; }
+            public long getCalls() { return latency.getCount(); }
+            public long getTotalNanos() { return latency.getTotal(); }
+            public long getRows() { return rows; }
+            public long getErrors() { return errors; }
+        }
+    }
+
+    public static class SlowQuery {
+        private final Instant at;
+        private final String label;
+        private final String sql;
+        private final long nanos;
+        private final long rows;
+
+        SlowQuery(Instant at, String label, String sql, long nanos, long rows) {
+            this.at = at;
+            this.label = label;
+            this.sql = sql;
+            this.nanos = nanos;
+            this.rows = rows;
+        }
+
+        public Instant getAt() { return at; }
+        public String getLabel() { return label; }
+        public String getSql() { return sql; }
+        public long getNanos() { return nanos; }
+        public long getRows() { return rows; }
+
+        @Override
+        public String toString() {
+            return String.format("%s %.1f ms, %d rows, %s: %s", at, nanos / 1e6, rows, label,
+                    sql == null ? "?" : sql.replaceAll("\\s+", " ").trim());
+        }
+    }
+
+    // Statement wrapper: times execute* calls and wraps query results to count rows
+    private final class InstrumentedStatement implements InvocationHandler {
+        private final Statement statement;
+        private final String sql;
+        private final String label;
+        private InstrumentedResultSet open; // Result still being read, finished when the statement closes
+
+        InstrumentedStatement(Statement statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+            this.label = sql == null ? null : labelFor(sql);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "close":
+                    finishOpen();
+                    return call(method, args);
+                case "executeQuery":
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                case "execute":
+                case "executeBatch":
+                    break;
+                default:
+                    return call(method, args);
+            }
+
+            finishOpen();
+            boolean ownSql = args == null || args.length == 0 || !(args[0] instanceof String);
+            String text = ownSql ? sql : (String) args[0];
+            String queryLabel = ownSql && label != null ? label : labelFor(text);
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = call(method, args);
+            } catch (SQLException | RuntimeException e) {
+                record(queryLabel, text, System.nanoTime() - start, 0, true);
+                throw e;
+            }
+            if (result instanceof ResultSet) {
+                open = new InstrumentedResultSet((ResultSet) result, queryLabel, text, start);
+                return Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, open);
+            }
+            long rows = 0;
+            if (result instanceof Integer || result instanceof Long) {
+                rows = ((Number) result).longValue();
+            } else if (result instanceof int[]) {
+                for (int count : (int[]) result) rows += Math.max(count, 0);
+            } else if (result instanceof Boolean && !(Boolean) result) {
+                rows = Math.max(statement.getUpdateCount(), 0);
+            }
+            record(queryLabel, text, System.nanoTime() - start, rows, false);
+            return result;
+        }
+
+        private void finishOpen() {
+            if (open != null) {
+                open.finish();
+                open = null;
+            }
+        }
+
+        private Object call(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    // Counts rows as they are read; the query is recorded once the rows run out or it is closed
+    private final class InstrumentedResultSet implements InvocationHandler {
+        private final ResultSet resultSet;
+        private final String label;
+        private final String sql;
+        private final long start;
+        private long rows = 0;
+        private boolean finished = false;
+
+        InstrumentedResultSet(ResultSet resultSet, String label, String sql, long start) {
+            this.resultSet = resultSet;
+            this.label = label;
+            this.sql = sql;
+            this.start = start;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "close":
+                    finish();
+                    break;
+                case "next":
+                    try {
+                        boolean more = resultSet.next();
+                        if (more) rows++;
+                        else finish();
+                        return more;
+                    } catch (SQLException e) {
+                        if (!finished) {
+                            finished = true;
+                            record(label, sql, System.nanoTime() - start, rows, true);
+                        }
+                        throw e;
+                    }
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(resultSet, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        void finish() {
+            if (!finished) {
+                finished = true;
+                record(label, sql, System.nanoTime() - start, rows, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+// Scores per ID, kept in score order so the top N can be read without looking at every ID.
+// Each change costs O(log n): the entry is taken out of the ordering and put back with its new
+// score. (A plain binary heap can't do this cheaply, since deletes lower scores.) Not thread-safe;
+// StatisticsStore guards it.
+final class RankedCounter {
+
+    // Highest score first, ties by lowest ID
+    private static final Comparator<Ranked> ORDER =
+            Comparator.comparingLong((Ranked r) -> r.score).reversed().thenComparingInt(r -> r.id);
+
+    private final Map<Integer, Long> scores = new HashMap<>();
+    private final TreeSet<Ranked> ranking = new TreeSet<>(ORDER);
+
+    void add(int id, long delta) {
+        if (delta == 0) return;
+        Long old = scores.get(id);
+        if (old != null) ranking.remove(new Ranked(id, old));
+        long score = (old == null ? 0 : old) + delta;
+        if (score == 0) {
+            scores.remove(id);
+        } else {
+            scores.put(id, score);
+            ranking.add(new Ranked(id, score));
+        }
+    }
+
+    long get(int id) {
+        return scores.getOrDefault(id, 0L);
+    }
+
+    void clear() {
+        scores.clear();
+        ranking.clear();
+    }
+
+    List<Ranked> top(int n) {
+        List<Ranked> top = new ArrayList<>(Math.min(n, ranking.size()));
+        Iterator<Ranked> it = ranking.iterator();
+        while (top.size() < n && it.hasNext()) {
+            top.add(it.next());
+        }
+        return top;
+    }
+
+    // Top n of a one-off score map (e.g. a merged time window), via a size-n min-heap
+    static List<Ranked> topOf(Map<Integer, Long> scores, int n) {
+        if (n <= 0) return new ArrayList<>();
+        PriorityQueue<Ranked> heap = new PriorityQueue<>(n + 1, ORDER.reversed()); // Weakest on top
+        for (Map.Entry<Integer, Long> entry : scores.entrySet()) {
+            if (entry.getValue() <= 0) continue;
+            heap.add(new Ranked(entry.getKey(), entry.getValue()));
+            if (heap.size() > n) heap.poll();
+        }
+        List<Ranked> top = new ArrayList<>(heap);
+        top.sort(ORDER);
+        return top;
+    }
+
+    static final class Ranked {
+        final int id;
+        final long score;
+
+        Ranked(int id, long score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+}
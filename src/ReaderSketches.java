@@ -0,0 +1,662 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Approximate distinct-reader counts, served instead of the exact SQL when
+// -Dbooktracker.stats.approximate=true (menu options 6 and 8, /stats).
+// Each book has one HyperLogLog sketch of its readers per month (UTC), so a reader count for any
+// range of months is a merge of that range's sketches; the error is set with
+// -Dbooktracker.sketch.relativeError (default 0.02, i.e. precision 12 and about 1.6% standard error).
+// "Users reading more than one book" needs no sketch: each user keeps the only book seen so far,
+// or a marker once a second book turns up.
+// Like StatisticsStore, the DAOs keep it up to date as habits are added, and skip the changes a load
+// or rebuild already read (by CommitSequence number). Loads and rebuilds read into a new instance
+// without holding the sketches, so changes reported meanwhile are kept and applied after the read.
+// Changed sketches are written to the database (book_reader_sketch, user_book_marker,
+// reader_sketch_info) every flushEvery changes, on a background thread so the DAO reporting the
+// change isn't kept waiting with its connection, and on shutdown, so the next start loads them
+// instead of scanning ReadingHabit; if the stored habit count no longer matches the table,
+// everything is rebuilt with one scan.
+// A sketch can't forget a reader, so deleted habits stay counted until the next rebuild().
+public class ReaderSketches {
+
+    public static final boolean APPROXIMATE = Boolean.getBoolean("booktracker.stats.approximate");
+    private static final double RELATIVE_ERROR = Double.parseDouble(System.getProperty("booktracker.sketch.relativeError", "0.02"));
+    private static final int FLUSH_EVERY = Integer.getInteger("booktracker.sketch.flushEvery", 1_000);
+
+    static final int UNDATED = -1;         // Month of habits without a submissionMoment (all-time counts only)
+    private static final int MULTIPLE_BOOKS = 0; // In user_book_marker / bookOfUser; bookIDs start at 1
+
+    static final String CREATE_SKETCH_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS book_reader_sketch (
+                bookID INTEGER NOT NULL,
+                month INTEGER NOT NULL,
+                sketch BLOB NOT NULL,
+                PRIMARY KEY (bookID, month)
+            ) WITHOUT ROWID
+            """;
+    static final String CREATE_MARKER_TABLE_SQL =
+            "CREATE TABLE IF NOT EXISTS user_book_marker (userID INTEGER PRIMARY KEY, bookID INTEGER NOT NULL)";
+    static final String CREATE_INFO_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS reader_sketch_info (
+                id INTEGER PRIMARY KEY CHECK (id = 1),
+                precision INTEGER NOT NULL,
+                habitCount INTEGER NOT NULL,
+                removedHabits INTEGER NOT NULL,
+                builtAt INTEGER NOT NULL
+            )
+            """;
+
+    private static final ReaderSketches instance = new ReaderSketches(HyperLogLog.precisionFor(RELATIVE_ERROR));
+    private static final ExecutorService flusher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reader-sketch-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int precision;
+    private boolean loaded = false;
+    // bookID -> month (year * 12 + month - 1, or UNDATED) -> that month's readers
+    private Map<Integer, TreeMap<Integer, HyperLogLog>> sketches = new HashMap<>();
+    // userID -> the one book they've read, or MULTIPLE_BOOKS
+    private Map<Integer, Integer> bookOfUser = new HashMap<>();
+    private int usersWithMultipleBooks = 0;
+    private long habitCount = 0;    // Habits added minus removed; compared with the table on load
+    private long removedHabits = 0; // Removed since the last rebuild, still counted in the sketches
+    private long builtAt = 0;
+    private long scannedThrough = 0;          // Last commit read by the last load or rebuild
+    private List<Change> rebuildChanges = null; // Changes reported while a load or rebuild reads
+
+    // Changed since the last flush: (bookID, month) keys and userIDs
+    private final Set<Long> dirtySketches = new HashSet<>();
+    private final Set<Integer> dirtyUsers = new HashSet<>();
+    private int changesSinceFlush = 0;
+    private boolean flushQueued = false;
+    private final Object flushLock = new Object(); // Keeps flushes, loads and rebuilds in order
+
+    ReaderSketches(int precision) {
+        this.precision = precision;
+    }
+
+    public static ReaderSketches get() {
+        return instance;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public double getStandardError() {
+        return HyperLogLog.standardError(precision);
+    }
+
+    // --- Reads ---
+
+    public long estimateReaders(int bookId) throws SQLException {
+        return estimateReaders(bookId, null, null);
+    }
+
+    // Distinct readers of the book with habits in months [from, to); either may be null for no limit.
+    // Undated habits only count when both are null.
+    public long estimateReaders(int bookId, YearMonth from, YearMonth to) throws SQLException {
+        ensureLoaded();
+        synchronized (this) {
+            return estimate(bookId, from, to);
+        }
+    }
+
+    private long estimate(int bookId, YearMonth from, YearMonth to) {
+        TreeMap<Integer, HyperLogLog> months = sketches.get(bookId);
+        if (months == null) return 0;
+        Map<Integer, HyperLogLog> range = from == null && to == null ? months
+                : months.subMap(from == null ? UNDATED + 1 : monthCode(from), true,
+                        to == null ? Integer.MAX_VALUE : monthCode(to), false);
+        HyperLogLog union = new HyperLogLog(precision);
+        for (HyperLogLog month : range.values()) {
+            union.merge(month);
+        }
+        return union.estimate();
+    }
+
+    public int estimateUsersReadingMultipleBooks() throws SQLException {
+        ensureLoaded();
+        synchronized (this) {
+            return usersWithMultipleBooks;
+        }
+    }
+
+    // --- Incremental updates (no-ops until loaded; a stale habit count then triggers a rebuild) ---
+
+    // commit is the change's CommitSequence number
+    public void habitAdded(long commit, int userId, int bookId, Instant submissionMoment) {
+        int month = submissionMoment == null ? UNDATED : monthCode(submissionMoment);
+        if (record(new Change(commit, false, userId, bookId, month))) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    public void habitRemoved(long commit) {
+        if (record(new Change(commit, true, 0, 0, UNDATED))) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    // Forget everything; the next read reloads (used after bulk loads). A rebuild in progress is dropped.
+    public synchronized void invalidate() {
+        loaded = false;
+        rebuildChanges = null;
+    }
+
+    // Returns true when it's time to queue a flush
+    private synchronized boolean record(Change change) {
+        if (rebuildChanges != null) {
+            rebuildChanges.add(change);
+            return false;
+        }
+        if (!loaded || change.commit <= scannedThrough) return false;
+        apply(change);
+        if (++changesSinceFlush < FLUSH_EVERY || flushQueued) return false;
+        flushQueued = true;
+        return true;
+    }
+
+    private void apply(Change change) {
+        if (change.removed) {
+            habitCount--;
+            removedHabits++;
+        } else {
+            habitCount++;
+            add(change.userId, change.bookId, change.month);
+        }
+    }
+
+    private void add(int userId, int bookId, int month) {
+        if (bookId <= 0) return; // A legacy habit without a book
+        if (sketches.computeIfAbsent(bookId, id -> new TreeMap<>())
+                .computeIfAbsent(month, m -> new HyperLogLog(precision)).add(userId)) {
+            dirtySketches.add(sketchKey(bookId, month));
+        }
+        Integer book = bookOfUser.putIfAbsent(userId, bookId);
+        if (book == null) {
+            dirtyUsers.add(userId);
+        } else if (book != MULTIPLE_BOOKS && book != bookId) {
+            bookOfUser.put(userId, MULTIPLE_BOOKS);
+            usersWithMultipleBooks++;
+            dirtyUsers.add(userId);
+        }
+    }
+
+    // --- Persistence ---
+
+    // Writes the sketches and markers changed since the last flush
+    public void flush() throws SQLException {
+        synchronized (flushLock) {
+            Snapshot snapshot = takeSnapshot();
+            if (snapshot == null) return;
+            try (Connection conn = DatabaseConnector.connect()) {
+                write(conn, snapshot, false);
+            } catch (SQLException | RuntimeException e) {
+                restoreDirty(snapshot); // Written with the next flush
+                throw e;
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            System.err.println("WARNING: Could not save the reader sketches: " + e.getMessage());
+        }
+    }
+
+    // Recomputes every sketch from ReadingHabit and replaces the stored ones
+    public void rebuild() throws SQLException {
+        synchronized (flushLock) {
+            synchronized (this) {
+                loaded = false;
+            }
+            // Scanned into a new instance, so habits added meanwhile don't wait for the scan
+            ReaderSketches scanned = new ReaderSketches(precision);
+            scanned.builtAt = System.currentTimeMillis();
+            keepChanges();
+            try (Connection conn = DatabaseConnector.connect()) {
+                conn.setAutoCommit(false);
+                try {
+                    scanned.scannedThrough = CommitSequence.startScan(conn);
+                    scanned.scan(conn);
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } catch (SQLException | RuntimeException e) {
+                dropChanges();
+                throw e;
+            }
+
+            Snapshot snapshot;
+            synchronized (this) {
+                if (!install(scanned)) return; // invalidate() was called during the scan
+                dirtySketches.clear();
+                dirtyUsers.clear();
+                changesSinceFlush = 0;
+                snapshot = fullSnapshot();
+            }
+            try (Connection conn = DatabaseConnector.connect()) {
+                write(conn, snapshot, true);
+            }
+        }
+    }
+
+    // Adds every habit in conn's read transaction
+    private void scan(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT userID, bookID, submissionMoment FROM ReadingHabit");
+             ResultSet rs = pstmt.executeQuery()) {
+            ResultSet row = QueryMetrics.columns(rs); // Columns by position on this full scan
+            while (rs.next()) {
+                long moment = row.getLong(3);
+                int month = row.wasNull() ? UNDATED : monthCode(moment);
+                add(row.getInt(1), row.getInt(2), month);
+                habitCount++;
+            }
+        }
+    }
+
+    // Locks flushLock before this, like flush() and rebuild()
+    private void ensureLoaded() throws SQLException {
+        synchronized (this) {
+            if (loaded) return;
+        }
+        synchronized (flushLock) {
+            synchronized (this) {
+                if (loaded) return; // Loaded while this thread waited
+            }
+            if (!load()) rebuild();
+        }
+    }
+
+    // Loads the stored sketches; false if there are none, they're for another precision or out of
+    // date, or invalidate() was called meanwhile
+    private boolean load() throws SQLException {
+        // Read into a new instance, like rebuild(), so habits added meanwhile don't wait for it
+        ReaderSketches stored = new ReaderSketches(precision);
+        keepChanges();
+        boolean found;
+        try {
+            found = stored.read();
+        } catch (SQLException | RuntimeException e) {
+            dropChanges();
+            throw e;
+        }
+        if (!found) {
+            dropChanges();
+            return false;
+        }
+        synchronized (this) {
+            return install(stored); // Changes applied on top are flushed later
+        }
+    }
+
+    // Reads the stored sketches in one read transaction; false if they can't be used
+    private boolean read() throws SQLException {
+        try (Connection conn = DatabaseConnector.connect()) {
+            conn.setAutoCommit(false); // One read transaction, like rebuild()
+            try {
+                scannedThrough = CommitSequence.startScan(conn);
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT precision, habitCount, removedHabits, builtAt FROM reader_sketch_info WHERE id = 1");
+                     ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next() || rs.getInt("precision") != precision) return false;
+                    habitCount = rs.getLong("habitCount");
+                    removedHabits = rs.getLong("removedHabits");
+                    builtAt = rs.getLong("builtAt");
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM ReadingHabit");
+                     ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next() || rs.getLong(1) != habitCount) return false; // Changed outside the application
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT bookID, month, sketch FROM book_reader_sketch");
+                     ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        sketches.computeIfAbsent(rs.getInt("bookID"), id -> new TreeMap<>())
+                                .put(rs.getInt("month"), HyperLogLog.fromBytes(rs.getBytes("sketch")));
+                    }
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT userID, bookID FROM user_book_marker");
+                     ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int bookId = rs.getInt("bookID");
+                        bookOfUser.put(rs.getInt("userID"), bookId);
+                        if (bookId == MULTIPLE_BOOKS) usersWithMultipleBooks++;
+                    }
+                }
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        return true;
+    }
+
+    // Keeps the changes reported from now on for install()
+    private synchronized void keepChanges() {
+        rebuildChanges = new ArrayList<>();
+    }
+
+    private synchronized void dropChanges() {
+        rebuildChanges = null;
+    }
+
+    // Holding this: takes over what was read into the other instance and applies the changes it
+    // missed, leaving them to be flushed; false if invalidate() dropped them
+    private boolean install(ReaderSketches read) {
+        if (rebuildChanges == null) return false;
+        sketches = read.sketches;
+        bookOfUser = read.bookOfUser;
+        usersWithMultipleBooks = read.usersWithMultipleBooks;
+        habitCount = read.habitCount;
+        removedHabits = read.removedHabits;
+        builtAt = read.builtAt;
+        scannedThrough = read.scannedThrough;
+        dirtySketches.clear();
+        dirtyUsers.clear();
+        changesSinceFlush = 0;
+        for (Change change : rebuildChanges) {
+            if (change.commit > scannedThrough) { // Not in what was read
+                apply(change);
+                changesSinceFlush++;
+            }
+        }
+        rebuildChanges = null;
+        loaded = true;
+        return true;
+    }
+
+    // Serialized copies of what changed, or null if nothing did
+    private synchronized Snapshot takeSnapshot() {
+        flushQueued = false;
+        if (!loaded || changesSinceFlush == 0) return null;
+        Snapshot snapshot = new Snapshot(habitCount, removedHabits, builtAt);
+        for (long key : dirtySketches) {
+            int bookId = (int) (key >> 32);
+            int month = (int) key;
+            snapshot.sketches.add(new StoredSketch(bookId, month, sketches.get(bookId).get(month).toBytes()));
+        }
+        for (int userId : dirtyUsers) {
+            snapshot.markers.put(userId, bookOfUser.get(userId));
+        }
+        dirtySketches.clear();
+        dirtyUsers.clear();
+        changesSinceFlush = 0;
+        return snapshot;
+    }
+
+    private synchronized Snapshot fullSnapshot() {
+        Snapshot snapshot = new Snapshot(habitCount, removedHabits, builtAt);
+        sketches.forEach((bookId, months) -> months.forEach(
+                (month, sketch) -> snapshot.sketches.add(new StoredSketch(bookId, month, sketch.toBytes()))));
+        snapshot.markers.putAll(bookOfUser);
+        return snapshot;
+    }
+
+    private synchronized void restoreDirty(Snapshot snapshot) {
+        for (StoredSketch sketch : snapshot.sketches) {
+            dirtySketches.add(sketchKey(sketch.bookId, sketch.month));
+        }
+        dirtyUsers.addAll(snapshot.markers.keySet());
+        changesSinceFlush++;
+    }
+
+    private void write(Connection conn, Snapshot snapshot, boolean replaceAll) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            if (replaceAll) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("DELETE FROM book_reader_sketch");
+                    stmt.executeUpdate("DELETE FROM user_book_marker");
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT OR REPLACE INTO book_reader_sketch (bookID, month, sketch) VALUES (?, ?, ?)")) {
+                for (StoredSketch sketch : snapshot.sketches) {
+                    pstmt.setInt(1, sketch.bookId);
+                    pstmt.setInt(2, sketch.month);
+                    pstmt.setBytes(3, sketch.bytes);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("INSERT OR REPLACE INTO user_book_marker (userID, bookID) VALUES (?, ?)")) {
+                for (Map.Entry<Integer, Integer> marker : snapshot.markers.entrySet()) {
+                    pstmt.setInt(1, marker.getKey());
+                    pstmt.setInt(2, marker.getValue());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("""
+                    INSERT OR REPLACE INTO reader_sketch_info (id, precision, habitCount, removedHabits, builtAt)
+                    VALUES (1, ?, ?, ?, ?)
+                    """)) {
+                pstmt.setInt(1, precision);
+                pstmt.setLong(2, snapshot.habitCount);
+                pstmt.setLong(3, snapshot.removedHabits);
+                pstmt.setLong(4, snapshot.builtAt);
+                pstmt.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    // --- Side-by-side check ---
+
+    // Compares the estimates with exact COUNT(DISTINCT) queries for the n books with the most readers
+    // (by estimate), over months [from, to) (null for no limit), and for users reading more than one book
+    public ComparisonReport compare(ReadingHabitDao readingHabitDao, int n, YearMonth from, YearMonth to) throws SQLException {
+        List<Integer> bookIds;
+        int sketchCount = 0;
+        long memoryBytes = 0;
+        long storedBytes = 0;
+        ensureLoaded();
+        synchronized (this) {
+            Map<Integer, Long> allTime = new HashMap<>();
+            for (Map.Entry<Integer, TreeMap<Integer, HyperLogLog>> book : sketches.entrySet()) {
+                HyperLogLog union = new HyperLogLog(precision);
+                for (HyperLogLog sketch : book.getValue().values()) {
+                    union.merge(sketch);
+                    sketchCount++;
+                    memoryBytes += sketch.memoryBytes();
+                    storedBytes += sketch.toBytes().length;
+                }
+                allTime.put(book.getKey(), union.estimate());
+            }
+            bookIds = new ArrayList<>();
+            for (RankedCounter.Ranked ranked : RankedCounter.topOf(allTime, n)) {
+                bookIds.add(ranked.id);
+            }
+        }
+
+        List<ComparisonRow> rows = new ArrayList<>(bookIds.size() + 1);
+        Instant fromMoment = from == null ? null : from.atDay(1).atStartOfDay(SubmissionMoments.ZONE).toInstant();
+        Instant toMoment = to == null ? null : to.atDay(1).atStartOfDay(SubmissionMoments.ZONE).toInstant();
+        long exactNanos = 0;
+        long approximateNanos = 0;
+        for (int bookId : bookIds) {
+            long start = System.nanoTime();
+            long exact = readingHabitDao.queryUsersForBookId(bookId, fromMoment, toMoment);
+            long middle = System.nanoTime();
+            long estimate = estimateReaders(bookId, from, to);
+            approximateNanos += System.nanoTime() - middle;
+            exactNanos += middle - start;
+            rows.add(new ComparisonRow(BookTitleCache.get().getTitle(bookId), exact, estimate));
+        }
+        long start = System.nanoTime();
+        long exactMulti = readingHabitDao.queryUsersReadingMultipleBooks();
+        long middle = System.nanoTime();
+        long estimateMulti = estimateUsersReadingMultipleBooks();
+        approximateNanos += System.nanoTime() - middle;
+        exactNanos += middle - start;
+        rows.add(new ComparisonRow("Users reading >1 book (all time)", exactMulti, estimateMulti));
+
+        long removed;
+        synchronized (this) {
+            removed = removedHabits;
+        }
+        return new ComparisonReport(rows, precision, sketchCount, memoryBytes, storedBytes, removed, exactNanos, approximateNanos);
+    }
+
+    // --- Helpers ---
+
+    static int monthCode(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    static int monthCode(Instant moment) {
+        return monthCode(moment.toEpochMilli());
+    }
+
+    // From epoch millis (SubmissionMoments.ZONE is UTC), without an Instant and ZonedDateTime per row
+    static int monthCode(long epochMillis) {
+        LocalDate day = LocalDate.ofEpochDay(Math.floorDiv(epochMillis, 86_400_000L));
+        return day.getYear() * 12 + day.getMonthValue() - 1;
+    }
+
+    private static long sketchKey(int bookId, int month) {
+        return (long) bookId << 32 | (month & 0xFFFFFFFFL);
+    }
+
+    private static final class StoredSketch {
+        final int bookId;
+        final int month;
+        final byte[] bytes;
+
+        StoredSketch(int bookId, int month, byte[] bytes) {
+            this.bookId = bookId;
+            this.month = month;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class Snapshot {
+        final List<StoredSketch> sketches = new ArrayList<>();
+        final Map<Integer, Integer> markers = new HashMap<>();
+        final long habitCount;
+        final long removedHabits;
+        final long builtAt;
+
+        Snapshot(long habitCount, long removedHabits, long builtAt) {
+            this.habitCount = habitCount;
+            this.removedHabits = removedHabits;
+            this.builtAt = builtAt;
+        }
+    }
+
+    public static class ComparisonRow {
+        private final String label;
+        private final long exact;
+        private final long estimate;
+
+        ComparisonRow(String label, long exact, long estimate) {
+            this.label = label;
+            this.exact = exact;
+            this.estimate = estimate;
+        }
+
+        public String getLabel() { return label; }
+        public long getExact() { return exact; }
+        public long getEstimate() { return estimate; }
+
+        // Relative error of the estimate, 0 when both are 0
+        public double getError() {
+            return exact == 0 ? (estimate == 0 ? 0 : 1) : (double) (estimate - exact) / exact;
+        }
+
+        @Override
+        public String toString() {
+            String label = this.label.length() > 40 ? this.label.substring(0, 37) + "..." : this.label;
+            return String.format("%-40s %10d %10d %+8.2f%%", label, exact, estimate, getError() * 100);
+        }
+    }
+
+    public static class ComparisonReport {
+        private final List<ComparisonRow> rows;
+        private final int precision;
+        private final int sketchCount;
+        private final long memoryBytes;
+        private final long storedBytes;
+        private final long removedHabits;
+        private final long exactNanos;
+        private final long approximateNanos;
+
+        ComparisonReport(List<ComparisonRow> rows, int precision, int sketchCount, long memoryBytes, long storedBytes,
+                         long removedHabits, long exactNanos, long approximateNanos) {
+            this.rows = rows;
+            this.precision = precision;
+            this.sketchCount = sketchCount;
+            this.memoryBytes = memoryBytes;
+            this.storedBytes = storedBytes;
+            this.removedHabits = removedHabits;
+            this.exactNanos = exactNanos;
+            this.approximateNanos = approximateNanos;
+        }
+
+        public List<ComparisonRow> getRows() { return rows; }
+
+        public double getMaxError() {
+            double max = 0;
+            for (ComparisonRow row : rows) {
+                max = Math.max(max, Math.abs(row.getError()));
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(String.format("%-40s %10s %10s %9s%n", "Distinct readers", "Exact", "Estimate", "Error"));
+            for (ComparisonRow row : rows) {
+                text.append(row).append('\n');
+            }
+            text.append(String.format("Max error %.2f%% (precision %d, standard error %.2f%%); exact SQL %.1f ms, sketches %.1f ms%n",
+                    getMaxError() * 100, precision, HyperLogLog.standardError(precision) * 100, exactNanos / 1e6, approximateNanos / 1e6));
+            text.append(String.format("%,d sketches, %,d KB in memory, %,d KB stored", sketchCount, memoryBytes / 1024, storedBytes / 1024));
+            if (removedHabits > 0) {
+                text.append(String.format("; %,d deleted habits still counted until the next rebuild", removedHabits));
+            }
+            return text.toString();
+        }
+    }
+
+    // A habit added or removed, as reported to habitAdded/habitRemoved
+    private static final class Change {
+        final long commit;
+        final boolean removed;
+        final int userId;
+        final int bookId;
+        final int month;
+
+        Change(long commit, boolean removed, int userId, int bookId, int month) {
+            this.commit = commit;
+            this.removed = removed;
+            this.userId = userId;
+            this.bookId = bookId;
+            this.month = month;
+        }
+    }
+}
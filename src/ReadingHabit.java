@@ -1,20 +1,31 @@
+import java.time.Instant;
+
 // Represents a ReadingHabit entity
 // Includes bookTitle for convenience after joining
+// Kept compact for large reads: the moment is held as epoch milliseconds, as stored, and the
+// title is the shared BookTitleCache instance (40 bytes per habit instead of 64 with an Instant).
 public class ReadingHabit {
-    private int habitID;
-    private int userID; // Foreign key to User
-    private int bookID; // Foreign key to Book
-    private int pagesRead;
-    private String submissionMoment;
-    private String bookTitle; // Added to hold the title after joining
+    static final long NO_MOMENT = Long.MIN_VALUE; // submissionMillis of a habit without a timestamp
+
+    private final int habitID;
+    private final int userID; // Foreign key to User
+    private final int bookID; // Foreign key to Book
+    private final int pagesRead;
+    private final long submissionMillis; // Epoch milliseconds; NO_MOMENT if unknown
+    private final String bookTitle; // Added to hold the title after joining
 
     // Constructor - including bookTitle fetched from join
-    public ReadingHabit(int habitID, int userID, int bookID, int pagesRead, String submissionMoment, String bookTitle) {
+    public ReadingHabit(int habitID, int userID, int bookID, int pagesRead, Instant submissionMoment, String bookTitle) {
+        this(habitID, userID, bookID, pagesRead, submissionMoment == null ? NO_MOMENT : submissionMoment.toEpochMilli(), bookTitle);
+    }
+
+    // Straight from a row's epoch milliseconds (NO_MOMENT for NULL)
+    ReadingHabit(int habitID, int userID, int bookID, int pagesRead, long submissionMillis, String bookTitle) {
         this.habitID = habitID;
         this.userID = userID;
         this.bookID = bookID;
         this.pagesRead = pagesRead;
-        this.submissionMoment = submissionMoment;
+        this.submissionMillis = submissionMillis;
         this.bookTitle = bookTitle; // Store the joined title
     }
 
@@ -35,8 +46,18 @@ public class ReadingHabit {
         return pagesRead;
     }
 
-    public String getSubmissionMoment() {
-        return submissionMoment;
+    // null if unknown
+    public Instant getSubmissionMoment() {
+        return submissionMillis == NO_MOMENT ? null : Instant.ofEpochMilli(submissionMillis);
+    }
+
+    public boolean hasSubmissionMoment() {
+        return submissionMillis != NO_MOMENT;
+    }
+
+    // Epoch milliseconds, without creating an Instant; only meaningful if hasSubmissionMoment()
+    public long getSubmissionMillis() {
+        return submissionMillis;
     }
 
     public String getBookTitle() {
@@ -46,7 +67,7 @@ public class ReadingHabit {
     @Override
     public String toString() {
         return "ReadingHabit [habitID=" + habitID + ", userID=" + userID + ", bookID=" + bookID +
-               ", pagesRead=" + pagesRead + ", submissionMoment=" + submissionMoment +
+               ", pagesRead=" + pagesRead + ", submissionMoment=" + getSubmissionMoment() +
                ", bookTitle=" + bookTitle + "]";
     }
-}
\ No newline at end of file
+}
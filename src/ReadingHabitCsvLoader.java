@@ -0,0 +1,235 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Bulk loader for reading_habits.csv style files (habitID,userID,pagesRead,book,submissionMoment).
+// Streams the file record by record, resolves titles through an in-memory title -> bookID map
+// (new titles are inserted into Books on the fly) and writes habits with JDBC batches,
+// committing every commitEvery rows together with their rollups (HabitRollups). Memory use is bounded
+// by the number of distinct titles and the (user, day) and (book, month) pairs in one commit.
+//
+// Usage: java -cp "out:lib/sqlite-jdbc-....jar" ReadingHabitCsvLoader [csvFile] [batchSize] [commitEvery]
+public class ReadingHabitCsvLoader {
+
+    public static final int DEFAULT_BATCH_SIZE = 1_000;
+    public static final int DEFAULT_COMMIT_EVERY = 50_000;
+
+    private static final int MAX_REPORTED_REJECTS = 10;
+
+    private final BookDao bookDao = new BookDao();
+    private final int batchSize;
+    private final int commitEvery;
+
+    public ReadingHabitCsvLoader() {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_COMMIT_EVERY);
+    }
+
+    public ReadingHabitCsvLoader(int batchSize, int commitEvery) {
+        if (batchSize < 1 || commitEvery < batchSize) {
+            throw new IllegalArgumentException("Need batchSize >= 1 and commitEvery >= batchSize");
+        }
+        this.batchSize = batchSize;
+        this.commitEvery = commitEvery;
+    }
+
+    public static void main(String[] args) {
+        String file = args.length > 0 ? args[0] : "data/reading_habits.csv";
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BATCH_SIZE;
+        int commitEvery = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_COMMIT_EVERY;
+        SchemaMigrations.migrateIfNeeded(); // Loader writes epoch-millis moments
+        try {
+            LoadReport report = new ReadingHabitCsvLoader(batchSize, commitEvery).load(Paths.get(file));
+            System.out.println("SUCCESS: " + report);
+        } catch (IOException | SQLException e) {
+            System.err.println("ERROR loading '" + file + "': " + e.getMessage());
+            System.exit(1);
+        } finally {
+            DatabaseConnector.shutdown();
+        }
+    }
+
+    public LoadReport load(Path csvFile) throws IOException, SQLException {
+        if (DatabaseConnector.getShards() != null) {
+            throw new SQLException("Habits are sharded (booktracker.shards); load into an unsharded database, then run ReshardTool");
+        }
+        long start = System.nanoTime();
+        long read = 0;
+        long inserted = 0;
+        long rejected = 0;
+        int pendingInBatch = 0;
+        int pendingInTransaction = 0;
+
+        try (BufferedReader fileReader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8);
+             CsvReader csv = new CsvReader(fileReader);
+             Connection conn = DatabaseConnector.connect()) {
+
+            ColumnLayout columns = ColumnLayout.fromHeader(csv.readRecord());
+            Map<String, Integer> bookIds = loadBookIds(conn);
+
+            List<ReadingHabit> batchRows = new ArrayList<>(batchSize); // The current batch, to roll up what it inserts
+            HabitRollups.Delta rollups = new HabitRollups.Delta();         // Written with each commit
+
+            conn.setAutoCommit(false);
+            try (PreparedStatement insertPstmt = conn.prepareStatement(ReadingHabitDao.INSERT_HABIT_SQL)) {
+                String[] record;
+                while ((record = csv.readRecord()) != null) {
+                    if (record.length == 1 && record[0].isEmpty()) continue; // Blank line
+                    read++;
+
+                    int habitId;
+                    int userId;
+                    int pagesRead;
+                    String title;
+                    Instant submissionMoment;
+                    try {
+                        habitId = Integer.parseInt(record[columns.habitID].trim());
+                        userId = Integer.parseInt(record[columns.userID].trim());
+                        pagesRead = Integer.parseInt(record[columns.pagesRead].trim());
+                        title = record[columns.book];
+                        if (title.isEmpty()) throw new IllegalArgumentException("empty book title");
+                        submissionMoment = SubmissionMoments.parse(record[columns.submissionMoment]);
+                    } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                        if (++rejected <= MAX_REPORTED_REJECTS) {
+                            System.err.println("WARNING: Skipping malformed record before line " + csv.getLineNumber() + ": " + e.getMessage());
+                        }
+                        continue;
+                    }
+
+                    Integer bookId = bookIds.get(title);
+                    if (bookId == null) {
+                        bookId = bookDao.insertBook(conn, title);
+                        bookIds.put(title, bookId);
+                    }
+
+                    ReadingHabitDao.addToBatch(insertPstmt, habitId, userId, bookId, pagesRead, submissionMoment);
+                    batchRows.add(new ReadingHabit(habitId, userId, bookId, pagesRead, submissionMoment, null));
+                    pendingInBatch++;
+                    pendingInTransaction++;
+
+                    if (pendingInBatch == batchSize) {
+                        inserted += countInserted(insertPstmt.executeBatch(), batchRows, rollups);
+                        pendingInBatch = 0;
+                    }
+                    if (pendingInTransaction >= commitEvery) {
+                        rollups.applyTo(conn);
+                        conn.commit();
+                        pendingInTransaction = 0;
+                        printProgress(read, start);
+                    }
+                }
+                if (pendingInBatch > 0) {
+                    inserted += countInserted(insertPstmt.executeBatch(), batchRows, rollups);
+                }
+                rollups.applyTo(conn);
+                conn.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback(); // Only the current chunk is lost; earlier chunks are committed
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+                // Cheaper to reload the running statistics once than to update them per row
+                StatisticsStore.get().invalidate();
+                ReaderSketches.get().invalidate();
+                HabitListCache.get().invalidateAll();
+            }
+        }
+        return new LoadReport(read, inserted, rejected, System.nanoTime() - start);
+    }
+
+    private Map<String, Integer> loadBookIds(Connection conn) throws SQLException {
+        Map<String, Integer> bookIds = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT bookID, title FROM Books");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                bookIds.put(rs.getString("title"), rs.getInt("bookID"));
+            }
+        }
+        return bookIds;
+    }
+
+    // Counts the rows a batch inserted and adds them to the rollups; batchRows is cleared for the next batch
+    private static long countInserted(int[] batchResults, List<ReadingHabit> batchRows, HabitRollups.Delta rollups) {
+        long count = 0;
+        for (int i = 0; i < batchResults.length; i++) {
+            if (batchResults[i] <= 0) continue; // 0 = ignored duplicate
+            count += batchResults[i];
+            ReadingHabit row = batchRows.get(i);
+            rollups.added(row.getUserID(), row.getBookID(), row.getPagesRead(), row.getSubmissionMoment());
+        }
+        batchRows.clear();
+        return count;
+    }
+
+    private static void printProgress(long read, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("INFO: %,d rows read (%,.0f rows/sec)%n", read, read / Math.max(seconds, 1e-9));
+    }
+
+    // Positions of the expected columns, taken from the header row
+    private static class ColumnLayout {
+        int habitID = -1;
+        int userID = -1;
+        int pagesRead = -1;
+        int book = -1;
+        int submissionMoment = -1;
+
+        static ColumnLayout fromHeader(String[] header) throws IOException {
+            if (header == null) throw new IOException("CSV file is empty");
+            ColumnLayout layout = new ColumnLayout();
+            for (int i = 0; i < header.length; i++) {
+                String name = header[i].trim().replace("\uFEFF", ""); // Strip a UTF-8 BOM if present
+                if (name.equalsIgnoreCase("habitID")) layout.habitID = i;
+                else if (name.equalsIgnoreCase("userID")) layout.userID = i;
+                else if (name.equalsIgnoreCase("pagesRead")) layout.pagesRead = i;
+                else if (name.equalsIgnoreCase("book")) layout.book = i;
+                else if (name.equalsIgnoreCase("submissionMoment")) layout.submissionMoment = i;
+            }
+            if (layout.habitID < 0 || layout.userID < 0 || layout.pagesRead < 0 || layout.book < 0 || layout.submissionMoment < 0) {
+                throw new IOException("CSV header must contain habitID, userID, pagesRead, book and submissionMoment columns");
+            }
+            return layout;
+        }
+    }
+
+    public static class LoadReport {
+        private final long rowsRead;
+        private final long rowsInserted;
+        private final long rowsRejected;
+        private final long elapsedNanos;
+
+        LoadReport(long rowsRead, long rowsInserted, long rowsRejected, long elapsedNanos) {
+            this.rowsRead = rowsRead;
+            this.rowsInserted = rowsInserted;
+            this.rowsRejected = rowsRejected;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRowsRead() { return rowsRead; }
+        public long getRowsInserted() { return rowsInserted; }
+        public long getRowsRejected() { return rowsRejected; }
+        public long getElapsedNanos() { return elapsedNanos; }
+
+        public double getRowsPerSecond() {
+            return rowsRead / Math.max(elapsedNanos / 1e9, 1e-9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Loaded %,d of %,d rows (%,d rejected, %,d skipped as duplicates) in %.2f s, %,.0f rows/sec",
+                    rowsInserted, rowsRead, rowsRejected, rowsRead - rowsRejected - rowsInserted,
+                    elapsedNanos / 1e9, getRowsPerSecond());
+        }
+    }
+}
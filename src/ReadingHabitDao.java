@@ -1,114 +1,995 @@
 import java.sql.*;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.concurrent.CompletableFuture;
 
 // DAO for ReadingHabit entity operations
 public class ReadingHabitDao {
 
+    // Batch insert used by the bulk paths (OR IGNORE skips habitIDs that are already present once habitID is a key)
+    static final String INSERT_HABIT_SQL = """
+            INSERT OR IGNORE INTO ReadingHabit (habitID, userID, bookID, pagesRead, submissionMoment)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+
+    private final BookDao bookDao = new BookDao();
+
+    // Newest first (the same order as the pages below). Served from HabitListCache when the user's
+    // list is cached; the caller gets its own copy either way.
     public List<ReadingHabit> getHabitsByUserId(int userId) throws SQLException {
+        HabitListCache cache = HabitListCache.get();
+        List<ReadingHabit> cached = cache.getIfPresent(userId);
+        if (cached != null) {
+            return new ArrayList<>(cached);
+        }
+        long stamp = cache.loadStamp(userId);
+
         List<ReadingHabit> habits = new ArrayList<>();
-        // SQL query joining ReadingHabit with Books to get the title
+        // Titles come from BookTitleCache, so no JOIN with Books is needed
          String sql = """
-                      SELECT rh.habitID, rh.userID, rh.bookID, b.title, rh.pagesRead, rh.submissionMoment
-                      FROM ReadingHabit rh
-                      JOIN Books b ON rh.bookID = b.bookID
-                      WHERE rh.userID = ?
-                      ORDER BY rh.submissionMoment DESC
+                      SELECT habitID, userID, bookID, pagesRead, submissionMoment
+                      FROM ReadingHabit
+                      WHERE userID = ?
+                      ORDER BY submissionMoment DESC, habitID DESC
                       """;
 
-        try (Connection conn = DatabaseConnector.connect();
+        try (Connection conn = DatabaseConnector.connectForUser(userId);
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setInt(1, userId);
             try (ResultSet rs = pstmt.executeQuery()) {
+                ResultSet row = QueryMetrics.columns(rs);
                 while (rs.next()) {
-                    // Create ReadingHabit object using data (including joined title)
-                    ReadingHabit habit = new ReadingHabit(
-                        rs.getInt("habitID"),
-                        rs.getInt("userID"),
-                        rs.getInt("bookID"),
-                        rs.getInt("pagesRead"),
-                        rs.getString("submissionMoment"),
-                        rs.getString("title") // Title from Books table
-                    );
-                    habits.add(habit);
+                    habits.add(mapHabit(conn, row));
                 }
             }
         }
+        cache.put(userId, habits, stamp);
         return habits;
     }
 
+    // --- Keyset pagination (newest first, ordered by submissionMoment DESC, habitID DESC) ---
+    // All three forms seek through the (userID, submissionMoment) index; habitID is the rowid,
+    // which the index carries as its last column, so no sort step is needed.
+
+    private static final String PAGE_SELECT = """
+            SELECT habitID, userID, bookID, pagesRead, submissionMoment
+            FROM ReadingHabit
+            """;
+    private static final String FIRST_PAGE_SQL = PAGE_SELECT + """
+            WHERE userID = ?
+            ORDER BY submissionMoment DESC, habitID DESC
+            LIMIT ?
+            """;
+    private static final String NEXT_PAGE_SQL = PAGE_SELECT + """
+            WHERE userID = ? AND (submissionMoment, habitID) < (?, ?)
+            ORDER BY submissionMoment DESC, habitID DESC
+            LIMIT ?
+            """;
+    // Habits without a timestamp sort after all others
+    private static final String UNTIMED_PAGE_SQL = PAGE_SELECT + """
+            WHERE userID = ? AND submissionMoment IS NULL AND habitID < ?
+            ORDER BY habitID DESC
+            LIMIT ?
+            """;
+
+    // Returns up to pageSize habits following the given key (null = start from the newest).
+    // Sliced from HabitListCache when the user's list is cached; a first page that turns out to hold
+    // all of the user's habits is cached as their list (larger lists are left to getHabitsByUserId).
+    public HabitPage getHabitsPageByUserId(int userId, int pageSize, HabitPage.Key after) throws SQLException {
+        if (pageSize < 1) throw new IllegalArgumentException("Page size must be at least 1");
+        HabitListCache cache = HabitListCache.get();
+        List<ReadingHabit> cached = cache.getIfPresent(userId);
+        if (cached != null) {
+            return slicePage(cached, pageSize, after);
+        }
+        long stamp = cache.loadStamp(userId);
+        List<ReadingHabit> habits = new ArrayList<>(pageSize + 1);
+        int limit = pageSize + 1; // One extra row tells us whether another page exists
+
+        try (Connection conn = DatabaseConnector.connectForUser(userId)) {
+            if (after == null) {
+                fetchPage(conn, FIRST_PAGE_SQL, habits, userId, limit);
+            } else if (after.getSubmissionMoment() != null) {
+                fetchPage(conn, NEXT_PAGE_SQL, habits, userId, after.getSubmissionMoment().toEpochMilli(), after.getHabitID(), limit);
+                if (habits.size() < limit) {
+                    fetchPage(conn, UNTIMED_PAGE_SQL, habits, userId, Integer.MAX_VALUE, limit - habits.size());
+                }
+            } else {
+                fetchPage(conn, UNTIMED_PAGE_SQL, habits, userId, after.getHabitID(), limit);
+            }
+        }
+
+        HabitPage.Key nextKey = null;
+        if (habits.size() > pageSize) {
+            habits.remove(pageSize);
+            nextKey = HabitPage.Key.after(habits.get(pageSize - 1));
+        } else if (after == null) {
+            cache.put(userId, habits, stamp);
+        }
+        return new HabitPage(habits, nextKey);
+    }
+
+    // The page after `after` from a complete list in page order, found by binary search
+    private static HabitPage slicePage(List<ReadingHabit> all, int pageSize, HabitPage.Key after) {
+        int from = 0;
+        if (after != null) {
+            int high = all.size();
+            while (from < high) {
+                int mid = (from + high) >>> 1;
+                if (isAfter(all.get(mid), after)) high = mid;
+                else from = mid + 1;
+            }
+        }
+        int to = Math.min(all.size(), from + pageSize);
+        List<ReadingHabit> habits = new ArrayList<>(all.subList(from, to));
+        return new HabitPage(habits, to < all.size() ? HabitPage.Key.after(all.get(to - 1)) : null);
+    }
+
+    // Whether habit sorts after key in (submissionMoment DESC, habitID DESC) order, untimed habits last
+    private static boolean isAfter(ReadingHabit habit, HabitPage.Key key) {
+        if (key.getSubmissionMoment() == null) {
+            return !habit.hasSubmissionMoment() && habit.getHabitID() < key.getHabitID();
+        }
+        if (!habit.hasSubmissionMoment()) return true;
+        int compared = Long.compare(habit.getSubmissionMillis(), key.getSubmissionMoment().toEpochMilli());
+        return compared < 0 || (compared == 0 && habit.getHabitID() < key.getHabitID());
+    }
+
+    // Visits all of a user's habits, newest first, holding only one page in memory
+    public void forEachHabitByUserId(int userId, int pageSize, Consumer<ReadingHabit> action) throws SQLException {
+        HabitPage.Key key = null;
+        do {
+            HabitPage page = getHabitsPageByUserId(userId, pageSize, key);
+            page.getHabits().forEach(action);
+            key = page.getNextKey();
+        } while (key != null);
+    }
+
+    // Lazy stream over a user's habits; pages are fetched as the stream is consumed.
+    // No connection is held between pages. Database errors surface as UncheckedSQLException.
+    public Stream<ReadingHabit> streamHabitsByUserId(int userId, int pageSize) {
+        Iterator<ReadingHabit> pages = new Iterator<>() {
+            private Iterator<ReadingHabit> current = Collections.emptyIterator();
+            private HabitPage.Key nextKey = null;
+            private boolean lastPageLoaded = false;
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && !lastPageLoaded) {
+                    try {
+                        HabitPage page = getHabitsPageByUserId(userId, pageSize, nextKey);
+                        current = page.getHabits().iterator();
+                        nextKey = page.getNextKey();
+                        lastPageLoaded = nextKey == null;
+                    } catch (SQLException e) {
+                        throw new UncheckedSQLException(e);
+                    }
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public ReadingHabit next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return current.next();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private static void fetchPage(Connection conn, String sql, List<ReadingHabit> into, long... params) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                pstmt.setLong(i + 1, params[i]);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                ResultSet row = QueryMetrics.columns(rs);
+                while (rs.next()) {
+                    into.add(mapHabit(conn, row));
+                }
+            }
+        }
+    }
+
+    // Habits submitted in [from, to) for one user, newest first (the same order as getHabitsByUserId).
+    // Served by the (userID, submissionMoment) index, which ends in habitID, so the tiebreak needs no sort.
+    public List<ReadingHabit> getHabitsByUserIdBetween(int userId, Instant from, Instant to) throws SQLException {
+        List<ReadingHabit> habits = new ArrayList<>();
+        String sql = """
+                     SELECT habitID, userID, bookID, pagesRead, submissionMoment
+                     FROM ReadingHabit
+                     WHERE userID = ? AND submissionMoment >= ? AND submissionMoment < ?
+                     ORDER BY submissionMoment DESC, habitID DESC
+                     """;
+
+        try (Connection conn = DatabaseConnector.connectForUser(userId);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, userId);
+            pstmt.setLong(2, from.toEpochMilli());
+            pstmt.setLong(3, to.toEpochMilli());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                ResultSet row = QueryMetrics.columns(rs);
+                while (rs.next()) {
+                    habits.add(mapHabit(conn, row));
+                }
+            }
+        }
+        return habits;
+    }
+
+    // Pages read by one user in [from, to), also answered from the index
+    public long getPagesReadByUserIdBetween(int userId, Instant from, Instant to) throws SQLException {
+        String sql = """
+                     SELECT IFNULL(SUM(pagesRead), 0) AS total_pages
+                     FROM ReadingHabit
+                     WHERE userID = ? AND submissionMoment >= ? AND submissionMoment < ?
+                     """;
+        try (Connection conn = DatabaseConnector.connectForUser(userId);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, userId);
+            pstmt.setLong(2, from.toEpochMilli());
+            pstmt.setLong(3, to.toEpochMilli());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong("total_pages") : 0;
+            }
+        }
+    }
+
+    // --- Range reports from the rollups (see HabitRollups) ---
+    // Each reads one rollup row per active day (user) or month (book) in the range, however many habits
+    // those stand for. Every period overlapping the range is listed, oldest first, with zeros where
+    // nothing was read; periods at the ends only count the part inside the range.
+
+    // A user's pages and habits per day, week, month or year, for days [from, to) (UTC)
+    public List<ActivityTotal> getUserActivity(int userId, ActivityTotal.Period period, LocalDate from, LocalDate to) throws SQLException {
+        String sql = "SELECT day, pages, habits FROM user_day_rollup WHERE userID = ? AND day >= ? AND day < ?";
+        TreeMap<LocalDate, long[]> totals = emptyPeriods(period, from, to);
+        try (Connection conn = DatabaseConnector.connectForUser(userId)) {
+            for (long[] row : queryRollup(conn, sql, userId, from.toEpochDay(), to.toEpochDay())) {
+                addToPeriod(totals, period, LocalDate.ofEpochDay(row[0]), row);
+            }
+        }
+        return toActivity(period, totals);
+    }
+
+    // A book's pages and habits per month or year, for months [from, to). Books are rolled up by
+    // month, so DAY and WEEK are rejected.
+    public List<ActivityTotal> getBookActivity(String bookTitle, ActivityTotal.Period period, YearMonth from, YearMonth to) throws SQLException {
+        if (period != ActivityTotal.Period.MONTH && period != ActivityTotal.Period.YEAR) {
+            throw new IllegalArgumentException("Book activity is rolled up by month; use MONTH or YEAR, not " + period);
+        }
+        String sql = "SELECT month, pages, habits FROM book_month_rollup WHERE bookID = ? AND month >= ? AND month < ?";
+        TreeMap<LocalDate, long[]> totals = emptyPeriods(period, from.atDay(1), to.atDay(1));
+        Integer bookId = BookTitleCache.get().findBookId(bookTitle);
+        if (bookId != null) {
+            long[] params = {bookId, ReaderSketches.monthCode(from), ReaderSketches.monthCode(to)};
+            ShardedStorage shards = DatabaseConnector.getShards();
+            List<List<long[]>> parts;
+            if (shards == null) {
+                try (Connection conn = DatabaseConnector.connect()) {
+                    parts = List.of(queryRollup(conn, sql, params));
+                }
+            } else {
+                parts = shards.scatter(conn -> queryRollup(conn, sql, params)); // A book's months add up over the shards
+            }
+            for (List<long[]> rows : parts) {
+                for (long[] row : rows) {
+                    addToPeriod(totals, period, LocalDate.of((int) (row[0] / 12), (int) (row[0] % 12) + 1, 1), row);
+                }
+            }
+        }
+        return toActivity(period, totals);
+    }
+
+    // Rollup rows as {day or month, pages, habits}
+    private static List<long[]> queryRollup(Connection conn, String sql, long... params) throws SQLException {
+        List<long[]> rows = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                pstmt.setLong(i + 1, params[i]);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new long[] {rs.getLong(1), rs.getLong(2), rs.getLong(3)});
+                }
+            }
+        }
+        return rows;
+    }
+
+    // Zero totals for every period overlapping [from, to), keyed by the period's first day
+    private static TreeMap<LocalDate, long[]> emptyPeriods(ActivityTotal.Period period, LocalDate from, LocalDate to) {
+        TreeMap<LocalDate, long[]> totals = new TreeMap<>();
+        for (LocalDate start = period.start(from); start.isBefore(to); start = period.next(start)) {
+            totals.put(start, new long[2]);
+        }
+        return totals;
+    }
+
+    private static void addToPeriod(TreeMap<LocalDate, long[]> totals, ActivityTotal.Period period, LocalDate date, long[] row) {
+        long[] total = totals.get(period.start(date));
+        total[0] += row[1];
+        total[1] += row[2];
+    }
+
+    private static List<ActivityTotal> toActivity(ActivityTotal.Period period, TreeMap<LocalDate, long[]> totals) {
+        List<ActivityTotal> activity = new ArrayList<>(totals.size());
+        for (Map.Entry<LocalDate, long[]> total : totals.entrySet()) {
+            activity.add(new ActivityTotal(period, total.getKey(), total.getValue()[0], total.getValue()[1]));
+        }
+        return activity;
+    }
+
+    // --- Bulk fetch for many users ---
+    // One query per chunk of up to MAX_IN_LIST users instead of one per user. Chunks are walked in
+    // descending userID order, which the (userID, submissionMoment) index serves directly, so rows
+    // arrive already grouped by user and newest first with no sort step. IN-lists are padded to a
+    // power of two (repeating an ID, which IN ignores) so only a handful of distinct statements
+    // reach the statement cache. Titles are the shared BookTitleCache instances, not per-row Strings.
+
+    static final int MAX_IN_LIST = 512;
+    private static final int MIN_IN_LIST = 8;
+
+    // Every requested user mapped to their habits, newest first (an empty list for users without any), in the order given
+    public Map<Integer, List<ReadingHabit>> getHabitsByUserIds(Collection<Integer> userIds) throws SQLException {
+        Map<Integer, List<ReadingHabit>> habitsByUser = new LinkedHashMap<>();
+        for (Integer userId : userIds) {
+            habitsByUser.put(userId, new ArrayList<>(0));
+        }
+        forEachUserHabits(habitsByUser.keySet(), habitsByUser::put);
+        return habitsByUser;
+    }
+
+    // Streams each user's habits (newest first) to action, one user at a time in descending userID order
+    // (per shard, when sharded), holding one connection at a time. Users without habits are skipped.
+    public void forEachUserHabits(Collection<Integer> userIds, BiConsumer<Integer, List<ReadingHabit>> action) throws SQLException {
+        forEachUserShard(userIds, (conn, ids) -> forEachUserHabits(conn, ids, action));
+    }
+
+    // The same rows as getHabitsByUserIds, column by column (see HabitColumns): grouped by user in
+    // descending userID order (per shard, when sharded), newest first. For reads too large to map to
+    // one ReadingHabit per row.
+    public HabitColumns getHabitColumnsByUserIds(Collection<Integer> userIds) throws SQLException {
+        HabitColumns columns = new HabitColumns();
+        forEachUserShard(userIds, (conn, ids) -> getHabitColumnsByUserIds(conn, ids, columns));
+        columns.resolveTitles();
+        return columns;
+    }
+
+    @FunctionalInterface
+    private interface UsersOnShard {
+        void run(Connection conn, int[] ids) throws SQLException;
+    }
+
+    // Splits the distinct userIds (sorted ascending) by shard and runs task on each shard's connection
+    private static void forEachUserShard(Collection<Integer> userIds, UsersOnShard task) throws SQLException {
+        int[] ids = userIds.stream().mapToInt(Integer::intValue).distinct().sorted().toArray();
+        ShardedStorage shards = DatabaseConnector.getShards();
+        if (shards == null) {
+            try (Connection conn = DatabaseConnector.connect()) {
+                task.run(conn, ids);
+            }
+            return;
+        }
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            int current = shard;
+            int[] shardIds = Arrays.stream(ids).filter(id -> shards.shardFor(id) == current).toArray();
+            if (shardIds.length == 0) continue;
+            try (Connection conn = shards.connect(shard)) {
+                task.run(conn, shardIds);
+            }
+        }
+    }
+
+    // ids sorted ascending, all on conn's database
+    private static void forEachUserHabits(Connection conn, int[] ids, BiConsumer<Integer, List<ReadingHabit>> action) throws SQLException {
+        for (int end = ids.length; end > 0; end -= MAX_IN_LIST) {
+            int start = Math.max(0, end - MAX_IN_LIST);
+            try (PreparedStatement pstmt = conn.prepareStatement(habitsForUsersSql(inListSize(end - start)))) {
+                bindUsers(pstmt, ids, start, end);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    ResultSet row = QueryMetrics.columns(rs);
+                    List<ReadingHabit> group = null;
+                    int groupUser = 0;
+                    while (rs.next()) {
+                        ReadingHabit habit = mapHabit(conn, row);
+                        if (group == null || habit.getUserID() != groupUser) {
+                            if (group != null) action.accept(groupUser, group);
+                            group = new ArrayList<>();
+                            groupUser = habit.getUserID();
+                        }
+                        group.add(habit);
+                    }
+                    if (group != null) action.accept(groupUser, group);
+                }
+            }
+        }
+    }
+
+    private static void getHabitColumnsByUserIds(Connection conn, int[] ids, HabitColumns into) throws SQLException {
+        for (int end = ids.length; end > 0; end -= MAX_IN_LIST) {
+            int start = Math.max(0, end - MAX_IN_LIST);
+            try (PreparedStatement pstmt = conn.prepareStatement(habitsForUsersSql(inListSize(end - start)))) {
+                bindUsers(pstmt, ids, start, end);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    ResultSet row = QueryMetrics.columns(rs);
+                    while (rs.next()) {
+                        into.add(row.getInt(1), row.getInt(2), row.getInt(3), row.getInt(4), momentMillis(row, 5));
+                    }
+                }
+            }
+        }
+    }
+
+    // ids[start, end) into an IN-list of inListSize(end - start), padded with the last ID
+    private static void bindUsers(PreparedStatement pstmt, int[] ids, int start, int end) throws SQLException {
+        int size = inListSize(end - start);
+        for (int i = 0; i < size; i++) {
+            pstmt.setInt(i + 1, ids[Math.min(start + i, end - 1)]);
+        }
+    }
+
+    static int inListSize(int ids) {
+        return Math.max(MIN_IN_LIST, Integer.highestOneBit(ids - 1) << 1);
+    }
+
+    static String habitsForUsersSql(int inListSize) {
+        return """
+               SELECT habitID, userID, bookID, pagesRead, submissionMoment
+               FROM ReadingHabit
+               WHERE userID IN (%s)
+               ORDER BY userID DESC, submissionMoment DESC, habitID DESC
+               """.formatted(String.join(",", Collections.nCopies(inListSize, "?")));
+    }
+
+    // Create ReadingHabit object using row data, with the title hydrated from BookTitleCache.
+    // Columns are read by position, so every habit query selects
+    // habitID, userID, bookID, pagesRead, submissionMoment in that order.
+    private static ReadingHabit mapHabit(Connection conn, ResultSet rs) throws SQLException {
+        int bookId = rs.getInt(3);
+        return new ReadingHabit(
+            rs.getInt(1),
+            rs.getInt(2),
+            bookId,
+            rs.getInt(4),
+            momentMillis(rs, 5),
+            BookTitleCache.get().getTitle(conn, bookId) // Shared title instance
+        );
+    }
+
+    // Epoch millis of an INTEGER submissionMoment column, ReadingHabit.NO_MOMENT for NULL
+    private static long momentMillis(ResultSet rs, int column) throws SQLException {
+        long millis = rs.getLong(column);
+        return rs.wasNull() ? ReadingHabit.NO_MOMENT : millis;
+    }
+
+    // A row of "SELECT userID, bookID, pagesRead, submissionMoment" about to be deleted (no title needed)
+    private static ReadingHabit mapRemoved(int habitId, ResultSet rs) throws SQLException {
+        return new ReadingHabit(habitId, rs.getInt(1), rs.getInt(2), rs.getInt(3), momentMillis(rs, 4), null);
+    }
+
     public boolean deleteHabitById(int habitId) throws SQLException {
+        String findSql = "SELECT userID, bookID, pagesRead, submissionMoment FROM ReadingHabit WHERE habitID = ?";
         String sql = "DELETE FROM ReadingHabit WHERE habitID = ?";
         boolean success = false;
-        try (Connection conn = DatabaseConnector.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        List<ReadingHabit> deleted = new ArrayList<>(); // The removed row(s), for the running statistics
+        long commit;
+
+        try (Connection conn = connectForHabit(habitId)) {
+            // Read what we're about to delete in the same transaction, for the rollups and running statistics
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement findPstmt = conn.prepareStatement(findSql)) {
+                    findPstmt.setInt(1, habitId);
+                    try (ResultSet rs = findPstmt.executeQuery()) {
+                        while (rs.next()) {
+                            deleted.add(mapRemoved(habitId, rs));
+                        }
+                    }
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setInt(1, habitId);
+                    int affectedRows = pstmt.executeUpdate();
+                    if (affectedRows > 0) {
+                        success = true;
+                    }
+                }
+                if (success) {
+                    HabitRollups.Delta rollups = new HabitRollups.Delta();
+                    for (ReadingHabit row : deleted) {
+                        rollups.removed(row.getUserID(), row.getBookID(), row.getPagesRead(), row.getSubmissionMoment());
+                    }
+                    rollups.applyTo(conn);
+                }
+                commit = CommitSequence.commit(conn);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
 
-            pstmt.setInt(1, habitId);
-            int affectedRows = pstmt.executeUpdate();
-            if (affectedRows > 0) {
-                success = true;
+        if (success) {
+            for (ReadingHabit row : deleted) {
+                StatisticsStore.get().habitRemoved(commit, row.getUserID(), row.getBookID(), row.getPagesRead(), row.getSubmissionMoment());
+                ReaderSketches.get().habitRemoved(commit);
+                HabitListCache.get().invalidateUser(row.getUserID());
             }
+            HabitAnalytics.get().habitRemoved(habitId);
         }
         return success;
     }
 
+    // Deletes the habits in one transaction; IDs that don't exist are NOT_FOUND.
+    // When sharded, there is one transaction per shard involved, and each commits only once every
+    // shard's deletes have succeeded (a failure during those final commits can leave earlier shards committed).
+    public BatchResult deleteHabitsByIds(int[] habitIds) throws SQLException {
+        String findSql = "SELECT userID, bookID, pagesRead, submissionMoment FROM ReadingHabit WHERE habitID = ?";
+        String sql = "DELETE FROM ReadingHabit WHERE habitID = ?";
+        long start = System.nanoTime();
+        List<String> keys = new ArrayList<>(habitIds.length);
+        for (int habitId : habitIds) {
+            keys.add("habit " + habitId);
+        }
+        Map<Integer, List<ReadingHabit>> deleted = new HashMap<>(); // Rows per habitID, for the running statistics
+        int[] counts = new int[habitIds.length];
+
+        BatchResult result;
+        long commit;
+        List<Connection> connections = new ArrayList<>();
+        try {
+            for (Map.Entry<Integer, List<Integer>> group : positionsByShard(habitIds).entrySet()) {
+                ShardedStorage shards = DatabaseConnector.getShards();
+                Connection conn = group.getKey() < 0 ? DatabaseConnector.connect() : shards.connect(group.getKey());
+                connections.add(conn);
+                conn.setAutoCommit(false);
+                List<Integer> positions = group.getValue();
+                List<Integer> ids = new ArrayList<>(positions.size());
+                try (PreparedStatement findPstmt = conn.prepareStatement(findSql)) {
+                    for (int position : positions) {
+                        int habitId = habitIds[position];
+                        ids.add(habitId);
+                        if (deleted.containsKey(habitId)) continue;
+                        List<ReadingHabit> rows = new ArrayList<>(1);
+                        findPstmt.setInt(1, habitId);
+                        try (ResultSet rs = findPstmt.executeQuery()) {
+                            while (rs.next()) {
+                                rows.add(mapRemoved(habitId, rs));
+                            }
+                        }
+                        deleted.put(habitId, rows);
+                    }
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    int[] groupCounts = BatchResult.executeBatch(conn, pstmt, ids, (ps, habitId) -> ps.setInt(1, habitId));
+                    HabitRollups.Delta rollups = new HabitRollups.Delta();
+                    for (int i = 0; i < groupCounts.length; i++) {
+                        counts[positions.get(i)] = groupCounts[i];
+                        if (groupCounts[i] <= 0) continue; // Not found, or a repeated ID
+                        for (ReadingHabit row : deleted.get(ids.get(i))) {
+                            rollups.removed(row.getUserID(), row.getBookID(), row.getPagesRead(), row.getSubmissionMoment());
+                        }
+                    }
+                    rollups.applyTo(conn);
+                } catch (BatchResult.ItemFailedException e) {
+                    throw new BatchResult.ItemFailedException(positions.get(e.getIndex()), e);
+                }
+            }
+            commit = CommitSequence.commitAll(connections);
+            result = BatchResult.committed(keys, counts, start);
+        } catch (BatchResult.ItemFailedException e) {
+            rollbackAll(connections);
+            return BatchResult.rolledBack(keys, e.getIndex(), e.getMessage(), start);
+        } catch (SQLException | RuntimeException e) {
+            rollbackAll(connections);
+            throw e;
+        } finally {
+            closeAll(connections);
+        }
+
+        for (int i = 0; i < habitIds.length; i++) {
+            if (result.getItems().get(i).getStatus() != BatchResult.Status.APPLIED) continue;
+            List<ReadingHabit> rows = deleted.remove(habitIds[i]); // Null for a repeated ID
+            if (rows == null) continue;
+            for (ReadingHabit row : rows) {
+                StatisticsStore.get().habitRemoved(commit, row.getUserID(), row.getBookID(), row.getPagesRead(), row.getSubmissionMoment());
+                ReaderSketches.get().habitRemoved(commit);
+                HabitListCache.get().invalidateUser(row.getUserID());
+            }
+            HabitAnalytics.get().habitRemoved(habitIds[i]);
+        }
+        return result;
+    }
+
+    // Positions in habitIds grouped by the shard holding each habit (key -1 = the unsharded database).
+    // IDs found on no shard are left out, so they come back NOT_FOUND.
+    private static Map<Integer, List<Integer>> positionsByShard(int[] habitIds) throws SQLException {
+        Map<Integer, List<Integer>> positions = new TreeMap<>();
+        ShardedStorage shards = DatabaseConnector.getShards();
+        Map<Integer, Integer> shardOfId = new HashMap<>();
+        for (int i = 0; i < habitIds.length; i++) {
+            int shard = -1;
+            if (shards != null) {
+                Integer known = shardOfId.get(habitIds[i]);
+                shard = known != null ? known : shardOfHabit(shards, habitIds[i]);
+                shardOfId.put(habitIds[i], shard);
+                if (shard < 0) continue;
+            }
+            positions.computeIfAbsent(shard, k -> new ArrayList<>()).add(i);
+        }
+        return positions;
+    }
+
+    // Rolls back every connection, even after one fails; throws the first failure
+    private static void rollbackAll(List<Connection> connections) throws SQLException {
+        SQLException failure = null;
+        for (Connection conn : connections) {
+            try {
+                conn.rollback();
+            } catch (SQLException e) {
+                if (failure == null) failure = e;
+                else failure.addSuppressed(e);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    // Restores auto-commit on every connection and closes them all, even after one fails; throws the first failure
+    private static void closeAll(List<Connection> connections) throws SQLException {
+        SQLException failure = null;
+        for (Connection conn : connections) {
+            try (conn) {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                if (failure == null) failure = e;
+                else failure.addSuppressed(e);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    // Estimated from the reader sketches with -Dbooktracker.stats.approximate=true (see ReaderSketches)
     public int countUsersForBookTitle(String bookTitle) throws SQLException {
+        // Resolve the title in memory, then count on the (bookID, userID) index without a JOIN
+        Integer bookId = BookTitleCache.get().findBookId(bookTitle);
+        if (bookId == null) {
+            return 0; // No such book
+        }
+        if (ReaderSketches.APPROXIMATE) {
+            return (int) ReaderSketches.get().estimateReaders(bookId);
+        }
+        return (int) queryUsersForBookId(bookId, null, null);
+    }
+
+    // Estimated distinct readers of a book with habits in months [from, to) (null for no limit)
+    public long estimateUsersForBookTitle(String bookTitle, YearMonth from, YearMonth to) throws SQLException {
+        Integer bookId = BookTitleCache.get().findBookId(bookTitle);
+        return bookId == null ? 0 : ReaderSketches.get().estimateReaders(bookId, from, to);
+    }
+
+    // Exact distinct readers of a book with habits in [from, to) (null for no limit)
+    long queryUsersForBookId(int bookId, Instant from, Instant to) throws SQLException {
+        // Each user's habits are on one shard, so the per-shard distinct counts add up
+        if (from == null && to == null) {
+            return sumOverShards("SELECT COUNT(DISTINCT userID) AS user_count FROM ReadingHabit WHERE bookID = ?", bookId);
+        }
+        return sumOverShards("SELECT COUNT(DISTINCT userID) AS user_count FROM ReadingHabit"
+                        + " WHERE bookID = ? AND submissionMoment >= ? AND submissionMoment < ?", bookId,
+                from == null ? Long.MIN_VALUE : from.toEpochMilli(), to == null ? Long.MAX_VALUE : to.toEpochMilli());
+    }
+
+    // Served from the running totals in StatisticsStore (no table scan)
+    public long getTotalPagesRead() throws SQLException {
+        return StatisticsStore.get().getTotalPagesRead();
+    }
+
+    // Full SUM(pagesRead) scan; used to verify/rebuild the running statistics
+    public long queryTotalPagesRead() throws SQLException {
+        return sumOverShards("SELECT SUM(pagesRead) AS total_pages FROM ReadingHabit");
+    }
+
+    // Served from the running per-user book counts in StatisticsStore (no table scan),
+    // or from the persisted per-user markers in ReaderSketches in approximate mode
+    public int countUsersReadingMultipleBooks() throws SQLException {
+        if (ReaderSketches.APPROXIMATE) {
+            return ReaderSketches.get().estimateUsersReadingMultipleBooks();
+        }
+        return StatisticsStore.get().getUsersReadingMultipleBooks();
+    }
+
+    // Full GROUP BY scan; used to verify/rebuild the running statistics
+    public int queryUsersReadingMultipleBooks() throws SQLException {
         String sql = """
-                     SELECT COUNT(DISTINCT rh.userID) AS user_count
-                     FROM ReadingHabit rh
-                     JOIN Books b ON rh.bookID = b.bookID
-                     WHERE b.title = ?
+                     SELECT COUNT(userID) AS multi_book_user_count
+                     FROM (SELECT userID, COUNT(DISTINCT bookID) as book_count
+                           FROM ReadingHabit
+                           GROUP BY userID)
+                     WHERE book_count > 1
                      """;
-        int count = 0;
+        return (int) sumOverShards(sql);
+    }
+
+    // Runs a query returning one number (NULL = 0) and, when sharded, adds it up over all shards in parallel
+    private static long sumOverShards(String sql, long... params) throws SQLException {
+        ShardedStorage shards = DatabaseConnector.getShards();
+        if (shards == null) {
+            try (Connection conn = DatabaseConnector.connect()) {
+                return queryNumber(conn, sql, params);
+            }
+        }
+        long total = 0;
+        for (long part : shards.scatter(conn -> queryNumber(conn, sql, params))) {
+            total += part;
+        }
+        return total;
+    }
+
+    private static long queryNumber(Connection conn, String sql, long... params) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) { // Cached per connection
+            for (int i = 0; i < params.length; i++) {
+                pstmt.setLong(i + 1, params[i]);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0; // getLong returns 0 for a NULL SUM
+            }
+        }
+    }
+
+    // All-time top n, served from the running scores in StatisticsStore
+    public List<LeaderboardEntry> getLeaderboard(LeaderboardEntry.Board board, int n) throws SQLException {
+        return withTitles(board, StatisticsStore.get().getTop(board, n));
+    }
+
+    // Top n over habits submitted in [from, to). Whole UTC days within the retained period are
+    // served from StatisticsStore's per-day totals; anything else falls back to queryLeaderboard.
+    public List<LeaderboardEntry> getLeaderboard(LeaderboardEntry.Board board, int n, Instant from, Instant to) throws SQLException {
+        if (from.toEpochMilli() % MILLIS_PER_DAY == 0 && to.toEpochMilli() % MILLIS_PER_DAY == 0) {
+            List<LeaderboardEntry> top = StatisticsStore.get().getTop(board, n,
+                    from.toEpochMilli() / MILLIS_PER_DAY, to.toEpochMilli() / MILLIS_PER_DAY);
+            if (top != null) {
+                return withTitles(board, top);
+            }
+        }
+        return queryLeaderboard(board, n, from, to);
+    }
+
+    // Top n over the last `days` days, today included
+    public List<LeaderboardEntry> getLeaderboardForLastDays(LeaderboardEntry.Board board, int n, int days) throws SQLException {
+        LocalDate tomorrow = LocalDate.now(SubmissionMoments.ZONE).plusDays(1);
+        return getLeaderboard(board, n,
+                tomorrow.minusDays(days).atStartOfDay(SubmissionMoments.ZONE).toInstant(),
+                tomorrow.atStartOfDay(SubmissionMoments.ZONE).toInstant());
+    }
+
+    // GROUP BY scan over [from, to) (or everything, when both are null); used for windows the
+    // in-memory totals don't cover and to verify them
+    public List<LeaderboardEntry> queryLeaderboard(LeaderboardEntry.Board board, int n, Instant from, Instant to) throws SQLException {
+        String id = board.ranksBooks() ? "bookID" : "userID";
+        String score = board == LeaderboardEntry.Board.BOOKS_BY_READERS ? "COUNT(DISTINCT userID)" : "SUM(pagesRead)";
+        String where = from == null ? "" : "WHERE submissionMoment >= ? AND submissionMoment < ? ";
+        String sql = "SELECT " + id + " AS id, " + score + " AS score FROM ReadingHabit " + where
+                + "GROUP BY " + id + " HAVING score > 0 ORDER BY score DESC, id LIMIT ?";
+        List<LeaderboardEntry> top = new ArrayList<>();
+
         try (Connection conn = DatabaseConnector.connect();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, bookTitle);
+            int param = 1;
+            if (from != null) {
+                pstmt.setLong(param++, from.toEpochMilli());
+                pstmt.setLong(param++, to.toEpochMilli());
+            }
+            pstmt.setInt(param, n);
             try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    count = rs.getInt("user_count");
+                while (rs.next()) {
+                    top.add(new LeaderboardEntry(top.size() + 1, rs.getInt("id"), null, rs.getLong("score")));
                 }
             }
         }
-        return count;
+        return withTitles(board, top);
     }
 
-    public long getTotalPagesRead() throws SQLException {
-        String sql = "SELECT SUM(pagesRead) AS total_pages FROM ReadingHabit";
-        long totalPages = 0; // Default to 0
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
 
-        try (Connection conn = DatabaseConnector.connect();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+    private static List<LeaderboardEntry> withTitles(LeaderboardEntry.Board board, List<LeaderboardEntry> entries) throws SQLException {
+        if (!board.ranksBooks() || entries.isEmpty()) return entries;
+        List<LeaderboardEntry> titled = new ArrayList<>(entries.size());
+        for (LeaderboardEntry e : entries) {
+            titled.add(new LeaderboardEntry(e.getRank(), e.getId(), BookTitleCache.get().getTitle(e.getId()), e.getScore()));
+        }
+        return titled;
+    }
 
-            if (rs.next()) {
-                 totalPages = rs.getLong("total_pages");
-                 // No need to check wasNull, getLong returns 0 if SUM is NULL
+    // Adds one habit and returns its habitID.
+    // A habitID <= 0 means "assign the next free ID"; a bookID <= 0 means "look up (or create) the book by title".
+    public int addReadingHabit(ReadingHabit habit) throws SQLException {
+        int bookId = habit.getBookID() > 0 ? habit.getBookID() : bookDao.findOrCreateBook(habit.getBookTitle());
+        ShardedStorage shards = DatabaseConnector.getShards();
+        if (shards != null) {
+            return addReadingHabitToShard(shards, habit, bookId);
+        }
+        // Single statement so the MAX(habitID)+1 assignment can't race another writer
+        String sql = """
+                     INSERT INTO ReadingHabit (habitID, userID, bookID, pagesRead, submissionMoment)
+                     SELECT COALESCE(?, IFNULL(MAX(habitID), 0) + 1), ?, ?, ?, ? FROM ReadingHabit
+                     """;
+
+        try (Connection conn = DatabaseConnector.connect()) {
+            conn.setAutoCommit(false); // The habit and its rollup rows commit together
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    if (habit.getHabitID() > 0) {
+                        pstmt.setInt(1, habit.getHabitID());
+                    } else {
+                        pstmt.setNull(1, Types.INTEGER);
+                    }
+                    pstmt.setInt(2, habit.getUserID());
+                    pstmt.setInt(3, bookId);
+                    pstmt.setInt(4, habit.getPagesRead());
+                    setMoment(pstmt, 5, habit.getSubmissionMoment());
+                    pstmt.executeUpdate();
+                }
+                return commitAdded(conn, habit, bookId);
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
         }
-        return totalPages;
     }
 
-     public int countUsersReadingMultipleBooks() throws SQLException {
-         String sql = """
-                      SELECT COUNT(userID) AS multi_book_user_count
-                      FROM (SELECT userID, COUNT(DISTINCT bookID) as book_count
-                            FROM ReadingHabit
-                            GROUP BY userID)
-                      WHERE book_count > 1
-                      """;
-         int count = 0;
-         try (Connection conn = DatabaseConnector.connect();
-              Statement stmt = conn.createStatement();
-              ResultSet rs = stmt.executeQuery(sql)) {
-
-             if (rs.next()) {
-                 count = rs.getInt("multi_book_user_count");
-             }
-         }
-         return count;
-     }
-
-     // Future method: addReadingHabit(ReadingHabit habit) ...
+    // addReadingHabit on the user's shard, whose file also holds the user's rollups. Also a single
+    // statement: the new habitID is the shard's next free one above the floor, as in
+    // ShardedStorage.lockAndGetNextHabitId.
+    private int addReadingHabitToShard(ShardedStorage shards, ReadingHabit habit, int bookId) throws SQLException {
+        String sql = """
+                     INSERT INTO ReadingHabit (habitID, userID, bookID, pagesRead, submissionMoment)
+                     SELECT COALESCE(?1, next + ((?2 - next) % ?3 + ?3) % ?3), ?4, ?5, ?6, ?7
+                     FROM (SELECT MAX(IFNULL(MAX(habitID), 0), ?8) + 1 AS next FROM ReadingHabit)
+                     """;
+        int shard = shards.shardFor(habit.getUserID());
+
+        try (Connection conn = shards.connect(shard)) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    if (habit.getHabitID() > 0) {
+                        pstmt.setInt(1, habit.getHabitID());
+                    } else {
+                        pstmt.setNull(1, Types.INTEGER);
+                    }
+                    pstmt.setInt(2, shard);
+                    pstmt.setInt(3, shards.getShardCount());
+                    pstmt.setInt(4, habit.getUserID());
+                    pstmt.setInt(5, bookId);
+                    pstmt.setInt(6, habit.getPagesRead());
+                    setMoment(pstmt, 7, habit.getSubmissionMoment());
+                    pstmt.setInt(8, shards.getHabitIdFloor());
+                    pstmt.executeUpdate();
+                }
+                return commitAdded(conn, habit, bookId);
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    // Finishes an add in the caller's transaction: rolls up the habit just inserted on conn, commits,
+    // then updates the in-memory statistics. Returns the new habitID.
+    private static int commitAdded(Connection conn, ReadingHabit habit, int bookId) throws SQLException {
+        int habitId;
+        try (PreparedStatement idPstmt = conn.prepareStatement("SELECT habitID FROM ReadingHabit WHERE rowid = last_insert_rowid()");
+             ResultSet rs = idPstmt.executeQuery()) {
+            if (!rs.next()) throw new SQLException("Could not add reading habit for user " + habit.getUserID());
+            habitId = rs.getInt("habitID");
+        }
+        HabitRollups.habitAdded(conn, habit.getUserID(), bookId, habit.getPagesRead(), habit.getSubmissionMoment());
+        long commit = CommitSequence.commit(conn);
+        HabitListCache.get().invalidateUser(habit.getUserID());
+        StatisticsStore.get().habitAdded(commit, habit.getUserID(), bookId, habit.getPagesRead(), habit.getSubmissionMoment());
+        ReaderSketches.get().habitAdded(commit, habit.getUserID(), bookId, habit.getSubmissionMoment());
+        return habitId;
+    }
+
+    // Queues a habit for write-behind insertion (see ReadingHabitWriter); when sharded, on the writer for the user's shard.
+    // The future completes with the habitID once the habit's batch has been committed.
+    public CompletableFuture<Integer> submitHabit(ReadingHabit habit) {
+        return ReadingHabitWriter.forUser(habit.getUserID()).submit(habit);
+    }
+
+    // Connection to the shard holding habitId (shard 0 if none does) when sharded, otherwise connect()
+    private static Connection connectForHabit(int habitId) throws SQLException {
+        ShardedStorage shards = DatabaseConnector.getShards();
+        if (shards == null) {
+            return DatabaseConnector.connect();
+        }
+        return shards.connect(Math.max(0, shardOfHabit(shards, habitId)));
+    }
+
+    // The shard holding all of habitIds (0 if none is on any shard), or -1 if they're spread over several
+    static int shardOfHabits(ShardedStorage shards, int[] habitIds) throws SQLException {
+        int found = -1;
+        for (int habitId : habitIds) {
+            int shard = shardOfHabit(shards, habitId);
+            if (shard < 0 || shard == found) continue;
+            if (found >= 0) return -1;
+            found = shard;
+        }
+        return Math.max(0, found);
+    }
+
+    // Looks for the habit on the shard whose ID range it falls in first, then on the others; -1 if it's on none
+    private static int shardOfHabit(ShardedStorage shards, int habitId) throws SQLException {
+        int count = shards.getShardCount();
+        int likely = Math.max(0, shards.likelyShardOfHabit(habitId));
+        for (int i = 0; i < count; i++) {
+            int shard = (likely + i) % count;
+            try (Connection conn = shards.connect(shard);
+                 PreparedStatement pstmt = conn.prepareStatement("SELECT 1 FROM ReadingHabit WHERE habitID = ?")) {
+                pstmt.setInt(1, habitId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) return shard;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // Takes SQLite's write lock for the caller's open transaction (a no-op UPDATE is enough),
+    // then reads the highest habitID, so IDs handed out from it can't collide with another writer.
+    static int lockAndGetMaxHabitId(Connection conn) throws SQLException {
+        try (PreparedStatement lockPstmt = conn.prepareStatement("UPDATE ReadingHabit SET habitID = habitID WHERE 0")) {
+            lockPstmt.executeUpdate();
+        }
+        try (PreparedStatement maxPstmt = conn.prepareStatement("SELECT IFNULL(MAX(habitID), 0) FROM ReadingHabit");
+             ResultSet rs = maxPstmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // Queues a habit (with known habitID and bookID) into a batch of INSERT_HABIT_SQL on the caller's
+    // connection. The caller owns the transaction and calls executeBatch().
+    static void addToBatch(PreparedStatement insertPstmt, int habitId, int userId, int bookId,
+                           int pagesRead, Instant submissionMoment) throws SQLException {
+        insertPstmt.setInt(1, habitId);
+        insertPstmt.setInt(2, userId);
+        insertPstmt.setInt(3, bookId);
+        insertPstmt.setInt(4, pagesRead);
+        setMoment(insertPstmt, 5, submissionMoment);
+        insertPstmt.addBatch();
+    }
+
+    // submissionMoment is stored as epoch milliseconds
+    static void setMoment(PreparedStatement pstmt, int index, Instant moment) throws SQLException {
+        if (moment == null) {
+            pstmt.setNull(index, Types.INTEGER);
+        } else {
+            pstmt.setLong(index, moment.toEpochMilli());
+        }
+    }
 }
\ No newline at end of file
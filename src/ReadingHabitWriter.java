@@ -0,0 +1,343 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Write-behind ingestion for reading habits.
+// Submissions go into a bounded queue; one writer thread groups them into batches
+// (up to maxBatchSize habits, or whatever arrived within maxDelayMillis) and writes each
+// batch in a single transaction, so SQLite takes the write lock and syncs once per batch
+// instead of once per habit. submit() blocks while the queue is full (backpressure).
+// Other writes can be queued with execute(); they run on the same thread, in submission order,
+// so everything routed through here (e.g. server mode) has a single SQLite writer.
+// With booktracker.shards set there is also one writer per shard file, each with its own thread:
+// forUser for new habits and forHabits for deletes. The shared writer keeps users and books, and
+// batch deletes spread over several shards, which then wait on the shards' write locks.
+public class ReadingHabitWriter implements AutoCloseable {
+
+    // A write run on the writer thread by execute()
+    @FunctionalInterface
+    public interface WriteTask<T> {
+        T run() throws SQLException;
+    }
+
+    private static final int QUEUE_CAPACITY = Integer.getInteger("booktracker.writer.queueCapacity", 10_000);
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("booktracker.writer.maxBatchSize", 500);
+    private static final long MAX_DELAY_MILLIS = Long.getLong("booktracker.writer.maxDelayMillis", 50L);
+
+    private static ReadingHabitWriter shared;
+    private static ReadingHabitWriter[] shardWriters; // Started on first use, by shard
+
+    private final BlockingQueue<Pending> queue;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+    private final int shard; // -1 = writes go through DatabaseConnector.connect()
+    private final Thread writerThread;
+    private final BookDao bookDao = new BookDao();
+    private volatile boolean running = true;
+
+    public ReadingHabitWriter(int queueCapacity, int maxBatchSize, long maxDelayMillis) {
+        this(queueCapacity, maxBatchSize, maxDelayMillis, -1);
+    }
+
+    // Writer for the habits of one shard (see ShardedStorage)
+    ReadingHabitWriter(int queueCapacity, int maxBatchSize, long maxDelayMillis, int shard) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+        this.shard = shard;
+        this.writerThread = new Thread(this::runWriter, shard < 0 ? "reading-habit-writer" : "reading-habit-writer-shard" + shard);
+        this.writerThread.setDaemon(true); // Main flushes explicitly / via the shutdown hook
+        this.writerThread.start();
+    }
+
+    // Writer used by ReadingHabitDao.submitHabit, started on first use
+    public static synchronized ReadingHabitWriter shared() {
+        if (shared == null) {
+            shared = new ReadingHabitWriter(QUEUE_CAPACITY, MAX_BATCH_SIZE, MAX_DELAY_MILLIS);
+        }
+        return shared;
+    }
+
+    // Writer for habits of this user: the one for their shard when sharded, otherwise shared()
+    public static synchronized ReadingHabitWriter forUser(int userId) {
+        ShardedStorage shards = DatabaseConnector.getShards();
+        if (shards == null) {
+            return shared();
+        }
+        return forShard(shards, shards.shardFor(userId));
+    }
+
+    // Writer for deleting these habits: when sharded, the one for the shard holding them all (shard 0
+    // if none does, like ReadingHabitDao.deleteHabitById), otherwise shared(). Looks the habits up.
+    public static ReadingHabitWriter forHabits(int... habitIds) throws SQLException {
+        ShardedStorage shards = DatabaseConnector.getShards();
+        if (shards == null) {
+            return shared();
+        }
+        int shard = ReadingHabitDao.shardOfHabits(shards, habitIds);
+        synchronized (ReadingHabitWriter.class) {
+            return shard < 0 ? shared() : forShard(shards, shard);
+        }
+    }
+
+    private static ReadingHabitWriter forShard(ShardedStorage shards, int shard) {
+        if (shardWriters == null) {
+            shardWriters = new ReadingHabitWriter[shards.getShardCount()];
+        }
+        if (shardWriters[shard] == null) {
+            shardWriters[shard] = new ReadingHabitWriter(QUEUE_CAPACITY, MAX_BATCH_SIZE, MAX_DELAY_MILLIS, shard);
+        }
+        return shardWriters[shard];
+    }
+
+    // Flushes and stops the shared and per-shard writers that were ever started
+    public static synchronized void shutdownShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+        if (shardWriters != null) {
+            for (ReadingHabitWriter writer : shardWriters) {
+                if (writer != null) writer.close();
+            }
+            shardWriters = null;
+        }
+    }
+
+    // Queues a habit; the future completes with its habitID once the batch is committed
+    public CompletableFuture<Integer> submit(ReadingHabit habit) {
+        Pending pending = new Pending(habit);
+        enqueue(pending);
+        return pending.result;
+    }
+
+    // Completes once everything submitted before this call has been written
+    public CompletableFuture<Integer> flush() {
+        Pending marker = new Pending(null);
+        enqueue(marker);
+        return marker.result;
+    }
+
+    // Runs a write on the writer thread after everything queued before it
+    public <T> CompletableFuture<T> execute(WriteTask<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Pending pending = new Pending(null, () -> {
+            try {
+                result.complete(task.run());
+            } catch (SQLException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        pending.result.exceptionally(e -> { // Rejected or interrupted before it could run
+            result.completeExceptionally(e);
+            return null;
+        });
+        enqueue(pending);
+        return result;
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    // Stops accepting work, writes what is still queued and waits for the writer to finish
+    @Override
+    public void close() {
+        if (!running) return;
+        running = false;
+        try {
+            writerThread.join(30_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            System.err.println("WARNING: Reading habit writer did not finish flushing within 30s; " + queue.size() + " habits still queued.");
+            return;
+        }
+        // Anything that got in while the writer was exiting would otherwise never complete
+        List<Pending> left = new ArrayList<>();
+        queue.drainTo(left);
+        failAll(left, rejected());
+    }
+
+    private void enqueue(Pending pending) {
+        try {
+            while (running) {
+                // Blocks the submitter while the queue is full, re-checking for close() in between
+                if (!queue.offer(pending, 100, TimeUnit.MILLISECONDS)) continue;
+                // close() may have started after the check above. If the writer or close()
+                // has taken the item it will be completed; otherwise take it back.
+                if (!running && queue.remove(pending)) break;
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.result.completeExceptionally(e);
+            return;
+        }
+        pending.result.completeExceptionally(rejected());
+    }
+
+    private static RejectedExecutionException rejected() {
+        return new RejectedExecutionException("Reading habit writer has been shut down");
+    }
+
+    private void runWriter() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                // Keep collecting until the batch is full or the time window closes
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) break;
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                // Only close() stops the writer; fail what was collected and keep draining
+                failAll(batch, e);
+            } catch (RuntimeException e) {
+                failAll(batch, e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<Pending> batch) {
+        List<Pending> habits = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            if (pending.habit != null) {
+                habits.add(pending);
+                continue;
+            }
+            // Tasks and flush markers run after the habits queued before them
+            writeHabits(habits);
+            habits.clear();
+            if (pending.task != null) pending.task.run();
+            pending.result.complete(0);
+        }
+        writeHabits(habits);
+    }
+
+    private void writeHabits(List<Pending> habits) {
+        if (!habits.isEmpty()) {
+            try (Connection conn = shard < 0 ? DatabaseConnector.connect() : DatabaseConnector.getShards().connect(shard)) {
+                conn.setAutoCommit(false);
+                try {
+                    int[] bookIds = new int[habits.size()];
+                    int[] ids = insertAll(conn, habits, bookIds);
+                    long commit = CommitSequence.commit(conn);
+                    for (int i = 0; i < habits.size(); i++) {
+                        Pending pending = habits.get(i);
+                        if (ids[i] > 0) {
+                            StatisticsStore.get().habitAdded(commit, pending.habit.getUserID(), bookIds[i], pending.habit.getPagesRead(),
+                                    pending.habit.getSubmissionMoment());
+                            ReaderSketches.get().habitAdded(commit, pending.habit.getUserID(), bookIds[i], pending.habit.getSubmissionMoment());
+                            HabitListCache.get().invalidateUser(pending.habit.getUserID());
+                            pending.result.complete(ids[i]);
+                        } else {
+                            pending.result.completeExceptionally(new SQLException(
+                                    "Habit ID " + pending.habit.getHabitID() + " already exists"));
+                        }
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                failAll(habits, e);
+            }
+        }
+    }
+
+    // Returns the habitID written for each entry, or 0 where an explicit habitID was a duplicate.
+    // The resolved bookIDs are written into bookIds. The habits are rolled up in the same transaction.
+    private int[] insertAll(Connection conn, List<Pending> habits, int[] bookIds) throws SQLException {
+        int nextId;
+        int step = 1;
+        if (shard < 0) {
+            int maxId = ReadingHabitDao.lockAndGetMaxHabitId(conn);
+            for (Pending pending : habits) {
+                maxId = Math.max(maxId, pending.habit.getHabitID()); // Don't hand out an ID that's explicitly in this batch
+            }
+            nextId = maxId + 1;
+        } else {
+            // Every shard-count-th ID from this shard's range, above any explicit ID in the batch
+            ShardedStorage shards = DatabaseConnector.getShards();
+            step = shards.getShardCount();
+            nextId = shards.lockAndGetNextHabitId(conn, shard);
+            for (Pending pending : habits) {
+                int explicitId = pending.habit.getHabitID();
+                if (explicitId >= nextId) nextId += ((explicitId - nextId) / step + 1) * step;
+            }
+        }
+        int[] ids = new int[habits.size()];
+        try (PreparedStatement insertPstmt = conn.prepareStatement(ReadingHabitDao.INSERT_HABIT_SQL)) {
+            for (int i = 0; i < habits.size(); i++) {
+                ReadingHabit habit = habits.get(i).habit;
+                int bookId = habit.getBookID() > 0 ? habit.getBookID() : bookDao.findOrCreateBook(conn, habit.getBookTitle());
+                int habitId = habit.getHabitID();
+                if (habitId <= 0) {
+                    habitId = nextId;
+                    nextId += step;
+                }
+                ReadingHabitDao.addToBatch(insertPstmt, habitId, habit.getUserID(), bookId,
+                        habit.getPagesRead(), habit.getSubmissionMoment());
+                ids[i] = habitId;
+                bookIds[i] = bookId;
+            }
+            int[] results = insertPstmt.executeBatch();
+            HabitRollups.Delta rollups = new HabitRollups.Delta();
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == 0) {
+                    ids[i] = 0; // Ignored as a duplicate
+                    continue;
+                }
+                ReadingHabit habit = habits.get(i).habit;
+                rollups.added(habit.getUserID(), bookIds[i], habit.getPagesRead(), habit.getSubmissionMoment());
+            }
+            rollups.applyTo(conn); // One upsert per (user, day) and (book, month) in the batch
+        }
+        return ids;
+    }
+
+    private static void failAll(List<Pending> batch, Exception e) {
+        for (Pending pending : batch) {
+            pending.result.completeExceptionally(e);
+        }
+    }
+
+    private static final class Pending {
+        final ReadingHabit habit; // null for a flush marker or task
+        final Runnable task;      // Completes its own future; null unless queued by execute()
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        Pending(ReadingHabit habit) {
+            this(habit, null);
+        }
+
+        Pending(ReadingHabit habit, Runnable task) {
+            this.habit = habit;
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// Offline tool that splits ReadingHabit into shard files for -Dbooktracker.shards=N (see ShardedStorage),
+// or re-splits existing shards into a different count. Habits are read from every existing shard file,
+// or from the main database's ReadingHabit table when there are none (once sharded, that table is a
+// stale copy), routed by userID and written into new shard files. These replace the old ones only once
+// all habits have been copied; the old files are renamed to *.old until the new ones are in place. A
+// habitID found in more than one shard is copied once. Each new shard's rollups (HabitRollups) are
+// computed from the habits it received. Run it while the application is stopped.
+// With 0 shards the main database's ReadingHabit table is replaced by the shards' habits and the shard
+// files removed.
+//
+// Usage: java -cp "out:lib/sqlite-jdbc-....jar" [-Dbooktracker.db.path=...] ReshardTool <shards> [--drop-source]
+//   --drop-source   empty the main database's ReadingHabit table afterwards (by default it is left as it
+//                   was: hidden behind the shards while sharded, and a fallback for running unsharded)
+public class ReshardTool {
+
+    private static final String DB_PATH = System.getProperty("booktracker.db.path", "Booktracker.db");
+    private static final int COMMIT_EVERY = 50_000;
+
+    private static final String SELECT_SQL = "SELECT habitID, userID, bookID, pagesRead, submissionMoment FROM ReadingHabit";
+    private static final String INSERT_SQL = """
+            INSERT OR IGNORE INTO ReadingHabit (habitID, userID, bookID, pagesRead, submissionMoment)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+
+    public static void main(String[] args) {
+        List<String> arguments = new ArrayList<>(List.of(args));
+        boolean dropSource = arguments.remove("--drop-source");
+        int shards;
+        try {
+            if (arguments.size() != 1) throw new NumberFormatException();
+            shards = Integer.parseInt(arguments.get(0));
+            if (shards < 0 || shards > ShardedStorage.MAX_SHARDS) throw new NumberFormatException();
+        } catch (NumberFormatException e) {
+            System.err.println("Usage: ReshardTool <shards 0-" + ShardedStorage.MAX_SHARDS + "> [--drop-source]");
+            System.exit(2);
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            long habits = reshard(DB_PATH, shards, dropSource);
+            System.out.printf("SUCCESS: %,d habits %s in %.2f s%n", habits,
+                    shards == 0 ? "merged back into " + DB_PATH : "split across " + shards + " shards",
+                    (System.nanoTime() - start) / 1e9);
+        } catch (IOException | SQLException e) {
+            System.err.println("ERROR resharding '" + DB_PATH + "': " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Returns the number of distinct habits now in the shards (or, for 0 shards, the main database)
+    static long reshard(String catalogPath, int shards, boolean dropSource) throws IOException, SQLException {
+        List<Path> oldShards = new ArrayList<>();
+        for (int s = 0; s < ShardedStorage.MAX_SHARDS; s++) {
+            Path path = Paths.get(ShardedStorage.shardPath(catalogPath, s));
+            if (Files.exists(path)) oldShards.add(path);
+        }
+
+        try (Connection catalog = DriverManager.getConnection("jdbc:sqlite:" + catalogPath)) {
+            SchemaMigrations.migrate(catalog); // The shards are created at the latest layout
+
+            if (shards == 0) {
+                if (oldShards.isEmpty()) return countHabits(catalog); // Not sharded; nothing to merge
+                long habits = mergeInto(catalog, oldShards);
+                deleteDatabaseFiles(oldShards);
+                return habits;
+            }
+
+            int floor = maxHabitId(catalog);
+            for (Path old : oldShards) {
+                try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + old)) {
+                    floor = Math.max(floor, maxHabitId(conn));
+                }
+            }
+
+            List<Path> newShards = new ArrayList<>(shards);
+            List<Connection> targets = new ArrayList<>(shards);
+            List<PreparedStatement> inserts = new ArrayList<>(shards);
+            long habits = 0;
+            try {
+                for (int s = 0; s < shards; s++) {
+                    Path path = Paths.get(ShardedStorage.shardPath(catalogPath, s) + ".new");
+                    deleteDatabaseFiles(List.of(path)); // Left over from an interrupted run
+                    newShards.add(path);
+                    Connection conn = DriverManager.getConnection("jdbc:sqlite:" + path);
+                    targets.add(conn);
+                    ShardedStorage.createShardSchema(conn, s, shards, floor);
+                    conn.setAutoCommit(false);
+                    inserts.add(conn.prepareStatement(INSERT_SQL));
+                }
+
+                long[] pending = new long[shards];
+                List<Connection> sources = new ArrayList<>();
+                try {
+                    for (Path old : oldShards) {
+                        sources.add(DriverManager.getConnection("jdbc:sqlite:" + old));
+                    }
+                    for (Connection source : oldShards.isEmpty() ? List.of(catalog) : sources) {
+                        try (Statement stmt = source.createStatement();
+                             ResultSet rs = stmt.executeQuery(SELECT_SQL)) {
+                            while (rs.next()) {
+                                int shard = ShardedStorage.shardFor(rs.getInt("userID"), shards);
+                                bind(inserts.get(shard), rs);
+                                if (++pending[shard] % COMMIT_EVERY == 0) {
+                                    inserts.get(shard).executeBatch();
+                                    targets.get(shard).commit();
+                                }
+                            }
+                        }
+                    }
+                } finally {
+                    for (Connection source : sources) {
+                        source.close();
+                    }
+                }
+
+                for (int s = 0; s < shards; s++) {
+                    inserts.get(s).executeBatch();
+                    HabitRollups.rebuild(targets.get(s));
+                    targets.get(s).commit();
+                    habits += countHabits(targets.get(s));
+                }
+            } finally {
+                for (PreparedStatement insert : inserts) {
+                    insert.close();
+                }
+                for (Connection conn : targets) {
+                    conn.close();
+                }
+            }
+
+            // Swap the new files in; a ReadingHabit migration on the old shards is then moot.
+            // The old files are only deleted once every new one is in place.
+            List<Path> setAside = setAside(oldShards);
+            for (int s = 0; s < shards; s++) {
+                Files.move(newShards.get(s), Paths.get(ShardedStorage.shardPath(catalogPath, s)), StandardCopyOption.REPLACE_EXISTING);
+            }
+            deleteDatabaseFiles(setAside);
+            if (dropSource) {
+                try (Statement stmt = catalog.createStatement()) {
+                    stmt.executeUpdate("DELETE FROM ReadingHabit");
+                }
+                HabitRollups.rebuild(catalog);
+            }
+            return habits;
+        }
+    }
+
+    // Replaces the main database's habits with every shard's, in one transaction
+    private static long mergeInto(Connection catalog, List<Path> oldShards) throws SQLException {
+        catalog.setAutoCommit(false);
+        try (PreparedStatement insert = catalog.prepareStatement(INSERT_SQL)) {
+            try (Statement stmt = catalog.createStatement()) {
+                stmt.executeUpdate("DELETE FROM ReadingHabit"); // Stale since the split; deleted habits would come back
+            }
+            long pending = 0;
+            for (Path old : oldShards) {
+                try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + old);
+                     Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery(SELECT_SQL)) {
+                    while (rs.next()) {
+                        bind(insert, rs);
+                        if (++pending % COMMIT_EVERY == 0) insert.executeBatch();
+                    }
+                }
+            }
+            insert.executeBatch();
+            HabitRollups.rebuild(catalog);
+            catalog.commit();
+        } catch (SQLException | RuntimeException e) {
+            catalog.rollback();
+            throw e;
+        } finally {
+            catalog.setAutoCommit(true);
+        }
+        return countHabits(catalog);
+    }
+
+    private static void bind(PreparedStatement insert, ResultSet rs) throws SQLException {
+        insert.setInt(1, rs.getInt("habitID"));
+        insert.setInt(2, rs.getInt("userID"));
+        insert.setInt(3, rs.getInt("bookID"));
+        insert.setInt(4, rs.getInt("pagesRead"));
+        insert.setObject(5, rs.getObject("submissionMoment")); // Epoch millis or NULL, copied as is
+        insert.addBatch();
+    }
+
+    private static int maxHabitId(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT IFNULL(MAX(habitID), 0) FROM ReadingHabit")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static long countHabits(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM ReadingHabit")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // Renames each database file (with its WAL and shared-memory files) to <name>.old; returns the new names
+    private static List<Path> setAside(List<Path> paths) throws IOException {
+        List<Path> renamed = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            Path old = Paths.get(path + ".old");
+            for (String suffix : List.of("", "-wal", "-shm")) {
+                Path file = Paths.get(path + suffix);
+                if (Files.exists(file)) {
+                    Files.move(file, Paths.get(old + suffix), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            renamed.add(old);
+        }
+        return renamed;
+    }
+
+    // A database file together with its WAL and shared-memory files
+    private static void deleteDatabaseFiles(List<Path> paths) throws IOException {
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(Paths.get(path + "-wal"));
+            Files.deleteIfExists(Paths.get(path + "-shm"));
+        }
+    }
+}
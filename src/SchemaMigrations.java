@@ -0,0 +1,225 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+// Versioned schema migrations, applied in order on startup (Main, AdminCli, the loaders).
+// schema_version has one row per applied migration, so a database that is already current costs a
+// single version read. Each migration runs in its own transaction together with its schema_version
+// row, after taking SQLite's write lock and re-reading the version, so two processes starting at
+// once apply it only once.
+// A database from before schema_version existed may be at any earlier layout (seed.sql's Readinghabits,
+// titles stored on each habit, text timestamps), so every step checks what is there before changing it.
+// Shard files (ShardedStorage) are created directly at the latest ReadingHabit layout and are not
+// migrated here, so a future migration that changes ReadingHabit (or the rollups next to it) has to be
+// applied to them as well; ShardedStorage.upgradeShardSchema does that for the rollups.
+public final class SchemaMigrations {
+
+    @FunctionalInterface
+    private interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    // Append only: a released version number must never change meaning
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Create User, Books and ReadingHabit tables", SchemaMigrations::createTables),
+            new Migration(2, "Add User.Name", SchemaMigrations::addUserName),
+            new Migration(3, "Move book titles into Books (data/normalization.sql)", SchemaMigrations::normalizeBooks),
+            new Migration(4, "Key ReadingHabit by habitID and store submissionMoment as epoch millis",
+                    SubmissionMomentMigration::migrateIfNeeded),
+            new Migration(5, "Index ReadingHabit (bookID, userID)", SchemaMigrations::indexBookUser),
+            new Migration(6, "Create reader sketch tables", SchemaMigrations::createReaderSketchTables),
+            new Migration(7, "Create and backfill daily/monthly rollup tables", SchemaMigrations::createRollupTables));
+
+    public static final int LATEST_VERSION = MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+
+    private static final String CREATE_VERSION_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS schema_version (
+                version INTEGER PRIMARY KEY,
+                description TEXT NOT NULL,
+                appliedAt INTEGER NOT NULL,
+                durationMillis INTEGER NOT NULL
+            )
+            """;
+
+    private SchemaMigrations() {
+    }
+
+    // Brings the database up to date, reporting problems instead of throwing.
+    // Uses a connection without the shards attached, so ReadingHabit here is the main database's table.
+    public static void migrateIfNeeded() {
+        try (Connection conn = DatabaseConnector.connectUnpooled()) {
+            migrate(conn);
+        } catch (SQLException e) {
+            System.err.println("WARNING: Schema migration failed, the database may be out of date: " + e.getMessage());
+        }
+    }
+
+    // Applies every pending migration on conn and returns how many were applied.
+    // Stops at the first failure, which is rolled back; earlier migrations stay applied.
+    public static int migrate(Connection conn) throws SQLException {
+        int current = currentVersion(conn);
+        if (current == LATEST_VERSION) {
+            return 0;
+        }
+        if (current > LATEST_VERSION) {
+            System.out.println("WARNING: Database schema version " + current + " is newer than this build understands ("
+                    + LATEST_VERSION + "); leaving it unchanged.");
+            return 0;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(CREATE_VERSION_TABLE_SQL);
+        }
+
+        int applied = 0;
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version <= current) continue;
+            long start = System.nanoTime();
+            conn.setAutoCommit(false);
+            try {
+                lock(conn);
+                if (currentVersion(conn) >= migration.version) { // Another process got here first
+                    conn.rollback();
+                    continue;
+                }
+                System.out.println("INFO: Applying schema migration " + migration.version + ": " + migration.description + "...");
+                migration.step.apply(conn);
+                record(conn, migration, (System.nanoTime() - start) / 1_000_000);
+                conn.commit();
+                applied++;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw new SQLException("Migration " + migration.version + " (" + migration.description + ") failed: "
+                        + e.getMessage(), e);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        if (applied > 0) {
+            System.out.println("SUCCESS: Database schema is at version " + LATEST_VERSION + ".");
+        }
+        return applied;
+    }
+
+    // 0 for a database without schema_version (new, or from before versioning)
+    public static int currentVersion(Connection conn) throws SQLException {
+        if (!tableExists(conn, "schema_version")) {
+            return 0;
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT IFNULL(MAX(version), 0) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // A no-op write, so the transaction holds the write lock before the version is re-read
+    private static void lock(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE schema_version SET version = version WHERE 0");
+        }
+    }
+
+    private static void record(Connection conn, Migration migration, long durationMillis) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO schema_version (version, description, appliedAt, durationMillis) VALUES (?, ?, ?, ?)")) {
+            pstmt.setInt(1, migration.version);
+            pstmt.setString(2, migration.description);
+            pstmt.setLong(3, System.currentTimeMillis());
+            pstmt.setLong(4, durationMillis);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // --- Migrations ---
+
+    // data/schema.sql for a new database. seed.sql's Readinghabits table is taken over if present.
+    private static void createTables(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            if (tableExists(conn, "Readinghabits") && !tableExists(conn, "ReadingHabit")) {
+                stmt.execute("ALTER TABLE Readinghabits RENAME TO ReadingHabit");
+            }
+            stmt.execute("CREATE TABLE IF NOT EXISTS User (userID INTEGER PRIMARY KEY, age INTEGER, gender TEXT, Name TEXT)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS Books (bookID INTEGER PRIMARY KEY AUTOINCREMENT, title TEXT NOT NULL UNIQUE)");
+            if (!tableExists(conn, "ReadingHabit")) {
+                stmt.execute(String.format(SubmissionMomentMigration.CREATE_TABLE_SQL, "ReadingHabit"));
+            }
+        }
+    }
+
+    private static void addUserName(Connection conn) throws SQLException {
+        if (!hasColumn(conn, "User", "Name")) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE User ADD COLUMN Name TEXT");
+            }
+        }
+    }
+
+    // data/normalization.sql, for habits that still carry their book's title instead of a bookID
+    private static void normalizeBooks(Connection conn) throws SQLException {
+        if (!hasColumn(conn, "ReadingHabit", "book") || hasColumn(conn, "ReadingHabit", "bookID")) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT OR IGNORE INTO Books (title) SELECT DISTINCT book FROM ReadingHabit WHERE book IS NOT NULL");
+            stmt.execute("ALTER TABLE ReadingHabit ADD COLUMN bookID INTEGER REFERENCES Books(bookID)");
+            stmt.execute("UPDATE ReadingHabit SET bookID = (SELECT b.bookID FROM Books b WHERE b.title = ReadingHabit.book)");
+        }
+    }
+
+    // Behind the per-book lookups (e.g. option 6 counting readers of one bookID)
+    private static void indexBookUser(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_readinghabit_book_user ON ReadingHabit (bookID, userID)");
+        }
+    }
+
+    // Storage for ReaderSketches; filled on first use
+    private static void createReaderSketchTables(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(ReaderSketches.CREATE_SKETCH_TABLE_SQL);
+            stmt.execute(ReaderSketches.CREATE_MARKER_TABLE_SQL);
+            stmt.execute(ReaderSketches.CREATE_INFO_TABLE_SQL);
+        }
+    }
+
+    // Storage for HabitRollups, filled from the habits already there
+    private static void createRollupTables(Connection conn) throws SQLException {
+        HabitRollups.createTables(conn);
+        if (tableExists(conn, "ReadingHabit")) {
+            HabitRollups.rebuild(conn);
+        }
+    }
+
+    static boolean tableExists(Connection conn, String table) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ? COLLATE NOCASE")) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT 1 FROM pragma_table_info(?) WHERE name = ? COLLATE NOCASE")) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, column);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// ReadingHabit split across N SQLite files by a hash of userID (-Dbooktracker.shards=N), so habit
+// writes for different users take different write locks. User and Books stay in the main database,
+// which every shard connection ATTACHes as "catalog": unqualified Books/User names resolve there,
+// so title lookups and new books work unchanged on a shard's connection.
+// Each shard has its own connection pool. A user's habits all live on one shard, so per-user queries
+// go to that shard alone and per-user aggregates (distinct readers, multi-book users) add up exactly
+// across shards; scatter() runs a query on every shard in parallel for that.
+//
+// habitIDs must stay unique across shards. IDs up to habitIdFloor (the highest ID when the shards were
+// created by ReshardTool) keep their shard from the reshard; new IDs are allocated on shard s as the
+// numbers above the floor with id % shards == s, so shards never hand out the same ID.
+public class ShardedStorage {
+
+    // Work run against one shard's connection by scatter()
+    @FunctionalInterface
+    public interface ShardQuery<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    // SQLite attaches at most 10 databases to a connection, and the main database attaches every shard
+    public static final int MAX_SHARDS = 10;
+
+    static final String CREATE_INFO_TABLE_SQL =
+            "CREATE TABLE IF NOT EXISTS shard_info (shard INTEGER NOT NULL, shards INTEGER NOT NULL, habitIdFloor INTEGER NOT NULL)";
+
+    private final String catalogPath;
+    private final int shards;
+    private final ConnectionPool[] pools;
+    private final int habitIdFloor;
+    private final ExecutorService executor;
+
+    ShardedStorage(String catalogPath, int shards, int poolSize, long borrowTimeoutMillis,
+                   long validationIntervalMillis, int statementCacheSize, List<String> pragmas) throws SQLException {
+        if (shards < 1 || shards > MAX_SHARDS) {
+            throw new IllegalArgumentException("booktracker.shards must be between 1 and " + MAX_SHARDS + ", got " + shards);
+        }
+        this.catalogPath = catalogPath;
+        this.shards = shards;
+        this.habitIdFloor = prepareShardFiles(catalogPath, shards, pragmas);
+        this.pools = new ConnectionPool[shards];
+        for (int s = 0; s < shards; s++) {
+            List<String> shardPragmas = new ArrayList<>(pragmas);
+            shardPragmas.add("ATTACH DATABASE " + quote(catalogPath) + " AS catalog");
+            pools[s] = new ConnectionPool("jdbc:sqlite:" + shardPath(catalogPath, s), poolSize, borrowTimeoutMillis,
+                    validationIntervalMillis, statementCacheSize, shardPragmas);
+        }
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(shards, runnable -> {
+            Thread thread = new Thread(runnable, "booktracker-shard-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // "Booktracker.db" -> "Booktracker-shard0.db"
+    public static String shardPath(String catalogPath, int shard) {
+        String base = catalogPath.endsWith(".db") ? catalogPath.substring(0, catalogPath.length() - 3) : catalogPath;
+        return base + "-shard" + shard + ".db";
+    }
+
+    // Fibonacci hashing, so consecutive userIDs spread evenly
+    public static int shardFor(int userId, int shards) {
+        int h = userId * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), shards);
+    }
+
+    public int shardFor(int userId) {
+        return shardFor(userId, shards);
+    }
+
+    public int getShardCount() {
+        return shards;
+    }
+
+    public int getHabitIdFloor() {
+        return habitIdFloor;
+    }
+
+    public Connection connect(int shard) throws SQLException {
+        return pools[shard].borrow();
+    }
+
+    public ConnectionPool getPool(int shard) {
+        return pools[shard];
+    }
+
+    // Statements run on every connection to the main database: attach the shards and put a
+    // ReadingHabit view over them in front of the (unused) ReadingHabit table there, so read-only
+    // queries across all users keep working. Writes through the view fail; they go to a shard.
+    List<String> catalogPragmas() {
+        List<String> statements = new ArrayList<>();
+        StringBuilder view = new StringBuilder("CREATE TEMP VIEW ReadingHabit AS ");
+        for (int s = 0; s < shards; s++) {
+            statements.add("ATTACH DATABASE " + quote(shardPath(catalogPath, s)) + " AS shard" + s);
+            if (s > 0) view.append(" UNION ALL ");
+            view.append("SELECT habitID, userID, bookID, pagesRead, submissionMoment FROM shard").append(s).append(".ReadingHabit");
+        }
+        statements.add(view.toString());
+        return statements;
+    }
+
+    // Runs query on every shard at once and returns the results in shard order
+    public <T> List<T> scatter(ShardQuery<T> query) throws SQLException {
+        List<Future<T>> futures = new ArrayList<>(shards);
+        for (int s = 0; s < shards; s++) {
+            int shard = s;
+            futures.add(executor.submit(() -> {
+                try (Connection conn = connect(shard)) {
+                    return query.run(conn);
+                }
+            }));
+        }
+        List<T> results = new ArrayList<>(shards);
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while querying the shards", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new SQLException(cause);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(false);
+            }
+        }
+        return results;
+    }
+
+    // First habitID to hand out on this shard for the caller's open transaction; later ones follow
+    // at steps of getShardCount(). Takes the shard's write lock first, like ReadingHabitDao.lockAndGetMaxHabitId.
+    int lockAndGetNextHabitId(Connection conn, int shard) throws SQLException {
+        long above = Math.max(habitIdFloor, ReadingHabitDao.lockAndGetMaxHabitId(conn)) + 1;
+        long next = above + Math.floorMod(shard - above, (long) shards);
+        if (next > Integer.MAX_VALUE) throw new SQLException("habitIDs exhausted on shard " + shard);
+        return (int) next;
+    }
+
+    // The shard whose allocation range a habitID above the floor falls in, or -1 if it could be on any shard
+    int likelyShardOfHabit(int habitId) {
+        return habitId > habitIdFloor ? habitId % shards : -1;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        for (ConnectionPool pool : pools) {
+            pool.shutdown();
+        }
+    }
+
+    // Creates missing shard files (only for a main database without habits of its own, which need
+    // ReshardTool), checks that existing ones were made for this many shards and brings them up to the
+    // latest layout. Returns the habitID floor.
+    private static int prepareShardFiles(String catalogPath, int shards, List<String> pragmas) throws SQLException {
+        Integer floor = null;
+        for (int s = 0; s < shards; s++) {
+            String path = shardPath(catalogPath, s);
+            if (!Files.exists(Paths.get(path))) {
+                if (floor == null) floor = unshardedHabits(catalogPath);
+                try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + path);
+                     Statement stmt = conn.createStatement()) {
+                    for (String pragma : pragmas) {
+                        stmt.execute(pragma); // Sets the journal mode before anything attaches the file
+                    }
+                    createShardSchema(conn, s, shards, floor);
+                }
+            }
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + path)) {
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT shard, shards, habitIdFloor FROM shard_info")) {
+                    if (!rs.next() || rs.getInt("shard") != s || rs.getInt("shards") != shards) {
+                        throw new SQLException(path + " doesn't belong to a set of " + shards
+                                + " shards; run ReshardTool to re-split the habits");
+                    }
+                    int shardFloor = rs.getInt("habitIdFloor");
+                    if (floor != null && floor != shardFloor) {
+                        throw new SQLException(path + " has habitID floor " + shardFloor + ", other shards " + floor
+                                + "; run ReshardTool to re-split the habits");
+                    }
+                    floor = shardFloor;
+                }
+                upgradeShardSchema(conn);
+            }
+        }
+        return floor;
+    }
+
+    // Floor for brand-new shards: 0, as long as the main database has no habits that would be hidden
+    private static int unshardedHabits(String catalogPath) throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + catalogPath)) {
+            if (!SchemaMigrations.tableExists(conn, "ReadingHabit")) return 0;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM ReadingHabit")) {
+                long habits = rs.next() ? rs.getLong(1) : 0;
+                if (habits > 0) {
+                    throw new SQLException(catalogPath + " holds " + habits + " reading habits; split them into shards with"
+                            + " ReshardTool before starting with booktracker.shards");
+                }
+            }
+        }
+        return 0;
+    }
+
+    // ReadingHabit at the latest schema version, with its indexes and (empty) rollups, plus this shard's shard_info row
+    static void createShardSchema(Connection conn, int shard, int shards, int habitIdFloor) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(String.format(SubmissionMomentMigration.CREATE_TABLE_SQL, "ReadingHabit"));
+            stmt.execute(SubmissionMomentMigration.CREATE_INDEX_SQL);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_readinghabit_book_user ON ReadingHabit (bookID, userID)");
+            stmt.execute(CREATE_INFO_TABLE_SQL);
+        }
+        HabitRollups.createTables(conn);
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO shard_info (shard, shards, habitIdFloor) VALUES (?, ?, ?)")) {
+            pstmt.setInt(1, shard);
+            pstmt.setInt(2, shards);
+            pstmt.setInt(3, habitIdFloor);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // Schema migration 7 for a shard made before it: the rollup tables, backfilled from the shard's habits.
+    // Without them, writes on a shard connection would reach the main database's rollups through the attach.
+    private static void upgradeShardSchema(Connection conn) throws SQLException {
+        if (SchemaMigrations.tableExists(conn, "user_day_rollup")) return;
+        conn.setAutoCommit(false);
+        try {
+            HabitRollups.createTables(conn);
+            HabitRollups.rebuild(conn);
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static String quote(String path) {
+        return "'" + path.replace("'", "''") + "'";
+    }
+}
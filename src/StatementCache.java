@@ -0,0 +1,178 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// LRU cache of prepared statements for one physical connection, keyed by SQL text.
+// The pool routes Connection.prepareStatement() through here, so the DAOs keep their
+// usual try-with-resources code: closing a cached statement only clears its parameters
+// and hands it back, and SQLite does not have to recompile the query next time.
+public class StatementCache {
+
+    // Totals across every connection's cache
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+
+    private final Connection physical;
+    private final int maxSize;
+    private final LinkedHashMap<String, Entry> entries;
+
+    public StatementCache(Connection physical, int maxSize) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true); // access order = LRU
+    }
+
+    // autoGeneratedKeys is Statement.NO_GENERATED_KEYS or Statement.RETURN_GENERATED_KEYS
+    public PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        if (maxSize <= 0) {
+            return physical.prepareStatement(sql, autoGeneratedKeys);
+        }
+        String key = autoGeneratedKeys + ":" + sql;
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.inUse) {
+            hits.increment();
+        } else if (entry != null) {
+            // Same SQL already open on this connection (e.g. nested iteration) - don't share it
+            misses.increment();
+            return physical.prepareStatement(sql, autoGeneratedKeys);
+        } else {
+            misses.increment();
+            entry = new Entry(physical.prepareStatement(sql, autoGeneratedKeys));
+            entries.put(key, entry);
+            evictOverflow();
+        }
+        entry.inUse = true;
+        return entry.newHandle();
+    }
+
+    // Called when the connection goes back to the pool; anything still marked
+    // in use was leaked by its borrower and can be handed out again
+    public void releaseAll() {
+        for (Entry entry : entries.values()) {
+            entry.inUse = false;
+        }
+    }
+
+    public void closeAll() {
+        for (Entry entry : entries.values()) {
+            entry.closeQuietly();
+        }
+        entries.clear();
+    }
+
+    public static CacheStats getStats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            Entry eldest = it.next();
+            if (eldest.inUse) continue; // Still being used by the current borrower
+            it.remove();
+            eldest.closeQuietly();
+            evictions.increment();
+        }
+    }
+
+    private static final class Entry {
+        private final PreparedStatement statement;
+        private boolean inUse = false;
+
+        Entry(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        PreparedStatement newHandle() {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    new Handle(this));
+        }
+
+        void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                System.err.println("WARNING: Error closing cached statement: " + e.getMessage());
+            }
+        }
+    }
+
+    // Statement handed to the DAO; close() returns it to the cache instead of finalizing it
+    private static final class Handle implements InvocationHandler {
+        private final Entry entry;
+        private boolean closed = false;
+
+        Handle(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        try {
+                            entry.statement.clearParameters();
+                            entry.statement.clearBatch();
+                        } finally {
+                            entry.inUse = false;
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || entry.statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + entry.statement + "]";
+                default:
+                    if (closed) throw new SQLException("Statement has already been closed");
+                    try {
+                        return method.invoke(entry.statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    public static class CacheStats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        CacheStats(long hits, long misses, long evictions) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getEvictions() { return evictions; }
+
+        public double getHitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("StatementCacheStats [hits=%d, misses=%d, evictions=%d, hitRatio=%.2f]",
+                    hits, misses, evictions, getHitRatio());
+        }
+    }
+}
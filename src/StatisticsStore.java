@@ -0,0 +1,451 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Running aggregates behind menu options 5, 7 and 8, and the top-N leaderboards.
+// Loaded from the database once (on first use or rebuild()), then kept up to date by the
+// DAOs as users and habits are added or deleted, so the statistics are O(1) reads
+// instead of full-table scans. Writes made outside this application are not seen until
+// the next rebuild(). Each update carries the number of the commit that made it (CommitSequence),
+// and updates the last rebuild's scan already saw are skipped. Rebuilds scan into a new instance
+// without holding this one, so updates don't wait for the scan; those reported meanwhile are kept
+// and applied to the new aggregates before they are swapped in.
+// Leaderboards: all-time scores are kept in score order (RankedCounter); time windows are
+// merged from per-day totals, which are kept for the last retentionDays days only.
+public class StatisticsStore {
+
+    private static final StatisticsStore instance = new StatisticsStore();
+    private static final int RETENTION_DAYS = Integer.getInteger("booktracker.leaderboard.retentionDays", 90);
+
+    private final Object rebuildLock = new Object(); // Keeps rebuilds and verifications in order
+    private boolean loaded = false;
+    private long scannedThrough = 0; // Last commit seen by the last rebuild's scan
+    private List<Change> rebuildChanges = null; // Updates reported while a rebuild or verification scans
+    private long ageSum = 0;
+    private long usersWithAge = 0;
+    private long totalPages = 0;
+    // userID -> (bookID -> number of habits), only for users with at least one habit
+    private Map<Integer, Map<Integer, Integer>> habitsPerUserBook = new HashMap<>();
+    private int usersWithMultipleBooks = 0;
+
+    private RankedCounter readersPerBook = new RankedCounter();
+    private RankedCounter pagesPerBook = new RankedCounter();
+    private RankedCounter pagesPerUser = new RankedCounter();
+    // UTC epoch day -> totals of the habits submitted that day, from retainedFromDay on
+    private TreeMap<Long, DayTotals> days = new TreeMap<>();
+    private long retainedFromDay = Long.MAX_VALUE;
+
+    private StatisticsStore() {
+    }
+
+    public static StatisticsStore get() {
+        return instance;
+    }
+
+    // --- Reads ---
+
+    // Returns -1.0 when there are no users, like UserDao.getMeanUserAge always has
+    public double getMeanUserAge() throws SQLException {
+        ensureLoaded();
+        synchronized (this) {
+            return meanUserAge();
+        }
+    }
+
+    public long getTotalPagesRead() throws SQLException {
+        ensureLoaded();
+        synchronized (this) {
+            return totalPages;
+        }
+    }
+
+    public int getUsersReadingMultipleBooks() throws SQLException {
+        ensureLoaded();
+        synchronized (this) {
+            return usersWithMultipleBooks;
+        }
+    }
+
+    // All-time top n; titles are left for the caller to fill in
+    public List<LeaderboardEntry> getTop(LeaderboardEntry.Board board, int n) throws SQLException {
+        ensureLoaded();
+        synchronized (this) {
+            RankedCounter counter = board == LeaderboardEntry.Board.BOOKS_BY_READERS ? readersPerBook
+                    : board == LeaderboardEntry.Board.BOOKS_BY_PAGES ? pagesPerBook : pagesPerUser;
+            return entries(counter.top(n));
+        }
+    }
+
+    // Top n over habits submitted on days [fromDay, toDay) (UTC epoch days), or null when that
+    // window reaches back before the days kept in memory
+    public List<LeaderboardEntry> getTop(LeaderboardEntry.Board board, int n, long fromDay, long toDay) throws SQLException {
+        ensureLoaded();
+        synchronized (this) {
+            return windowTop(board, n, fromDay, toDay);
+        }
+    }
+
+    private List<LeaderboardEntry> windowTop(LeaderboardEntry.Board board, int n, long fromDay, long toDay) {
+        expireOldDays();
+        if (fromDay < retainedFromDay) return null;
+
+        Map<Integer, Long> scores = new HashMap<>();
+        if (board == LeaderboardEntry.Board.BOOKS_BY_READERS) {
+            // Distinct readers can't be summed across days; union each book's readers instead
+            Map<Integer, Set<Integer>> readers = new HashMap<>();
+            for (DayTotals day : days.subMap(fromDay, toDay).values()) {
+                for (Map.Entry<Integer, Map<Integer, Integer>> book : day.habitsPerBookUser.entrySet()) {
+                    readers.computeIfAbsent(book.getKey(), id -> new HashSet<>()).addAll(book.getValue().keySet());
+                }
+            }
+            readers.forEach((bookId, users) -> scores.put(bookId, (long) users.size()));
+        } else {
+            boolean books = board == LeaderboardEntry.Board.BOOKS_BY_PAGES;
+            for (DayTotals day : days.subMap(fromDay, toDay).values()) {
+                (books ? day.pagesPerBook : day.pagesPerUser).forEach((id, pages) -> scores.merge(id, pages, Long::sum));
+            }
+        }
+        return entries(RankedCounter.topOf(scores, n));
+    }
+
+    // --- Incremental updates (no-ops until the store has been loaded); commit is from CommitSequence ---
+
+    public void userAdded(long commit, int age) {
+        record(new Change(commit, Change.Kind.USER_ADDED, 0, 0, age, null));
+    }
+
+    public void habitAdded(long commit, int userId, int bookId, int pagesRead, Instant submissionMoment) {
+        record(new Change(commit, Change.Kind.HABIT_ADDED, userId, bookId, pagesRead, submissionMoment));
+    }
+
+    public void habitRemoved(long commit, int userId, int bookId, int pagesRead, Instant submissionMoment) {
+        record(new Change(commit, Change.Kind.HABIT_REMOVED, userId, bookId, pagesRead, submissionMoment));
+    }
+
+    // Forget everything; the next read reloads from the database (used after bulk loads).
+    // A rebuild in progress is dropped.
+    public synchronized void invalidate() {
+        loaded = false;
+        rebuildChanges = null;
+    }
+
+    private synchronized void record(Change change) {
+        if (rebuildChanges != null) {
+            rebuildChanges.add(change); // For the aggregates being scanned
+        }
+        if (loaded && change.commit > scannedThrough) {
+            apply(change);
+        }
+    }
+
+    private void apply(Change change) {
+        if (change.kind == Change.Kind.USER_ADDED) {
+            ageSum += change.pagesRead;
+            usersWithAge++;
+        } else if (change.kind == Change.Kind.HABIT_ADDED) {
+            addHabit(change.userId, change.bookId, change.pagesRead, change.submissionMoment);
+        } else {
+            removeHabit(change.userId, change.bookId, change.pagesRead, change.submissionMoment);
+        }
+    }
+
+    private void addHabit(int userId, int bookId, int pagesRead, Instant submissionMoment) {
+        totalPages += pagesRead;
+        Map<Integer, Integer> books = habitsPerUserBook.computeIfAbsent(userId, id -> new HashMap<>());
+        int before = books.size();
+        if (books.merge(bookId, 1, Integer::sum) == 1) {
+            readersPerBook.add(bookId, 1); // First habit of this user for this book
+        }
+        if (before == 1 && books.size() == 2) usersWithMultipleBooks++;
+        pagesPerBook.add(bookId, pagesRead);
+        pagesPerUser.add(userId, pagesRead);
+        DayTotals day = retainedDay(submissionMoment, true);
+        if (day != null) day.add(userId, bookId, pagesRead);
+    }
+
+    private void removeHabit(int userId, int bookId, int pagesRead, Instant submissionMoment) {
+        totalPages -= pagesRead;
+        Map<Integer, Integer> books = habitsPerUserBook.get(userId);
+        DayTotals day = retainedDay(submissionMoment, false);
+        if (books == null || !books.containsKey(bookId) || (day == null && isRetained(submissionMoment))) {
+            loaded = false; // Out of step with the database; reload on next read
+            return;
+        }
+        int before = books.size();
+        if (books.merge(bookId, -1, Integer::sum) == 0) {
+            books.remove(bookId);
+            readersPerBook.add(bookId, -1);
+        }
+        if (before == 2 && books.size() == 1) usersWithMultipleBooks--;
+        if (books.isEmpty()) habitsPerUserBook.remove(userId);
+        pagesPerBook.add(bookId, -pagesRead);
+        pagesPerUser.add(userId, -pagesRead);
+        if (day != null && !day.remove(userId, bookId, pagesRead)) {
+            loaded = false;
+        }
+    }
+
+    // --- Rebuild / verification ---
+
+    public void rebuild() throws SQLException {
+        synchronized (rebuildLock) {
+            StatisticsStore scanned = scan(); // Reads keep the running values until the swap
+            synchronized (this) {
+                if (catchUp(scanned)) install(scanned);
+            }
+        }
+    }
+
+    // A new instance holding the aggregates as of a read transaction started now, scanned without
+    // holding this one; updates reported from here on are kept in rebuildChanges for catchUp()
+    private StatisticsStore scan() throws SQLException {
+        synchronized (this) {
+            rebuildChanges = new ArrayList<>();
+        }
+        StatisticsStore scanned = new StatisticsStore();
+        scanned.retainedFromDay = firstRetainedDay();
+        // All three queries read one snapshot, so updates for later commits can be applied on top
+        try (Connection conn = DatabaseConnector.connect()) {
+            conn.setAutoCommit(false);
+            try {
+                scanned.scannedThrough = CommitSequence.startScan(conn);
+                scanned.scan(conn);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException e) {
+            synchronized (this) {
+                rebuildChanges = null;
+            }
+            throw e;
+        }
+        scanned.loaded = true;
+        return scanned;
+    }
+
+    // Holding this: applies the updates the scan missed to it; false if invalidate() dropped them
+    private boolean catchUp(StatisticsStore scanned) {
+        List<Change> changes = rebuildChanges;
+        rebuildChanges = null;
+        if (changes == null) return false;
+        for (Change change : changes) {
+            if (change.commit > scanned.scannedThrough) scanned.apply(change);
+        }
+        return true;
+    }
+
+    // Holding this: takes over the scanned aggregates
+    private void install(StatisticsStore scanned) {
+        ageSum = scanned.ageSum;
+        usersWithAge = scanned.usersWithAge;
+        totalPages = scanned.totalPages;
+        habitsPerUserBook = scanned.habitsPerUserBook;
+        usersWithMultipleBooks = scanned.usersWithMultipleBooks;
+        readersPerBook = scanned.readersPerBook;
+        pagesPerBook = scanned.pagesPerBook;
+        pagesPerUser = scanned.pagesPerUser;
+        days = scanned.days;
+        retainedFromDay = scanned.retainedFromDay;
+        scannedThrough = scanned.scannedThrough;
+        loaded = scanned.loaded; // False if an update it caught up on was out of step
+    }
+
+    // The aggregates as of conn's read transaction
+    private void scan(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(age) AS user_count, IFNULL(SUM(age), 0) AS age_sum FROM User");
+             ResultSet rs = pstmt.executeQuery()) {
+            if (rs.next()) {
+                usersWithAge = rs.getLong("user_count");
+                ageSum = rs.getLong("age_sum");
+            }
+        }
+        String habitSql = """
+                          SELECT userID, bookID, COUNT(*) AS habit_count, IFNULL(SUM(pagesRead), 0) AS pages
+                          FROM ReadingHabit
+                          GROUP BY userID, bookID
+                          """;
+        try (PreparedStatement pstmt = conn.prepareStatement(habitSql);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                int userId = rs.getInt("userID");
+                int bookId = rs.getInt("bookID");
+                long pages = rs.getLong("pages");
+                totalPages += pages;
+                habitsPerUserBook.computeIfAbsent(userId, id -> new HashMap<>())
+                        .put(bookId, rs.getInt("habit_count"));
+                readersPerBook.add(bookId, 1); // One row per distinct (user, book)
+                pagesPerBook.add(bookId, pages);
+                pagesPerUser.add(userId, pages);
+            }
+        }
+        for (Map<Integer, Integer> books : habitsPerUserBook.values()) {
+            if (books.size() > 1) usersWithMultipleBooks++;
+        }
+        String recentSql = "SELECT userID, bookID, pagesRead, submissionMoment FROM ReadingHabit WHERE submissionMoment >= ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(recentSql)) {
+            pstmt.setLong(1, LocalDate.ofEpochDay(retainedFromDay).atStartOfDay(SubmissionMoments.ZONE).toInstant().toEpochMilli());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                ResultSet row = QueryMetrics.columns(rs); // Columns by position on this full scan
+                while (rs.next()) {
+                    long day = Math.floorDiv(row.getLong(4), MILLIS_PER_DAY);
+                    days.computeIfAbsent(day, d -> new DayTotals())
+                            .add(row.getInt(1), row.getInt(2), row.getInt(3));
+                }
+            }
+        }
+    }
+
+    // Compares the running values with a fresh scan, brought up to date with the updates reported
+    // during it, and installs the scan if they disagree
+    public VerificationReport verifyAndRebuild() throws SQLException {
+        synchronized (rebuildLock) {
+            ensureLoaded();
+            StatisticsStore scanned = scan();
+            synchronized (this) {
+                boolean current = catchUp(scanned);
+                VerificationReport report = new VerificationReport(meanUserAge(), scanned.meanUserAge(), totalPages,
+                        scanned.totalPages, usersWithMultipleBooks, scanned.usersWithMultipleBooks);
+                if (current && !report.isConsistent()) install(scanned);
+                return report;
+            }
+        }
+    }
+
+    private void ensureLoaded() throws SQLException {
+        synchronized (this) {
+            if (loaded) return;
+        }
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                if (loaded) return; // Rebuilt while this thread waited
+            }
+            rebuild();
+        }
+    }
+
+    private double meanUserAge() {
+        return usersWithAge == 0 ? -1.0 : (double) ageSum / usersWithAge;
+    }
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private static long firstRetainedDay() {
+        return LocalDate.now(SubmissionMoments.ZONE).toEpochDay() - RETENTION_DAYS + 1;
+    }
+
+    // Drop days that have slid out of the retention period
+    private void expireOldDays() {
+        long first = firstRetainedDay();
+        if (first > retainedFromDay) {
+            days.headMap(first).clear();
+            retainedFromDay = first;
+        }
+    }
+
+    private boolean isRetained(Instant moment) {
+        return moment != null && Math.floorDiv(moment.toEpochMilli(), MILLIS_PER_DAY) >= retainedFromDay;
+    }
+
+    // Totals for the habit's day, or null if it has no moment or is older than the retained days
+    private DayTotals retainedDay(Instant moment, boolean create) {
+        if (!isRetained(moment)) return null;
+        long day = Math.floorDiv(moment.toEpochMilli(), MILLIS_PER_DAY);
+        return create ? days.computeIfAbsent(day, d -> new DayTotals()) : days.get(day);
+    }
+
+    private static List<LeaderboardEntry> entries(List<RankedCounter.Ranked> ranked) {
+        List<LeaderboardEntry> entries = new ArrayList<>(ranked.size());
+        for (RankedCounter.Ranked r : ranked) {
+            entries.add(new LeaderboardEntry(entries.size() + 1, r.id, null, r.score));
+        }
+        return entries;
+    }
+
+    // Pages and (user, book) habit counts for one day
+    private static final class DayTotals {
+        final Map<Integer, Long> pagesPerBook = new HashMap<>();
+        final Map<Integer, Long> pagesPerUser = new HashMap<>();
+        final Map<Integer, Map<Integer, Integer>> habitsPerBookUser = new HashMap<>();
+
+        void add(int userId, int bookId, int pagesRead) {
+            pagesPerBook.merge(bookId, (long) pagesRead, Long::sum);
+            pagesPerUser.merge(userId, (long) pagesRead, Long::sum);
+            habitsPerBookUser.computeIfAbsent(bookId, id -> new HashMap<>()).merge(userId, 1, Integer::sum);
+        }
+
+        // False if the habit wasn't counted here
+        boolean remove(int userId, int bookId, int pagesRead) {
+            Map<Integer, Integer> users = habitsPerBookUser.get(bookId);
+            if (users == null || !users.containsKey(userId)) return false;
+            if (users.merge(userId, -1, Integer::sum) == 0) users.remove(userId);
+            if (users.isEmpty()) habitsPerBookUser.remove(bookId);
+            pagesPerBook.merge(bookId, (long) -pagesRead, Long::sum);
+            pagesPerUser.merge(userId, (long) -pagesRead, Long::sum);
+            return true;
+        }
+    }
+
+    // An update as reported by the DAOs; pagesRead holds the age for USER_ADDED
+    private static final class Change {
+        enum Kind { USER_ADDED, HABIT_ADDED, HABIT_REMOVED }
+
+        final long commit;
+        final Kind kind;
+        final int userId;
+        final int bookId;
+        final int pagesRead;
+        final Instant submissionMoment;
+
+        Change(long commit, Kind kind, int userId, int bookId, int pagesRead, Instant submissionMoment) {
+            this.commit = commit;
+            this.kind = kind;
+            this.userId = userId;
+            this.bookId = bookId;
+            this.pagesRead = pagesRead;
+            this.submissionMoment = submissionMoment;
+        }
+    }
+
+    public static class VerificationReport {
+        private final double storedMeanAge;
+        private final double sqlMeanAge;
+        private final long storedTotalPages;
+        private final long sqlTotalPages;
+        private final int storedMultiBookUsers;
+        private final int sqlMultiBookUsers;
+
+        VerificationReport(double storedMeanAge, double sqlMeanAge, long storedTotalPages, long sqlTotalPages,
+                           int storedMultiBookUsers, int sqlMultiBookUsers) {
+            this.storedMeanAge = storedMeanAge;
+            this.sqlMeanAge = sqlMeanAge;
+            this.storedTotalPages = storedTotalPages;
+            this.sqlTotalPages = sqlTotalPages;
+            this.storedMultiBookUsers = storedMultiBookUsers;
+            this.sqlMultiBookUsers = sqlMultiBookUsers;
+        }
+
+        public boolean isConsistent() {
+            return Math.abs(storedMeanAge - sqlMeanAge) < 1e-9
+                    && storedTotalPages == sqlTotalPages
+                    && storedMultiBookUsers == sqlMultiBookUsers;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s %15s %15s%n", "Statistic", "Running value", "SQL value")
+                    + String.format("%-28s %15.2f %15.2f%n", "Mean user age", storedMeanAge, sqlMeanAge)
+                    + String.format("%-28s %15d %15d%n", "Total pages read", storedTotalPages, sqlTotalPages)
+                    + String.format("%-28s %15d %15d", "Users reading >1 book", storedMultiBookUsers, sqlMultiBookUsers);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// SQLite storage settings applied to every new pooled connection (see DatabaseConnector).
+// Pick a preset with -Dbooktracker.storage.profile=wal|legacy, then override single settings with
+// -Dbooktracker.sqlite.<setting>=..., e.g. -Dbooktracker.sqlite.synchronous=FULL.
+//   wal    (default) WAL journal, so readers don't block behind the writer; synchronous=NORMAL
+//          (commits skip the fsync, the WAL is synced at checkpoints), memory-mapped reads, temp
+//          tables in memory, and a background WAL checkpoint.
+//   legacy the original rollback journal with a full fsync on every commit.
+public final class StorageProfile {
+
+    public static final String WAL = "wal";
+    public static final String LEGACY = "legacy";
+
+    private static final Set<String> JOURNAL_MODES = Set.of("DELETE", "TRUNCATE", "PERSIST", "MEMORY", "WAL", "OFF");
+    private static final Set<String> SYNCHRONOUS_LEVELS = Set.of("OFF", "NORMAL", "FULL", "EXTRA");
+    private static final Set<String> TEMP_STORES = Set.of("DEFAULT", "FILE", "MEMORY");
+
+    private final String name;
+    private final String journalMode;
+    private final String synchronous;
+    private final long mmapSizeBytes;
+    private final int cacheSizeKib;
+    private final String tempStore;
+    private final int busyTimeoutMillis;
+    private final int walAutocheckpointPages;
+    private final long checkpointIntervalMillis;
+
+    public StorageProfile(String name, String journalMode, String synchronous, long mmapSizeBytes, int cacheSizeKib,
+                          String tempStore, int busyTimeoutMillis, int walAutocheckpointPages, long checkpointIntervalMillis) {
+        this.name = name;
+        this.journalMode = checkOneOf("journalMode", journalMode, JOURNAL_MODES);
+        this.synchronous = checkOneOf("synchronous", synchronous, SYNCHRONOUS_LEVELS);
+        this.tempStore = checkOneOf("tempStore", tempStore, TEMP_STORES);
+        if (mmapSizeBytes < 0 || cacheSizeKib < 0 || busyTimeoutMillis < 0 || walAutocheckpointPages < 0 || checkpointIntervalMillis < 0) {
+            throw new IllegalArgumentException("Storage profile sizes and timeouts must be >= 0");
+        }
+        this.mmapSizeBytes = mmapSizeBytes;
+        this.cacheSizeKib = cacheSizeKib;
+        this.busyTimeoutMillis = busyTimeoutMillis;
+        this.walAutocheckpointPages = walAutocheckpointPages;
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+    }
+
+    public static StorageProfile wal() {
+        return new StorageProfile(WAL, "WAL", "NORMAL", 256L * 1024 * 1024, 16_000, "MEMORY", 5_000, 1_000, 30_000);
+    }
+
+    public static StorageProfile legacy() {
+        return new StorageProfile(LEGACY, "DELETE", "FULL", 0, 8_000, "DEFAULT", 5_000, 0, 0);
+    }
+
+    // Preset from booktracker.storage.profile, with any booktracker.sqlite.* overrides applied
+    public static StorageProfile fromSystemProperties() {
+        String preset = System.getProperty("booktracker.storage.profile", WAL).trim().toLowerCase(Locale.ROOT);
+        StorageProfile base;
+        if (preset.equals(WAL)) {
+            base = wal();
+        } else if (preset.equals(LEGACY)) {
+            base = legacy();
+        } else {
+            throw new IllegalArgumentException("Unknown booktracker.storage.profile '" + preset + "' (expected wal or legacy)");
+        }
+        return new StorageProfile(base.name,
+                System.getProperty("booktracker.sqlite.journalMode", base.journalMode),
+                System.getProperty("booktracker.sqlite.synchronous", base.synchronous),
+                Long.getLong("booktracker.sqlite.mmapSize", base.mmapSizeBytes),
+                Integer.getInteger("booktracker.sqlite.cacheSizeKib", base.cacheSizeKib),
+                System.getProperty("booktracker.sqlite.tempStore", base.tempStore),
+                Integer.getInteger("booktracker.sqlite.busyTimeoutMillis", base.busyTimeoutMillis),
+                Integer.getInteger("booktracker.sqlite.walAutocheckpoint", base.walAutocheckpointPages),
+                Long.getLong("booktracker.sqlite.checkpointIntervalMillis", base.checkpointIntervalMillis));
+    }
+
+    // PRAGMAs for ConnectionPool, run once per physical connection
+    public List<String> pragmas() {
+        List<String> pragmas = new ArrayList<>();
+        pragmas.add("PRAGMA busy_timeout = " + busyTimeoutMillis); // First, so switching journal mode can wait for locks
+        pragmas.add("PRAGMA journal_mode = " + journalMode);       // Persistent in the file; a no-op once set
+        pragmas.add("PRAGMA synchronous = " + synchronous);
+        pragmas.add("PRAGMA cache_size = -" + cacheSizeKib);       // Negative = KiB rather than pages
+        pragmas.add("PRAGMA mmap_size = " + mmapSizeBytes);
+        pragmas.add("PRAGMA temp_store = " + tempStore);
+        if (isWal()) {
+            pragmas.add("PRAGMA wal_autocheckpoint = " + walAutocheckpointPages);
+        }
+        return pragmas;
+    }
+
+    public boolean isWal() {
+        return "WAL".equals(journalMode);
+    }
+
+    public String getName() { return name; }
+    public String getJournalMode() { return journalMode; }
+    public String getSynchronous() { return synchronous; }
+    public long getMmapSizeBytes() { return mmapSizeBytes; }
+    public int getCacheSizeKib() { return cacheSizeKib; }
+    public String getTempStore() { return tempStore; }
+    public int getBusyTimeoutMillis() { return busyTimeoutMillis; }
+    public int getWalAutocheckpointPages() { return walAutocheckpointPages; }
+
+    // Period of the background PASSIVE checkpoint; 0 leaves checkpointing to SQLite
+    public long getCheckpointIntervalMillis() { return checkpointIntervalMillis; }
+
+    @Override
+    public String toString() {
+        return String.format("%s (journal_mode=%s, synchronous=%s, mmap_size=%d MB, cache_size=%d KiB, temp_store=%s, busy_timeout=%d ms%s)",
+                name, journalMode, synchronous, mmapSizeBytes / (1024 * 1024), cacheSizeKib, tempStore, busyTimeoutMillis,
+                isWal() ? ", checkpoint every " + checkpointIntervalMillis + " ms" : "");
+    }
+
+    private static String checkOneOf(String setting, String value, Set<String> allowed) {
+        String normalized = value.trim().toUpperCase(Locale.ROOT);
+        if (!allowed.contains(normalized)) {
+            throw new IllegalArgumentException("Invalid SQLite " + setting + " '" + value + "', expected one of " + allowed);
+        }
+        return normalized;
+    }
+}
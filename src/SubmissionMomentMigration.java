@@ -0,0 +1,138 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// One-off migration of ReadingHabit.submissionMoment from "M/d/yyyy H:mm" text to epoch milliseconds.
+// SQLite can't change a column's type in place, so the table is rebuilt:
+//   ReadingHabit(habitID INTEGER PRIMARY KEY, userID, bookID, pagesRead, submissionMoment INTEGER)
+// plus a (userID, submissionMoment) index that serves per-user ordering and time-range queries.
+// Making habitID the primary key also gives deleteHabitById an index. Runs inside the schema migration's transaction.
+public final class SubmissionMomentMigration {
+
+    static final String CREATE_TABLE_SQL = """
+            CREATE TABLE %s (
+                habitID INTEGER PRIMARY KEY,
+                userID INTEGER,
+                bookID INTEGER REFERENCES Books(bookID),
+                pagesRead INTEGER,
+                submissionMoment INTEGER
+            )
+            """;
+    static final String CREATE_INDEX_SQL =
+            "CREATE INDEX IF NOT EXISTS idx_readinghabit_user_moment ON ReadingHabit (userID, submissionMoment)";
+
+    private static final int BATCH_SIZE = 1_000;
+
+    private SubmissionMomentMigration() {
+    }
+
+    // Schema migration 4 (see SchemaMigrations), which owns the transaction on conn
+    static void migrateIfNeeded(Connection conn) throws SQLException {
+        if (!SchemaMigrations.tableExists(conn, "ReadingHabit")) {
+            return; // Nothing to migrate yet
+        }
+        if (isMigrated(conn)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(CREATE_INDEX_SQL);
+            }
+            return;
+        }
+        int renumbered = migrate(conn);
+        if (renumbered > 0) {
+            System.out.println("INFO: " + renumbered + " habits without a unique habitID were given new IDs.");
+        }
+    }
+
+    // Done once habitID is the primary key and submissionMoment is declared INTEGER
+    private static boolean isMigrated(Connection conn) throws SQLException {
+        boolean habitIdIsKey = false;
+        boolean momentIsInteger = false;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(ReadingHabit)")) {
+            while (rs.next()) {
+                String column = rs.getString("name");
+                if ("habitID".equalsIgnoreCase(column)) {
+                    habitIdIsKey = rs.getInt("pk") == 1;
+                } else if ("submissionMoment".equalsIgnoreCase(column)) {
+                    momentIsInteger = "INTEGER".equalsIgnoreCase(rs.getString("type"));
+                }
+            }
+        }
+        return habitIdIsKey && momentIsInteger;
+    }
+
+    private static int migrate(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS ReadingHabit_migrated");
+            stmt.execute(String.format(CREATE_TABLE_SQL, "ReadingHabit_migrated"));
+        }
+
+        // Rows whose habitID is NULL or repeated get a fresh ID after all the others are in
+        List<Object[]> renumber = new ArrayList<>();
+        int unparseable = 0;
+        String selectSql = "SELECT habitID, userID, bookID, pagesRead, submissionMoment FROM ReadingHabit ORDER BY habitID";
+        String insertSql = "INSERT INTO ReadingHabit_migrated (habitID, userID, bookID, pagesRead, submissionMoment) VALUES (?, ?, ?, ?, ?)";
+
+        try (Statement select = conn.createStatement();
+             ResultSet rs = select.executeQuery(selectSql);
+             PreparedStatement insert = conn.prepareStatement(insertSql)) {
+            Long previousId = null;
+            int pending = 0;
+            while (rs.next()) {
+                Object habitId = rs.getObject("habitID");
+                Object[] row = {habitId, rs.getObject("userID"), rs.getObject("bookID"), rs.getObject("pagesRead"), null};
+                try {
+                    Instant moment = SubmissionMoments.parse(rs.getString("submissionMoment"));
+                    row[4] = moment == null ? null : moment.toEpochMilli();
+                } catch (IllegalArgumentException e) {
+                    unparseable++;
+                }
+
+                boolean repeated = habitId != null && previousId != null && ((Number) habitId).longValue() == previousId;
+                if (habitId == null || repeated) {
+                    row[0] = null;
+                    renumber.add(row);
+                    continue;
+                }
+                previousId = ((Number) habitId).longValue();
+                bind(insert, row);
+                insert.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    insert.executeBatch();
+                    pending = 0;
+                }
+            }
+            for (Object[] row : renumber) {
+                bind(insert, row);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE ReadingHabit");
+            stmt.execute("ALTER TABLE ReadingHabit_migrated RENAME TO ReadingHabit");
+            stmt.execute(CREATE_INDEX_SQL);
+        }
+        if (unparseable > 0) {
+            System.out.println("WARNING: " + unparseable + " submissionMoment values could not be parsed and were set to NULL.");
+        }
+        return renumber.size();
+    }
+
+    private static void bind(PreparedStatement insert, Object[] row) throws SQLException {
+        for (int i = 0; i < row.length; i++) {
+            if (row[i] == null) {
+                insert.setNull(i + 1, Types.INTEGER);
+            } else {
+                insert.setLong(i + 1, ((Number) row[i]).longValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+// Conversions for ReadingHabit.submissionMoment.
+// The database stores it as epoch milliseconds (INTEGER) so it sorts and range-scans correctly;
+// the CSV files and the menu use the original "M/d/yyyy H:mm" text (e.g. "2/8/2023 19:49").
+// Those wall-clock values carry no zone, so they are read and shown as UTC.
+public final class SubmissionMoments {
+
+    public static final ZoneId ZONE = ZoneOffset.UTC;
+    public static final DateTimeFormatter CSV_FORMAT = DateTimeFormatter.ofPattern("M/d/yyyy H:mm");
+
+    private SubmissionMoments() {
+    }
+
+    // Accepts the CSV format, ISO-8601 instants or epoch milliseconds; null/blank gives null
+    public static Instant parse(String text) {
+        if (text == null || text.isBlank()) return null;
+        String value = text.trim();
+        try {
+            return LocalDateTime.parse(value, CSV_FORMAT).atZone(ZONE).toInstant();
+        } catch (DateTimeParseException e) {
+            // Fall through to the other accepted forms
+        }
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            // Fall through
+        }
+        try {
+            return Instant.ofEpochMilli(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unrecognised submissionMoment: '" + text + "'");
+        }
+    }
+
+    public static String format(Instant moment) {
+        return moment == null ? "" : CSV_FORMAT.format(moment.atZone(ZONE));
+    }
+}
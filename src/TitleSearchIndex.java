@@ -0,0 +1,398 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+// In-memory search index over Books.title (see BookDao.searchTitles).
+// Titles are split into normalized tokens (lower case, accents and punctuation removed). Each
+// token keeps a sorted posting list of bookIDs; the sorted token dictionary answers prefix
+// lookups, and a trigram index over the dictionary finds tokens within a small edit distance
+// of a misspelled query token. A query matches books that contain every query token: exactly,
+// as a prefix (the last token, or any token that is not a whole word), or fuzzily (only tokens
+// that match nothing otherwise). Results are ranked by match quality, then by shorter title.
+// Books added since the last search are picked up from the bookID watermark; title changes are
+// applied by BookDao.updateBookTitle. Changes made outside the application need invalidate().
+public class TitleSearchIndex {
+
+    private static final TitleSearchIndex instance = new TitleSearchIndex();
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final int MAX_PREFIX_EXPANSIONS = 256;
+    private static final double EXACT = 3.0;
+    private static final double PREFIX = 2.0;
+    private static final double FUZZY = 1.0;
+
+    // Per bookID (IDs are dense, so arrays are used): the title and its token IDs in title order
+    private String[] titles = new String[1024];
+    private int[][] tokensByBook = new int[1024][];
+    private int bookCount = 0;
+    private final Map<String, Integer> idsByTitle = new HashMap<>();
+    private final TreeMap<String, Token> dictionary = new TreeMap<>();
+    private final Map<String, Set<String>> tokensByTrigram = new HashMap<>();
+    private int nextTokenId = 0;
+    private int watermark = 0; // Highest bookID loaded
+    private boolean loaded = false;
+
+    TitleSearchIndex() {
+    }
+
+    public static TitleSearchIndex get() {
+        return instance;
+    }
+
+    // Up to limit books whose titles match the query, best first
+    public synchronized List<Match> search(String query, int limit) throws SQLException {
+        refresh();
+        return find(query, limit);
+    }
+
+    // Loads books added since the last call (everything on first use)
+    public synchronized void refresh() throws SQLException {
+        if (!loaded) clear();
+        try (Connection conn = DatabaseConnector.connect();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT bookID, title FROM Books WHERE bookID > ? ORDER BY bookID")) {
+            pstmt.setInt(1, watermark);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    add(rs.getInt("bookID"), rs.getString("title"));
+                }
+            }
+        }
+        loaded = true;
+    }
+
+    // Drops the index; the next search loads everything again
+    public synchronized void invalidate() {
+        loaded = false;
+    }
+
+    // Called by BookDao after a committed title change
+    public synchronized void titleChanged(String oldTitle, String newTitle) {
+        if (!loaded) return;
+        Integer bookId = idsByTitle.get(oldTitle);
+        if (bookId == null) return; // Not loaded yet; the watermark will bring it in
+        remove(bookId);
+        add(bookId, newTitle);
+    }
+
+    public synchronized int size() {
+        return bookCount;
+    }
+
+    // --- Index maintenance ---
+
+    synchronized void add(int bookId, String title) {
+        if (title == null || (bookId < titles.length && titles[bookId] != null)) return;
+        if (bookId >= titles.length) {
+            int capacity = Math.max(bookId + 1, titles.length * 2);
+            titles = Arrays.copyOf(titles, capacity);
+            tokensByBook = Arrays.copyOf(tokensByBook, capacity);
+        }
+        String[] words = tokenize(title);
+        int[] tokenIds = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            Token token = dictionary.get(words[i]);
+            if (token == null) {
+                token = new Token(nextTokenId++);
+                dictionary.put(words[i], token);
+                for (String trigram : trigrams(words[i])) {
+                    tokensByTrigram.computeIfAbsent(trigram, t -> new HashSet<>()).add(words[i]);
+                }
+            }
+            token.postings.add(bookId);
+            tokenIds[i] = token.id;
+        }
+        titles[bookId] = title;
+        tokensByBook[bookId] = tokenIds;
+        idsByTitle.put(title, bookId);
+        bookCount++;
+        watermark = Math.max(watermark, bookId);
+    }
+
+    private void remove(int bookId) {
+        String title = bookId < titles.length ? titles[bookId] : null;
+        if (title == null) return;
+        titles[bookId] = null;
+        tokensByBook[bookId] = null;
+        idsByTitle.remove(title);
+        bookCount--;
+        for (String word : tokenize(title)) {
+            Token token = dictionary.get(word);
+            if (token == null) continue; // Word repeated in the title, already dropped
+            token.postings.remove(bookId);
+            if (token.postings.size == 0) {
+                dictionary.remove(word);
+                for (String trigram : trigrams(word)) {
+                    Set<String> words = tokensByTrigram.get(trigram);
+                    words.remove(word);
+                    if (words.isEmpty()) tokensByTrigram.remove(trigram);
+                }
+            }
+        }
+    }
+
+    private void clear() {
+        titles = new String[1024];
+        tokensByBook = new int[1024][];
+        bookCount = 0;
+        idsByTitle.clear();
+        dictionary.clear();
+        tokensByTrigram.clear();
+        nextTokenId = 0;
+        watermark = 0;
+    }
+
+    // --- Querying ---
+
+    synchronized List<Match> find(String query, int limit) {
+        String[] words = tokenize(query);
+        if (words.length == 0 || limit <= 0) return new ArrayList<>();
+
+        // Which dictionary tokens each query term may match, and how well
+        Term[] terms = new Term[words.length];
+        for (int i = 0; i < words.length; i++) {
+            terms[i] = expand(words[i], i == words.length - 1);
+            if (terms[i].tokenIds.length == 0) return new ArrayList<>(); // Nothing matches this term at all
+        }
+
+        // Walk the books of the most selective term; check the other terms against each book's own tokens
+        Term driver = terms[0];
+        for (Term term : terms) {
+            if (term.candidates < driver.candidates) driver = term;
+        }
+
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, Match.ORDER.reversed()); // Weakest on top
+        BitSet seen = driver.postings.length > 1 ? new BitSet(watermark + 1) : null; // A book may be in several lists
+        for (Postings list : driver.postings) {
+            for (int p = 0; p < list.size; p++) {
+                int bookId = list.ids[p];
+                if (seen != null) {
+                    if (seen.get(bookId)) continue;
+                    seen.set(bookId);
+                }
+                int[] bookTokens = tokensByBook[bookId];
+                double score = 0;
+                for (Term term : terms) {
+                    double quality = term.bestQuality(bookTokens);
+                    if (quality == 0) {
+                        score = -1;
+                        break;
+                    }
+                    score += quality;
+                }
+                if (score < 0) continue;
+                if (startsWithQuery(bookTokens, terms)) score += 1;
+                if (best.size() == limit) {
+                    Match weakest = best.peek();
+                    if (score < weakest.score || (score == weakest.score && bookTokens.length > weakest.tokenCount)) continue;
+                }
+                best.add(new Match(bookId, titles[bookId], score, bookTokens.length));
+                if (best.size() > limit) best.poll();
+            }
+        }
+        List<Match> matches = new ArrayList<>(best);
+        matches.sort(Match.ORDER);
+        return matches;
+    }
+
+    // The title's first words are the query's words (the last one possibly cut off)
+    private static boolean startsWithQuery(int[] bookTokens, Term[] terms) {
+        if (bookTokens.length < terms.length) return false;
+        for (int i = 0; i < terms.length; i++) {
+            int at = Arrays.binarySearch(terms[i].tokenIds, bookTokens[i]);
+            if (at < 0 || terms[i].qualities[at] < PREFIX) return false;
+        }
+        return true;
+    }
+
+    private Term expand(String word, boolean lastTerm) {
+        Map<Token, Double> options = new HashMap<>();
+        Token exact = dictionary.get(word);
+        if (exact != null) options.put(exact, EXACT);
+        if (exact == null || lastTerm) {
+            // Words that start with the term (type-ahead for the last one)
+            int added = 0;
+            for (Map.Entry<String, Token> entry : dictionary.tailMap(word, false).entrySet()) {
+                if (!entry.getKey().startsWith(word) || added++ == MAX_PREFIX_EXPANSIONS) break;
+                options.put(entry.getValue(), PREFIX);
+            }
+        }
+        if (options.isEmpty()) {
+            for (String similar : similarTokens(word)) {
+                options.put(dictionary.get(similar), FUZZY);
+            }
+        }
+        return new Term(options);
+    }
+
+    // Dictionary tokens within edit distance 1 (2 for long terms) of the term
+    private List<String> similarTokens(String term) {
+        int maxDistance = term.length() < 4 ? 0 : term.length() < 8 ? 1 : 2;
+        List<String> similar = new ArrayList<>();
+        if (maxDistance == 0) return similar;
+
+        // Each edit changes at most 3 trigrams, so a close token shares most of the term's trigrams
+        Map<String, Integer> shared = new HashMap<>();
+        List<String> termTrigrams = trigrams(term);
+        for (String trigram : termTrigrams) {
+            Set<String> tokens = tokensByTrigram.get(trigram);
+            if (tokens == null) continue;
+            for (String token : tokens) shared.merge(token, 1, Integer::sum);
+        }
+        int needed = Math.max(1, termTrigrams.size() - 3 * maxDistance);
+        for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+            String token = entry.getKey();
+            if (entry.getValue() >= needed && Math.abs(token.length() - term.length()) <= maxDistance
+                    && editDistance(term, token, maxDistance) <= maxDistance) {
+                similar.add(token);
+            }
+        }
+        return similar;
+    }
+
+    // Levenshtein distance, giving up (returning max + 1) once it must exceed max
+    static int editDistance(String a, String b, int max) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) return max + 1;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    // "Pandas, NumPy & IPython" -> [pandas, numpy, ipython]; accents are dropped as well
+    static String[] tokenize(String text) {
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+        // split() leaves an empty first token when the text starts with a separator ("(python")
+        return Arrays.stream(SEPARATORS.split(folded)).filter(token -> !token.isEmpty()).toArray(String[]::new);
+    }
+
+    // Trigrams of the token padded with '$' on both sides ("sql" -> $sq, sql, ql$)
+    private static List<String> trigrams(String token) {
+        String padded = "$" + token + "$";
+        List<String> trigrams = new ArrayList<>(padded.length() - 2);
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    // Sorted, growable list of bookIDs
+    private static final class Postings {
+        int[] ids = new int[2];
+        int size = 0;
+
+        void add(int bookId) {
+            int at = size > 0 && ids[size - 1] < bookId ? size : Arrays.binarySearch(ids, 0, size, bookId);
+            if (at < 0) at = -at - 1;
+            else if (at < size) return; // Already present
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = bookId;
+            size++;
+        }
+
+        void remove(int bookId) {
+            int at = Arrays.binarySearch(ids, 0, size, bookId);
+            if (at < 0) return;
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+        }
+    }
+
+    private static final class Token {
+        final int id;
+        final Postings postings = new Postings();
+
+        Token(int id) {
+            this.id = id;
+        }
+    }
+
+    // One query word: the dictionary tokens it may match (sorted by token ID) and how well
+    private static final class Term {
+        final int[] tokenIds;
+        final double[] qualities;
+        final Postings[] postings;
+        final long candidates;
+
+        Term(Map<Token, Double> options) {
+            List<Token> tokens = new ArrayList<>(options.keySet());
+            tokens.sort(Comparator.comparingInt(t -> t.id));
+            tokenIds = new int[tokens.size()];
+            qualities = new double[tokens.size()];
+            postings = new Postings[tokens.size()];
+            long total = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                tokenIds[i] = token.id;
+                qualities[i] = options.get(token);
+                postings[i] = token.postings;
+                total += token.postings.size;
+            }
+            candidates = total;
+        }
+
+        // Best quality among the book's tokens, or 0 if none of them match
+        double bestQuality(int[] bookTokens) {
+            double best = 0;
+            for (int token : bookTokens) {
+                int at = tokenIds.length == 1 ? (tokenIds[0] == token ? 0 : -1) : Arrays.binarySearch(tokenIds, token);
+                if (at >= 0 && qualities[at] > best) best = qualities[at];
+            }
+            return best;
+        }
+    }
+
+    public static class Match {
+        // Best score first, then fewer words in the title, then lowest bookID
+        static final Comparator<Match> ORDER = Comparator.comparingDouble((Match m) -> m.score).reversed()
+                .thenComparingInt(m -> m.tokenCount).thenComparingInt(m -> m.bookId);
+
+        private final int bookId;
+        private final String title;
+        private final double score;
+        private final int tokenCount;
+
+        Match(int bookId, String title, double score, int tokenCount) {
+            this.bookId = bookId;
+            this.title = title;
+            this.score = score;
+            this.tokenCount = tokenCount;
+        }
+
+        public int getBookId() { return bookId; }
+        public String getTitle() { return title; }
+        public double getScore() { return score; }
+
+        @Override
+        public String toString() {
+            return String.format("%6.1f  %s (Book ID %d)", score, title, bookId);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+import java.sql.SQLException;
+
+// Carries a SQLException out of APIs that can't declare it (e.g. lazily evaluated Streams)
+public class UncheckedSQLException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedSQLException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
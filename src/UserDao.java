@@ -1,4 +1,6 @@
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 
 // DAO for User entity operations
 public class UserDao {
@@ -6,31 +8,87 @@ public class UserDao {
     public boolean addUser(int userId, int age, String gender, String name) throws SQLException {
         String sql = "INSERT INTO User(userID, age, gender, Name) VALUES(?, ?, ?, ?)";
         boolean success = false;
+        long commit;
 
         // Use try-with-resources connecting via helper class
-        try (Connection conn = DatabaseConnector.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, userId);
-            pstmt.setInt(2, age);
-            pstmt.setString(3, gender);
-            pstmt.setString(4, name);
-            int affectedRows = pstmt.executeUpdate();
-            if (affectedRows > 0) {
-                success = true;
+        try (Connection conn = DatabaseConnector.connect()) {
+            // One transaction, so the commit is numbered for the running statistics
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                pstmt.setInt(2, age);
+                pstmt.setString(3, gender);
+                pstmt.setString(4, name);
+                int affectedRows = pstmt.executeUpdate();
+                if (affectedRows > 0) {
+                    success = true;
+                }
+                commit = CommitSequence.commit(conn);
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
         }
+        if (success) {
+            StatisticsStore.get().userAdded(commit, age);
+        }
         // Let SQLException propagate up to be handled by Main
         return success;
     }
 
+    // Adds all users in one transaction; a duplicate userID rolls the whole batch back
+    public BatchResult addUsers(List<User> users) throws SQLException {
+        String sql = "INSERT INTO User(userID, age, gender, Name) VALUES(?, ?, ?, ?)";
+        long start = System.nanoTime();
+        List<String> keys = new ArrayList<>(users.size());
+        for (User user : users) {
+            keys.add("user " + user.getUserID());
+        }
+
+        BatchResult result;
+        long commit;
+        try (Connection conn = DatabaseConnector.connect()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                int[] counts = BatchResult.executeBatch(conn, pstmt, users, (ps, user) -> {
+                    ps.setInt(1, user.getUserID());
+                    ps.setInt(2, user.getAge());
+                    ps.setString(3, user.getGender());
+                    ps.setString(4, user.getName());
+                });
+                commit = CommitSequence.commit(conn);
+                result = BatchResult.committed(keys, counts, start);
+            } catch (BatchResult.ItemFailedException e) {
+                conn.rollback();
+                return BatchResult.rolledBack(keys, e.getIndex(), e.getMessage(), start);
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        for (User user : users) {
+            StatisticsStore.get().userAdded(commit, user.getAge());
+        }
+        return result;
+    }
+
+    // Served from the running totals in StatisticsStore (no table scan)
     public double getMeanUserAge() throws SQLException {
+        return StatisticsStore.get().getMeanUserAge();
+    }
+
+    // Full AVG(age) scan; used to verify/rebuild the running statistics
+    public double queryMeanUserAge() throws SQLException {
         String sql = "SELECT AVG(age) AS mean_age FROM User";
         double meanAge = -1.0; // Indicate error or no data initially
 
         try (Connection conn = DatabaseConnector.connect();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+             PreparedStatement pstmt = conn.prepareStatement(sql); // Cached per connection
+             ResultSet rs = pstmt.executeQuery()) {
 
             if (rs.next()) {
                 meanAge = rs.getDouble("mean_age");
@@ -0,0 +1,97 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Checkpoints the WAL on a timer. SQLite's own auto-checkpoint runs inside whichever commit crosses
+// wal_autocheckpoint pages and can't finish while a pooled reader still needs older frames, so
+// under steady reads the -wal file can keep growing. A PASSIVE checkpoint here never blocks readers
+// or the writer; at shutdown a TRUNCATE checkpoint leaves an empty WAL behind.
+public class WalCheckpointer {
+
+    private final ConnectionPool pool;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean stopped = new AtomicBoolean(false);
+    private final LongAdder checkpoints = new LongAdder();
+    private final LongAdder busy = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile Result lastResult;
+
+    public WalCheckpointer(ConnectionPool pool, long intervalMillis) {
+        this.pool = pool;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wal-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::scheduledCheckpoint, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // mode is PASSIVE, FULL, RESTART or TRUNCATE
+    public Result checkpoint(String mode) throws SQLException {
+        try (Connection conn = pool.borrow();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA wal_checkpoint(" + mode + ")")) {
+            Result result = rs.next() ? new Result(rs.getInt(1) != 0, rs.getInt(2), rs.getInt(3)) : new Result(false, 0, 0);
+            checkpoints.increment();
+            if (result.isBusy()) busy.increment();
+            lastResult = result;
+            return result;
+        }
+    }
+
+    // Stops the timer and truncates the WAL; call before the pool is shut down
+    public void shutdown() {
+        if (!stopped.compareAndSet(false, true)) return;
+        scheduler.shutdownNow();
+        try {
+            checkpoint("TRUNCATE");
+        } catch (SQLException e) {
+            System.err.println("WARNING: Final WAL checkpoint failed: " + e.getMessage());
+        }
+    }
+
+    public long getCheckpointCount() { return checkpoints.sum(); }
+    public long getBusyCount() { return busy.sum(); }
+    public long getFailureCount() { return failures.sum(); }
+
+    // Null until the first checkpoint has run
+    public Result getLastResult() { return lastResult; }
+
+    private void scheduledCheckpoint() {
+        try {
+            checkpoint("PASSIVE");
+        } catch (SQLException | RuntimeException e) {
+            failures.increment(); // Try again next time; a missed checkpoint only lets the WAL grow a little
+        }
+    }
+
+    // One PRAGMA wal_checkpoint outcome: frames in the WAL and how many were copied into the database
+    // (both -1 when the checkpoint couldn't start)
+    public static class Result {
+        private final boolean busy;
+        private final int logFrames;
+        private final int checkpointedFrames;
+
+        Result(boolean busy, int logFrames, int checkpointedFrames) {
+            this.busy = busy;
+            this.logFrames = logFrames;
+            this.checkpointedFrames = checkpointedFrames;
+        }
+
+        public boolean isBusy() { return busy; }
+        public int getLogFrames() { return logFrames; }
+        public int getCheckpointedFrames() { return checkpointedFrames; }
+
+        @Override
+        public String toString() {
+            if (logFrames < 0) return "skipped (another checkpoint was running)";
+            return String.format("%d of %d WAL frames checkpointed%s", checkpointedFrames, logFrames, busy ? " (busy)" : "");
+        }
+    }
+}